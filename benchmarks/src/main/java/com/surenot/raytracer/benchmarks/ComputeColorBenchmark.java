@@ -0,0 +1,46 @@
+package com.surenot.raytracer.benchmarks;
+
+import com.surenot.raytracer.Scene;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one primary ray, shading and shadow rays included. Rays sweep the whole image so
+ * that hits, misses and shadowed points are mixed as in a real frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComputeColorBenchmark {
+
+    private final static String RESOLUTION = "800x600";
+
+    @Param({"10", "1000", "100000"})
+    private int shapeCount;
+
+    @Param({"1", "4"})
+    private int lightCount;
+
+    private Scene scene;
+    private int width, pixelCount;
+    // Large prime stride, consecutive rays land in unrelated parts of the image
+    private final static int STRIDE = 7919;
+    private int pixel;
+
+    @Setup
+    public void setup() {
+        scene = Scenes.scene(shapeCount, lightCount, RESOLUTION);
+        width = scene.getCamera().getWidth();
+        pixelCount = width * scene.getCamera().getHeight();
+    }
+
+    @Benchmark
+    public int computeColor() {
+        pixel = (pixel + STRIDE) % pixelCount;
+        return scene.computeColor(pixel % width, pixel / width);
+    }
+}
@@ -0,0 +1,68 @@
+package com.surenot.raytracer.benchmarks;
+
+import com.surenot.raytracer.primitives.Impact3D;
+import com.surenot.raytracer.primitives.MutableImpact3D;
+import com.surenot.raytracer.primitives.Point3D;
+import com.surenot.raytracer.primitives.Vector3D;
+import com.surenot.raytracer.shapes.Plane;
+import com.surenot.raytracer.shapes.Sphere3D;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single ray against a single shape, through the immutable isHit API and through the
+ * allocation free intersect API used by the renderer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IntersectionBenchmark {
+
+    @Param({"hit", "miss"})
+    private String outcome;
+
+    private Sphere3D sphere;
+    private Plane plane;
+    private Vector3D sphereRay, planeRay;
+    private final MutableImpact3D impact = new MutableImpact3D();
+
+    @Setup
+    public void setup() {
+        final boolean hit = outcome.equals("hit");
+        sphere = new Sphere3D(new Point3D(20, 0, 0), 2);
+        plane = new Plane(
+                new Vector3D(new Point3D(0, 0, -4), new Point3D(1, 0, 0), true),
+                new Vector3D(new Point3D(0, 0, -4), new Point3D(0, 0, 1), true));
+        final Point3D origin = new Point3D(3, 0.1, 0.1);
+        sphereRay = new Vector3D(origin, hit ? new Point3D(1, 0.01, 0.01) : new Point3D(1, 1, 0), true);
+        planeRay = new Vector3D(origin, hit ? new Point3D(1, 0, -0.2) : new Point3D(1, 0, 0.2), true);
+    }
+
+    @Benchmark
+    public Impact3D sphereIsHit() {
+        return sphere.isHit(sphereRay);
+    }
+
+    @Benchmark
+    public Impact3D planeIsHit() {
+        return plane.isHit(planeRay);
+    }
+
+    @Benchmark
+    public boolean sphereIntersect() {
+        final Point3D o = sphereRay.getOrigin(), d = sphereRay.getDirection();
+        impact.reset(Double.POSITIVE_INFINITY);
+        return sphere.intersect(o.getX(), o.getY(), o.getZ(), d.getX(), d.getY(), d.getZ(), impact);
+    }
+
+    @Benchmark
+    public boolean planeIntersect() {
+        final Point3D o = planeRay.getOrigin(), d = planeRay.getDirection();
+        impact.reset(Double.POSITIVE_INFINITY);
+        return plane.intersect(o.getX(), o.getY(), o.getZ(), d.getX(), d.getY(), d.getZ(), impact);
+    }
+}
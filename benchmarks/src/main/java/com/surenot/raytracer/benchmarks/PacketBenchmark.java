@@ -0,0 +1,53 @@
+package com.surenot.raytracer.benchmarks;
+
+import com.surenot.raytracer.Scene;
+import com.surenot.raytracer.acceleration.PacketKernels;
+import com.surenot.raytracer.primitives.RayPacket;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the first samples of RayPacket.SIZE consecutive pixels of a row, traced one by one
+ * or as a packet by the scalar kernel. Shading and shadow rays are included, as in
+ * ComputeColorBenchmark. VectorPacketBenchmark measures the vector kernel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketBenchmark {
+
+    private final static String RESOLUTION = "800x600";
+
+    @Param({"10", "1000", "100000"})
+    private int shapeCount;
+
+    @Param({"none", "scalar"})
+    private String kernel;
+
+    private Scene scene;
+    private int width, height;
+    private final int[] colors = new int[RayPacket.SIZE];
+    // Large prime stride, consecutive packets land in unrelated parts of the image
+    private final static int STRIDE = 7919;
+    private int packet;
+
+    @Setup
+    public void setup() {
+        scene = Scenes.scene(shapeCount, 1, RESOLUTION);
+        scene.setPacketKernel(kernel.equals("none") ? null : PacketKernels.get(kernel));
+        width = scene.getCamera().getWidth();
+        height = scene.getCamera().getHeight();
+    }
+
+    @Benchmark
+    public int[] computeColors() {
+        final int packetsPerRow = width / RayPacket.SIZE;
+        packet = (packet + STRIDE) % (packetsPerRow * height);
+        scene.computeColors(packet % packetsPerRow * RayPacket.SIZE, packet / packetsPerRow, RayPacket.SIZE, colors);
+        return colors;
+    }
+}
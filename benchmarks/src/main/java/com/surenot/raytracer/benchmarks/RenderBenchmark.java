@@ -0,0 +1,45 @@
+package com.surenot.raytracer.benchmarks;
+
+import com.surenot.raytracer.Scene;
+import com.surenot.raytracer.render.AntiAliasing;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full frame on the common fork/join pool, scene construction excluded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int shapeCount;
+
+    @Param({"1", "4"})
+    private int lightCount;
+
+    @Param({"320x240", "1280x720"})
+    private String resolution;
+
+    @Param({"NONE", "FIXED_2", "ADAPTIVE_4"})
+    private String antiAliasing;
+
+    private Scene scene;
+
+    @Setup
+    public void setup() {
+        scene = Scenes.scene(shapeCount, lightCount, resolution);
+        scene.setAntiAliasing(AntiAliasing.valueOf(antiAliasing));
+    }
+
+    @Benchmark
+    public BufferedImage render() {
+        return scene.render();
+    }
+}
@@ -0,0 +1,91 @@
+package com.surenot.raytracer.benchmarks;
+
+import com.surenot.raytracer.Camera;
+import com.surenot.raytracer.Scene;
+import com.surenot.raytracer.primitives.Dimension2D;
+import com.surenot.raytracer.primitives.Point3D;
+import com.surenot.raytracer.primitives.Surface;
+import com.surenot.raytracer.primitives.Vector3D;
+import com.surenot.raytracer.shapes.Light3D;
+import com.surenot.raytracer.shapes.Plane;
+import com.surenot.raytracer.shapes.Shape3D;
+import com.surenot.raytracer.shapes.Sphere3D;
+import com.surenot.raytracer.shapes.SphereSet;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reproducible scenes for the benchmarks: the floor of the GUI scene with random spheres in
+ * front of the camera and random lights above them.
+ */
+final class Scenes {
+
+    private final static long SEED = 42;
+
+    private Scenes() {
+    }
+
+    static Camera camera(final String resolution) {
+        final String[] size = resolution.split("x");
+        final int width = Integer.parseInt(size[0]);
+        final int height = Integer.parseInt(size[1]);
+        // Same screen as the GUI, stretched to the aspect ratio of the resolution
+        return new Camera(
+                new Point3D(-13, 0, 0),
+                new Point3D(-10, -2, 1.5),
+                new Dimension2D(4.0 * height / width, 4),
+                height, width);
+    }
+
+    static Collection<Shape3D> shapes(final int sphereCount, final int lightCount) {
+        final Random random = new Random(SEED);
+        final Collection<Shape3D> shapes = new ArrayList<>(sphereCount + lightCount + 1);
+        shapes.add(new Plane(
+                new Vector3D(new Point3D(0, 0, -4), new Point3D(1, 0, 0), true),
+                new Vector3D(new Point3D(0, 0, -4), new Point3D(0, 0, 1), true),
+                new Surface(Color.LIGHT_GRAY.getRGB(), 0.2, 1, 0.2, 50)));
+        // Keep roughly the same coverage of the screen whatever the number of spheres
+        final double maxRadius = Math.min(2, 6 / Math.cbrt(sphereCount));
+        for (int i = 0; i < sphereCount; i++) {
+            shapes.add(new Sphere3D(
+                    new Point3D(
+                            16 + random.nextDouble() * 20,
+                            -6 + random.nextDouble() * 12,
+                            -3 + random.nextDouble() * 8),
+                    maxRadius * (0.2 + 0.8 * random.nextDouble()),
+                    new Surface(random.nextInt(), 1, 1, random.nextDouble(), 1 + random.nextInt(100))));
+        }
+        for (int i = 0; i < lightCount; i++) {
+            shapes.add(new Light3D(new Sphere3D(
+                    new Point3D(
+                            10 + random.nextDouble() * 20,
+                            -8 + random.nextDouble() * 16,
+                            6 + random.nextDouble() * 2),
+                    0.5,
+                    new Surface(Color.WHITE.getRGB(), 1, 1, 1, 50))));
+        }
+        return shapes;
+    }
+
+    static Scene scene(final int sphereCount, final int lightCount, final String resolution) {
+        return new Scene(camera(resolution), shapes(sphereCount, lightCount));
+    }
+
+    /**
+     * Same shapes as shapes(sphereCount, lightCount), with the spheres gathered in a SphereSet.
+     */
+    static Collection<Shape3D> sphereSetShapes(final int sphereCount, final int lightCount) {
+        final Collection<Shape3D> shapes = new ArrayList<>(lightCount + 2);
+        final List<Sphere3D> spheres = new ArrayList<>(sphereCount);
+        for (Shape3D shape : shapes(sphereCount, lightCount)) {
+            if (shape.getClass() == Sphere3D.class) spheres.add((Sphere3D) shape);
+            else shapes.add(shape);
+        }
+        if (!spheres.isEmpty()) shapes.add(SphereSet.of(spheres));
+        return shapes;
+    }
+}
@@ -0,0 +1,42 @@
+package com.surenot.raytracer.benchmarks;
+
+import com.surenot.raytracer.Scene;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full frame of the same spheres stored as Sphere3D objects or in a single SphereSet, with the
+ * rays traced one by one so that the packet kernels do not favour the objects.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SphereSetBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int sphereCount;
+
+    @Param({"objects", "set"})
+    private String storage;
+
+    @Param({"320x240"})
+    private String resolution;
+
+    private Scene scene;
+
+    @Setup
+    public void setup() {
+        scene = new Scene(Scenes.camera(resolution), "set".equals(storage) ?
+                Scenes.sphereSetShapes(sphereCount, 1) : Scenes.shapes(sphereCount, 1));
+    }
+
+    @Benchmark
+    public BufferedImage render() {
+        return scene.render();
+    }
+}
@@ -0,0 +1,49 @@
+package com.surenot.raytracer.benchmarks;
+
+import com.surenot.raytracer.Scene;
+import com.surenot.raytracer.acceleration.PacketKernels;
+import com.surenot.raytracer.primitives.RayPacket;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PacketBenchmark with the vector kernel of the raytracer-simd module. Only built on Java 17
+ * and later, as that module, since its forks need the incubator module.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class VectorPacketBenchmark {
+
+    private final static String RESOLUTION = "800x600";
+
+    @Param({"10", "1000", "100000"})
+    private int shapeCount;
+
+    private Scene scene;
+    private int width, height;
+    private final int[] colors = new int[RayPacket.SIZE];
+    // Same packets as PacketBenchmark
+    private final static int STRIDE = 7919;
+    private int packet;
+
+    @Setup
+    public void setup() {
+        scene = Scenes.scene(shapeCount, 1, RESOLUTION);
+        scene.setPacketKernel(PacketKernels.get("vector"));
+        width = scene.getCamera().getWidth();
+        height = scene.getCamera().getHeight();
+    }
+
+    @Benchmark
+    public int[] computeColors() {
+        final int packetsPerRow = width / RayPacket.SIZE;
+        packet = (packet + STRIDE) % (packetsPerRow * height);
+        scene.computeColors(packet % packetsPerRow * RayPacket.SIZE, packet / packetsPerRow, RayPacket.SIZE, colors);
+        return colors;
+    }
+}
@@ -0,0 +1,71 @@
+package com.surenot.raytracer.simd;
+
+import com.surenot.raytracer.acceleration.PacketKernel;
+import com.surenot.raytracer.primitives.Point3D;
+import com.surenot.raytracer.primitives.RayPacket;
+import com.surenot.raytracer.shapes.Sphere3D;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Packet kernel on the Vector API, as many lanes at once as the CPU has doubles in a vector
+ * register. The operations are those of Sphere3D.intersect in the same order, without fused
+ * multiply-add, so that the distances are the same to the last bit as the scalar ones.
+ * Needs --add-modules jdk.incubator.vector at run time.
+ */
+public final class VectorPacketKernel implements PacketKernel {
+
+    private final static VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public void intersect(final RayPacket packet, final Sphere3D sphere, final int material) {
+        final Point3D center = sphere.getCenter();
+        final double cx = center.getX(), cy = center.getY(), cz = center.getZ();
+        final double r2 = sphere.getRadiusSquared();
+        final int count = packet.getCount();
+        for (int lane = 0; lane < count; lane += SPECIES.length()) {
+            final VectorMask<Double> active = SPECIES.indexInRange(lane, count);
+            final DoubleVector nox = DoubleVector.fromArray(SPECIES, packet.originX, lane, active).sub(cx);
+            final DoubleVector noy = DoubleVector.fromArray(SPECIES, packet.originY, lane, active).sub(cy);
+            final DoubleVector noz = DoubleVector.fromArray(SPECIES, packet.originZ, lane, active).sub(cz);
+            final DoubleVector dx = DoubleVector.fromArray(SPECIES, packet.directionX, lane, active);
+            final DoubleVector dy = DoubleVector.fromArray(SPECIES, packet.directionY, lane, active);
+            final DoubleVector dz = DoubleVector.fromArray(SPECIES, packet.directionZ, lane, active);
+            final DoubleVector b = dx.mul(nox).add(dy.mul(noy)).add(dz.mul(noz)).mul(2);
+            final DoubleVector c = nox.mul(nox).add(noy.mul(noy)).add(noz.mul(noz)).sub(r2);
+            final DoubleVector d = b.mul(b).sub(c.mul(4));
+            VectorMask<Double> hits = active.and(d.compare(VectorOperators.GE, 0));
+            if (!hits.anyTrue()) continue;
+            final DoubleVector sqrtD = d.lanewise(VectorOperators.SQRT);
+            final DoubleVector t0 = b.neg().add(sqrtD).div(2);
+            final DoubleVector t1 = b.neg().sub(sqrtD).div(2);
+            final DoubleVector t = t0.blend(t1, t1.compare(VectorOperators.GE, 0));
+            final DoubleVector distance = DoubleVector.fromArray(SPECIES, packet.distance, lane, active);
+            hits = hits.and(t.compare(VectorOperators.GE, 0)).and(t.compare(VectorOperators.LT, distance));
+            for (int i = hits.firstTrue(); i < SPECIES.length(); i = nextTrue(hits, i + 1)) {
+                packet.offer(lane + i, sphere, 0, material, t.lane(i));
+            }
+        }
+    }
+
+    private static int nextTrue(final VectorMask<Double> mask, final int from) {
+        for (int i = from; i < SPECIES.length(); i++) {
+            if (mask.laneIsSet(i)) return i;
+        }
+        return SPECIES.length();
+    }
+
+    @Override
+    public String getName() {
+        return "vector";
+    }
+
+    @Override
+    public String toString() {
+        return "VectorPacketKernel{" +
+                "lanes=" + SPECIES.length() +
+                '}';
+    }
+}
@@ -0,0 +1,273 @@
+package com.surenot.raytracer;
+
+import com.surenot.raytracer.acceleration.PacketKernel;
+import com.surenot.raytracer.acceleration.PacketKernels;
+import com.surenot.raytracer.cluster.RenderCoordinator;
+import com.surenot.raytracer.io.ImageFiles;
+import com.surenot.raytracer.io.SceneCache;
+import com.surenot.raytracer.render.AntiAliasing;
+import com.surenot.raytracer.render.TileOrder;
+import com.surenot.raytracer.render.TileRenderer;
+import com.surenot.raytracer.stats.FrameSummary;
+import com.surenot.raytracer.stats.RenderStatistics;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Headless entry point: renders a range of frames to image files, no display needed.
+ * Every frame has its own Scene and image, so the previous frame is encoded and written by a
+ * background thread while the next one renders.
+ */
+public final class BatchRenderer {
+
+    private final static String USAGE = String.join("\n",
+            "Usage: BatchRenderer [options]",
+            "  --scene <class>       SceneFactory implementation (default: " + DemoScene.class.getName() + ")",
+            "  --scene-file <path>   .scene or .sceneb file rendered for every frame, instead of --scene",
+            "  --size <w>x<h>        image size in pixels (default: 800x600)",
+            "  --frames <a>[-<b>]    frame or inclusive frame range (default: 0)",
+            "  --output <path>       .png or .ppm file, with a format such as %04d for several frames",
+            "                        (default: frame-%04d.png)",
+            "  --threads <n>         render threads (default: all processors)",
+            "  --tile <n>            tile size in pixels (default: " + TileRenderer.DEFAULT_TILE_SIZE + ")",
+            "  --aa <mode>           NONE, FIXED_<n> or ADAPTIVE_<n> (default: NONE)",
+            "  --packets <kernel>    trace primary rays by packets with this kernel, scalar or vector",
+            "                        (default: one by one)",
+            "  --listen <port>       render on RenderWorker processes connecting to this port",
+            "                        instead of local threads");
+
+    // Frames rendered but not written yet, the renderer waits beyond that
+    private final static int MAX_PENDING_WRITES = 2;
+
+    private final SceneFactory factory;
+    private final int width, height;
+    private final String output;
+    private final TileRenderer renderer;
+    private final RenderCoordinator coordinator;
+    private final AntiAliasing antiAliasing;
+    private final RenderStatistics statistics = new RenderStatistics();
+    private volatile PacketKernel packetKernel;
+
+    /**
+     * @param output path of the images, formatted with the frame index by String.format
+     */
+    public BatchRenderer(final SceneFactory factory, final int width, final int height, final String output,
+                         final TileRenderer renderer, final AntiAliasing antiAliasing) {
+        this(factory, width, height, output, renderer, null, antiAliasing);
+    }
+
+    /**
+     * Renders every frame on the workers of the coordinator.
+     */
+    public BatchRenderer(final SceneFactory factory, final int width, final int height, final String output,
+                         final RenderCoordinator coordinator, final AntiAliasing antiAliasing) {
+        this(factory, width, height, output, null, coordinator, antiAliasing);
+    }
+
+    private BatchRenderer(final SceneFactory factory, final int width, final int height, final String output,
+                          final TileRenderer renderer, final RenderCoordinator coordinator,
+                          final AntiAliasing antiAliasing) {
+        if (factory == null || output == null || antiAliasing == null) {
+            throw new IllegalArgumentException();
+        }
+        if ((renderer == null) == (coordinator == null)) throw new IllegalArgumentException();
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException();
+        ImageFiles.Format.of(Paths.get(output));
+        this.factory = factory;
+        this.width = width;
+        this.height = height;
+        this.output = output;
+        this.renderer = renderer;
+        this.coordinator = coordinator;
+        this.antiAliasing = antiAliasing;
+    }
+
+    /**
+     * Totals of every frame rendered locally, workers of a coordinator do not report theirs.
+     */
+    public RenderStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Kernel of the scenes rendered locally, null to trace their rays one by one, see
+     * Scene.setPacketKernel. Workers of a coordinator trace them one by one.
+     */
+    public void setPacketKernel(final PacketKernel packetKernel) {
+        this.packetKernel = packetKernel;
+    }
+
+    public Path getPath(final int frame) {
+        return Paths.get(String.format(output, frame));
+    }
+
+    /**
+     * Renders and writes frames first to last, both included. Returns once every image is on disk.
+     */
+    public void render(final int first, final int last) throws IOException, InterruptedException {
+        if (first < 0 || last < first) throw new IllegalArgumentException();
+        if (last > first && !output.contains("%")) {
+            throw new IllegalArgumentException("The output must contain the frame index to render several frames");
+        }
+        final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "image-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final Deque<Future<?>> pending = new ArrayDeque<>();
+        try {
+            for (int frame = first; frame <= last; frame++) {
+                final long start = System.nanoTime();
+                final Scene scene;
+                try {
+                    scene = factory.create(frame, width, height);
+                } catch (UncheckedIOException e) {
+                    // Scene files failing to load
+                    throw e.getCause();
+                }
+                scene.setAntiAliasing(antiAliasing);
+                scene.setStatistics(statistics);
+                scene.setPacketKernel(packetKernel);
+                final BufferedImage image = coordinator != null ? coordinator.render(scene) : scene.render(renderer);
+                System.out.println("Frame " + frame + " rendered in " + (System.nanoTime() - start) / 1000000 + " ms" +
+                        (coordinator != null ? "" : describe(scene.getLastFrame())));
+
+                final Path path = getPath(frame);
+                pending.add(writer.submit(() -> {
+                    ImageFiles.write(image, path);
+                    return null;
+                }));
+                while (pending.size() > MAX_PENDING_WRITES) await(pending.poll());
+            }
+            while (!pending.isEmpty()) await(pending.poll());
+        } finally {
+            writer.shutdownNow();
+        }
+    }
+
+    /**
+     * Every frame is the scene of the file, read and built once.
+     */
+    private static SceneFactory fileScene(final Path path) {
+        final SceneCache cache = new SceneCache(1);
+        return (frame, width, height) -> {
+            try {
+                return cache.get(path, width, height);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    private static String describe(final FrameSummary summary) {
+        return String.format(", %d primary and %d shadow rays (%.0f/s), %.1f%% hits, %d intersection tests %s," +
+                        " tiles %.2f ms on average, %.2f ms at most",
+                summary.getPrimaryRayCount(), summary.getShadowRayCount(), summary.getRaysPerSecond(),
+                100 * summary.getHitRatio(), summary.getTestCount(), summary.getTestCounts(),
+                summary.getAverageTileNanos() / 1e6, summary.getMaxTileNanos() / 1e6);
+    }
+
+    private static void await(final Future<?> write) throws IOException, InterruptedException {
+        try {
+            write.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        // Nothing is displayed, and no display may be available at all
+        System.setProperty("java.awt.headless", "true");
+
+        String scene = DemoScene.class.getName();
+        String sceneFile = null;
+        String size = "800x600";
+        String frames = "0";
+        String output = "frame-%04d.png";
+        int threads = Runtime.getRuntime().availableProcessors();
+        int tileSize = TileRenderer.DEFAULT_TILE_SIZE;
+        String aa = "NONE";
+        String packets = null;
+        int listen = -1;
+
+        final BatchRenderer batch;
+        final int first, last;
+        TileRenderer renderer = null;
+        RenderCoordinator coordinator = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                final String option = args[i];
+                if (option.equals("--help")) {
+                    System.out.println(USAGE);
+                    return;
+                }
+                if (i + 1 == args.length) throw new IllegalArgumentException("Missing value for " + option);
+                final String value = args[++i];
+                switch (option) {
+                    case "--scene": scene = value; break;
+                    case "--scene-file": sceneFile = value; break;
+                    case "--size": size = value; break;
+                    case "--frames": frames = value; break;
+                    case "--output": output = value; break;
+                    case "--threads": threads = Integer.parseInt(value); break;
+                    case "--tile": tileSize = Integer.parseInt(value); break;
+                    case "--aa": aa = value; break;
+                    case "--packets": packets = value; break;
+                    case "--listen": listen = Integer.parseInt(value); break;
+                    default: throw new IllegalArgumentException("Unknown option " + option);
+                }
+            }
+            final String[] dimensions = size.split("x");
+            if (dimensions.length != 2) throw new IllegalArgumentException("Invalid size " + size);
+            final String[] range = frames.split("-");
+            if (range.length > 2) throw new IllegalArgumentException("Invalid frame range " + frames);
+            first = Integer.parseInt(range[0]);
+            last = Integer.parseInt(range[range.length - 1]);
+            final SceneFactory factory = sceneFile != null ?
+                    fileScene(Paths.get(sceneFile)) :
+                    Class.forName(scene)
+                            .asSubclass(SceneFactory.class)
+                            .getDeclaredConstructor()
+                            .newInstance();
+            final int width = Integer.parseInt(dimensions[0]), height = Integer.parseInt(dimensions[1]);
+            if (listen >= 0) {
+                coordinator = new RenderCoordinator(listen, tileSize);
+                System.out.println("Waiting for workers on port " + coordinator.getPort());
+                batch = new BatchRenderer(factory, width, height, output, coordinator, AntiAliasing.valueOf(aa));
+            } else {
+                renderer = new TileRenderer(threads, tileSize, TileOrder.MORTON);
+                batch = new BatchRenderer(factory, width, height, output, renderer, AntiAliasing.valueOf(aa));
+            }
+            if (packets != null) batch.setPacketKernel(PacketKernels.get(packets));
+        } catch (IllegalArgumentException | ClassCastException | ReflectiveOperationException e) {
+            if (coordinator != null) coordinator.close();
+            if (renderer != null) renderer.shutdown();
+            System.err.println(e.getMessage() != null ? e.getMessage() : e.toString());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        try {
+            batch.getStatistics().register(BatchRenderer.class.getSimpleName());
+            batch.render(first, last);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        } finally {
+            if (renderer != null) renderer.shutdown();
+            if (coordinator != null) coordinator.close();
+        }
+    }
+}
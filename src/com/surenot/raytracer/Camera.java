@@ -0,0 +1,170 @@
+package com.surenot.raytracer;
+
+import com.surenot.raytracer.primitives.Dimension2D;
+import com.surenot.raytracer.primitives.MutableRay3D;
+import com.surenot.raytracer.primitives.Point3D;
+
+import java.io.Serializable;
+
+/**
+ * Generates the primary rays of a scene on demand from the pixel coordinates, only the screen
+ * origin and the per-column and per-row deltas are kept, whatever the resolution.
+ * Image columns go along Y and rows along -Z, see the drawing in Scene.
+ */
+public final class Camera implements Serializable {
+
+    private final static long serialVersionUID = 1L;
+
+    private final Point3D observer;
+    private final Point3D origin;
+    private final Dimension2D screenSize;
+    private final int pixelCountX, pixelCountY;
+
+    // Screen point moved by one column / one row
+    private final double columnDeltaX, columnDeltaY, columnDeltaZ;
+    private final double rowDeltaX, rowDeltaY, rowDeltaZ;
+
+    /**
+     * @param pixelCountX number of pixels along the screen X dimension, the image height
+     * @param pixelCountY number of pixels along the screen Y dimension, the image width
+     */
+    public Camera(final Point3D observer,
+                  final Point3D origin,
+                  final Dimension2D screenSize,
+                  final int pixelCountX, final int pixelCountY) {
+        if (observer == null || origin == null || screenSize == null) {
+            throw new IllegalArgumentException();
+        }
+        if (screenSize.getX() <= 0) throw new IllegalArgumentException();
+        if (screenSize.getY() <= 0) throw new IllegalArgumentException();
+        if (pixelCountX <= 0) throw new IllegalArgumentException();
+        if (pixelCountY <= 0) throw new IllegalArgumentException();
+
+        this.observer = observer;
+        this.origin = origin;
+        this.screenSize = screenSize;
+        this.pixelCountX = pixelCountX;
+        this.pixelCountY = pixelCountY;
+
+        this.columnDeltaX = 0;
+        this.columnDeltaY = screenSize.getX() / pixelCountX;
+        this.columnDeltaZ = 0;
+        this.rowDeltaX = 0;
+        this.rowDeltaY = 0;
+        this.rowDeltaZ = -screenSize.getY() / pixelCountY;
+    }
+
+    /**
+     * Same camera rendering an image of another size, the screen is unchanged.
+     */
+    public Camera withResolution(final int width, final int height) {
+        return new Camera(observer, origin, screenSize, height, width);
+    }
+
+    /**
+     * Sets the primary ray going through the given image coordinates, fractional coordinates
+     * are used for sub pixel samples.
+     */
+    public void primaryRay(final double column, final double row, final MutableRay3D ray) {
+        // Rays are expressed relative to the observer: their origin is their direction
+        final double x = origin.getX() + column * columnDeltaX + row * rowDeltaX - observer.getX();
+        final double y = origin.getY() + column * columnDeltaY + row * rowDeltaY - observer.getY();
+        final double z = origin.getZ() + column * columnDeltaZ + row * rowDeltaZ - observer.getZ();
+        final double length = Math.sqrt(x * x + y * y + z * z);
+        ray.set(x, y, z, x / length, y / length, z / length);
+    }
+
+    /**
+     * Image coordinates of the primary rays going through the point, the reverse of primaryRay.
+     * The point is expressed as the rays are, relative to the observer.
+     *
+     * @param coordinates receives the column and the row
+     * @return false when the point is not in front of the observer, nothing is written then
+     */
+    public boolean project(final double x, final double y, final double z, final double[] coordinates) {
+        final double ox = origin.getX() - observer.getX();
+        final double oy = origin.getY() - observer.getY();
+        final double oz = origin.getZ() - observer.getZ();
+        // Normal of the screen, the point is scaled onto the screen plane along its ray
+        final double nx = columnDeltaY * rowDeltaZ - columnDeltaZ * rowDeltaY;
+        final double ny = columnDeltaZ * rowDeltaX - columnDeltaX * rowDeltaZ;
+        final double nz = columnDeltaX * rowDeltaY - columnDeltaY * rowDeltaX;
+        final double scale = (ox * nx + oy * ny + oz * nz) / (x * nx + y * ny + z * nz);
+        if (!(scale > 0) || Double.isInfinite(scale)) return false;
+        final double sx = x * scale - ox, sy = y * scale - oy, sz = z * scale - oz;
+        // Dual basis of the column and row deltas in the screen plane
+        final double cx = rowDeltaY * nz - rowDeltaZ * ny;
+        final double cy = rowDeltaZ * nx - rowDeltaX * nz;
+        final double cz = rowDeltaX * ny - rowDeltaY * nx;
+        final double rx = ny * columnDeltaZ - nz * columnDeltaY;
+        final double ry = nz * columnDeltaX - nx * columnDeltaZ;
+        final double rz = nx * columnDeltaY - ny * columnDeltaX;
+        coordinates[0] = (sx * cx + sy * cy + sz * cz) / (columnDeltaX * cx + columnDeltaY * cy + columnDeltaZ * cz);
+        coordinates[1] = (sx * rx + sy * ry + sz * rz) / (rowDeltaX * rx + rowDeltaY * ry + rowDeltaZ * rz);
+        return true;
+    }
+
+    public int getWidth() {
+        return pixelCountY;
+    }
+
+    public int getHeight() {
+        return pixelCountX;
+    }
+
+    public Point3D getObserver() {
+        return observer;
+    }
+
+    public Point3D getOrigin() {
+        return origin;
+    }
+
+    public Dimension2D getScreenSize() {
+        return screenSize;
+    }
+
+    public int getPixelCountX() {
+        return pixelCountX;
+    }
+
+    public int getPixelCountY() {
+        return pixelCountY;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Camera camera = (Camera) o;
+
+        if (pixelCountX != camera.pixelCountX) return false;
+        if (pixelCountY != camera.pixelCountY) return false;
+        if (!observer.equals(camera.observer)) return false;
+        if (!origin.equals(camera.origin)) return false;
+        return screenSize.equals(camera.screenSize);
+
+    }
+
+    @Override
+    public int hashCode() {
+        int result = observer.hashCode();
+        result = 31 * result + origin.hashCode();
+        result = 31 * result + screenSize.hashCode();
+        result = 31 * result + pixelCountX;
+        result = 31 * result + pixelCountY;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Camera{" +
+                "observer=" + observer +
+                ", origin=" + origin +
+                ", screenSize=" + screenSize +
+                ", pixelCountX=" + pixelCountX +
+                ", pixelCountY=" + pixelCountY +
+                '}';
+    }
+}
@@ -0,0 +1,73 @@
+package com.surenot.raytracer;
+
+import com.surenot.raytracer.primitives.Dimension2D;
+import com.surenot.raytracer.primitives.Point3D;
+import com.surenot.raytracer.primitives.Surface;
+import com.surenot.raytracer.primitives.Vector3D;
+import com.surenot.raytracer.shapes.Light3D;
+import com.surenot.raytracer.shapes.Plane;
+import com.surenot.raytracer.shapes.Shape3D;
+import com.surenot.raytracer.shapes.Sphere3D;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * The example scene of the README: a few spheres on a floor, lit by two lights.
+ */
+public final class DemoScene implements SceneFactory {
+
+    // Degrees travelled by the orbiting lights between two frames
+    public final static int DEGREES_PER_FRAME = 5;
+
+    @Override
+    public Scene create(final int frame, final int width, final int height) {
+        // Scene objects
+        final Point3D observer = new Point3D(-13, 0, 0);
+        final Point3D screenOrigin = new Point3D(-10, -2, 1.5);
+        final Dimension2D screenDimension = new Dimension2D(3, 4);
+        final Collection<Shape3D> objects = new ArrayList<>();
+        objects.add(new Plane(
+                new Vector3D(new Point3D(0, 0, -4), new Point3D(1, 0, 0), true),
+                new Vector3D(new Point3D(0, 0, -4), new Point3D(0, 0, 1), true),
+                new Surface(Color.LIGHT_GRAY.getRGB(), 0.2, 1, 0.2, 50)));
+        objects.add(new Sphere3D(
+                new Point3D(20, -1, 1.5), 2,
+                new Surface(Color.RED.getRGB(), 1, 1, 0.8, 5)));
+        objects.add(new Sphere3D(new Point3D(22, 2.5, 2.5), 2,
+                new Surface(Color.BLUE.getRGB(), 1, 0.5, 1, 50)));
+        objects.add(new Sphere3D(new Point3D(18, 0.2, 0), 0.5,
+                new Surface(Color.GREEN.getRGB(), 1, 1, 0, 50)));
+        objects.add(new Sphere3D(new Point3D(24, 2.5, 0), 1.5,
+                new Surface(Color.ORANGE.getRGB(), 1, 0.5, 0.5, 1)));
+        objects.add(new Sphere3D(new Point3D(17, 0.5, 2), 0.5,
+                new Surface(Color.LIGHT_GRAY.getRGB(), 1, 1, 1, 500)));
+        final int theta = frame * DEGREES_PER_FRAME % 360;
+        /*objects.add(new Light3D(new Sphere3D(
+                new Point3D(
+                        -Math.cos(Math.toRadians(theta)) * 7 + 20,
+                        Math.sin(Math.toRadians(theta)) * 7 + 3,
+                        3),
+                1, new Surface(Color.YELLOW.getRGB(), 1, 1, 1, 50))));
+        objects.add(new Light3D(new Sphere3D(
+                new Point3D(
+                        Math.cos(Math.toRadians(theta)) * 4 + 20,
+                        0,
+                        Math.sin(Math.toRadians(theta)) * 4 + 2),
+                1, new Surface(Color.WHITE.getRGB(), 1, 1, 1, 50))));*/
+        objects.add(new Light3D(new Sphere3D(
+                new Point3D(
+                        15,
+                        -3,
+                        0),
+                0.5, new Surface(Color.WHITE.getRGB(), 1, 1, 1, 50))));
+        objects.add(new Light3D(new Sphere3D(
+                new Point3D(
+                        15,
+                        3,
+                        4),
+                0.5, new Surface(Color.RED.getRGB(), 1, 1, 1, 50))));
+        return new Scene(observer, screenOrigin, screenDimension, height, width, objects);
+    }
+}
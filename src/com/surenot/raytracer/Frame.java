@@ -0,0 +1,38 @@
+package com.surenot.raytracer;
+
+import com.surenot.raytracer.acceleration.LightHierarchy;
+import com.surenot.raytracer.acceleration.PacketKernel;
+import com.surenot.raytracer.render.AntiAliasing;
+import com.surenot.raytracer.render.SoftShadows;
+import com.surenot.raytracer.stats.FrameStatistics;
+
+/**
+ * Settings of a Scene captured when a render starts, so that changing them during the render
+ * only affects the next one.
+ */
+final class Frame {
+
+    final SceneGeometry geometry;
+    final LightHierarchy lights;
+    final AntiAliasing antiAliasing;
+    final SoftShadows softShadows;
+    // Null when primary hits are not cached
+    final GBuffer gBuffer;
+    // Primary hits are read from the G-buffer instead of being traced
+    final boolean reuseGBuffer;
+    // Null when primary rays are traced one by one
+    final PacketKernel packetKernel;
+    // Counts of every tile of the frame
+    final FrameStatistics statistics = new FrameStatistics();
+
+    Frame(final SceneGeometry geometry, final LightHierarchy lights, final AntiAliasing antiAliasing,
+          final SoftShadows softShadows, final GBuffer gBuffer, final PacketKernel packetKernel) {
+        this.geometry = geometry;
+        this.lights = lights;
+        this.antiAliasing = antiAliasing;
+        this.softShadows = softShadows;
+        this.gBuffer = gBuffer;
+        this.reuseGBuffer = gBuffer != null && gBuffer.isComplete(geometry);
+        this.packetKernel = packetKernel;
+    }
+}
@@ -0,0 +1,261 @@
+package com.surenot.raytracer;
+
+import com.surenot.raytracer.render.TileRenderer;
+
+import javax.swing.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Renders frames one after the other on a background thread and hands them to the event
+ * dispatch thread, which only displays them. Three images are recycled: one displayed, one
+ * ready to be displayed and one being rendered, so the renderer never waits for the display.
+ * A ready frame the display did not take in time is replaced by the next one. The scene of
+ * the next frame is built by another thread while the current one renders.
+ * Given a frame budget, the frames are rendered at a fraction of the size, chosen from the
+ * recent render times so that a frame fits the budget, and the display upsamples them.
+ * A frame of the previous size is abandoned as soon as the size changes. The first frame
+ * after a change is rendered progressively, and its coarse passes displayed.
+ */
+public final class FramePipeline {
+
+    /**
+     * Receives the frames on the event dispatch thread.
+     */
+    public interface Display {
+
+        /**
+         * @param image      the frame, only valid until the next call: it is then rendered over
+         * @param frameNanos time between the end of the previous frame and the end of this one
+         */
+        void show(BufferedImage image, long frameNanos);
+    }
+
+    // Displayed, ready and being rendered
+    private final static int IMAGE_COUNT = 3;
+    // Fraction of the size rendered with a frame budget: at least MIN_SCALE, by SCALE_STEP
+    private final static double MIN_SCALE = 0.25;
+    private final static double SCALE_STEP = 1.0 / 16;
+    // Weight of the last frame in the average render time per pixel
+    private final static double SMOOTHING = 0.25;
+
+    private final SceneFactory factory;
+    private final TileRenderer renderer;
+    private final Display display;
+    private final BlockingQueue<BufferedImage> free = new ArrayBlockingQueue<>(IMAGE_COUNT);
+    private final AtomicReference<BufferedImage> ready = new AtomicReference<>();
+    private volatile long readyNanos;
+    private int width, height;
+    private volatile long frameBudget;
+    private double scale = 1;
+    // Only touched by the render thread
+    private double nanosPerPixel;
+    // Only touched by the event dispatch thread
+    private BufferedImage shown;
+    private Thread thread;
+    private ExecutorService builder;
+    // Frame being rendered, null between frames
+    private RenderHandle rendering;
+    // Whether the next frame shows its progressive passes
+    private boolean preview = true;
+
+    public FramePipeline(final SceneFactory factory, final TileRenderer renderer, final Display display,
+                         final int width, final int height) {
+        if (factory == null || renderer == null || display == null) throw new IllegalArgumentException();
+        this.factory = factory;
+        this.renderer = renderer;
+        this.display = display;
+        setSize(width, height);
+        for (int i = 0; i < IMAGE_COUNT; i++) free.add(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB));
+    }
+
+    /**
+     * Size of the next scenes built, images of the previous size are replaced as they are recycled.
+     */
+    public void setSize(final int width, final int height) {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException();
+        synchronized (this) {
+            if (width == this.width && height == this.height) return;
+            this.width = width;
+            this.height = height;
+            this.preview = true;
+            if (rendering != null) rendering.cancel();
+        }
+    }
+
+    /**
+     * Render time a frame should fit in, 0 to always render at the full size.
+     */
+    public void setFrameBudget(final long nanos) {
+        if (nanos < 0) throw new IllegalArgumentException();
+        frameBudget = nanos;
+        if (nanos == 0) {
+            synchronized (this) {
+                scale = 1;
+            }
+        }
+    }
+
+    public long getFrameBudget() {
+        return frameBudget;
+    }
+
+    /**
+     * Fraction of the size at which the next scenes are built, 1 without frame budget.
+     */
+    public synchronized double getScale() {
+        return scale;
+    }
+
+    public synchronized void start() {
+        if (thread != null) throw new IllegalStateException();
+        builder = Executors.newSingleThreadExecutor(runnable -> daemon(runnable, "scene-builder"));
+        thread = daemon(this::run, "frame-renderer");
+        thread.start();
+    }
+
+    /**
+     * Stops, the frame being rendered is abandoned.
+     */
+    public synchronized void stop() {
+        if (thread == null) return;
+        if (rendering != null) rendering.cancel();
+        thread.interrupt();
+        builder.shutdownNow();
+        thread = null;
+        builder = null;
+    }
+
+    private static Thread daemon(final Runnable runnable, final String name) {
+        final Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private void run() {
+        final ExecutorService builder;
+        synchronized (this) {
+            builder = this.builder;
+        }
+        try {
+            Future<Scene> next = builder.submit(() -> build(0));
+            long last = System.nanoTime();
+            for (int i = 1; !Thread.currentThread().isInterrupted(); i++) {
+                final Scene scene = next.get();
+                final int index = i;
+                next = builder.submit(() -> build(index));
+
+                BufferedImage image = free.take();
+                final Camera camera = scene.getCamera();
+                if (image.getWidth() != camera.getWidth() || image.getHeight() != camera.getHeight()) {
+                    image = new BufferedImage(camera.getWidth(), camera.getHeight(), BufferedImage.TYPE_INT_RGB);
+                }
+                final long start = System.nanoTime();
+                final boolean showPasses;
+                synchronized (this) {
+                    showPasses = preview;
+                    preview = false;
+                }
+                final RenderHandle handle = scene.submit(renderer, image, 0,
+                        showPasses ? (pass, blockSize) -> showPass(pass, blockSize, start) : null);
+                synchronized (this) {
+                    rendering = handle;
+                    // Resized or stopped while submitting, before the handle could be cancelled
+                    if (preview || thread != Thread.currentThread()) handle.cancel();
+                }
+                try {
+                    handle.await();
+                } finally {
+                    synchronized (this) {
+                        rendering = null;
+                    }
+                }
+                if (!handle.isComplete()) {
+                    free.add(image);
+                    continue;
+                }
+                final long now = System.nanoTime();
+                adapt(now - start, camera.getWidth() * camera.getHeight());
+                // A frame may take less than the timer resolution
+                readyNanos = Math.max(1, now - last);
+                last = now;
+                if (Thread.currentThread().isInterrupted()) {
+                    free.add(image);
+                    return;
+                }
+                final BufferedImage dropped = ready.getAndSet(image);
+                if (dropped != null) {
+                    // Never displayed, a call to present is already pending
+                    free.add(dropped);
+                } else {
+                    SwingUtilities.invokeLater(this::present);
+                }
+            }
+        } catch (InterruptedException | RejectedExecutionException e) {
+            // Stopped
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Displays a copy of a coarse pass, the image is rendered over by the next ones. The copy
+     * is not recycled.
+     */
+    private void showPass(final BufferedImage image, final int blockSize, final long start) {
+        if (blockSize == 1) return;
+        final BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        copy.setData(image.getRaster());
+        final long passNanos = Math.max(1, System.nanoTime() - start);
+        SwingUtilities.invokeLater(() -> display.show(copy, passNanos));
+    }
+
+    private Scene build(final int frame) {
+        final int width, height;
+        synchronized (this) {
+            width = scaled(this.width);
+            height = scaled(this.height);
+        }
+        return factory.create(frame, width, height);
+    }
+
+    private synchronized int scaled(final int size) {
+        return Math.max(1, (int) Math.round(size * scale));
+    }
+
+    /**
+     * Updates the average render time per pixel with a frame, and the scale of the next ones
+     * from it. The scale grows only when the budget leaves half a step to spare, so that it
+     * does not alternate between two steps.
+     */
+    private void adapt(final long renderNanos, final int pixelCount) {
+        final double perPixel = (double) renderNanos / pixelCount;
+        nanosPerPixel = nanosPerPixel == 0 ? perPixel : nanosPerPixel + SMOOTHING * (perPixel - nanosPerPixel);
+        final long budget = frameBudget;
+        if (budget == 0) return;
+        synchronized (this) {
+            // The render time is proportional to the number of pixels, the square of the scale
+            final double target = Math.sqrt(budget / nanosPerPixel / ((double) width * height)) / SCALE_STEP;
+            double next = Math.floor(target) * SCALE_STEP;
+            if (next > scale) next = Math.max(scale, Math.floor(target - 0.5) * SCALE_STEP);
+            scale = Math.max(MIN_SCALE, Math.min(1, next));
+        }
+    }
+
+    private void present() {
+        final long frameNanos = readyNanos;
+        final BufferedImage image = ready.getAndSet(null);
+        if (image == null) return;
+        final BufferedImage previous = shown;
+        shown = image;
+        display.show(image, frameNanos);
+        if (previous != null) free.add(previous);
+    }
+}
@@ -0,0 +1,67 @@
+package com.surenot.raytracer;
+
+import com.surenot.raytracer.primitives.MutableImpact3D;
+import com.surenot.raytracer.shapes.Shape3D;
+
+/**
+ * Primary hit of the first sample of every pixel: impacted shape and material, distance,
+ * point and normal.
+ * The camera of a Scene never changes, once complete the buffer stays valid for the geometry
+ * it was traced with and only the shading has to be redone when the lights move.
+ */
+final class GBuffer {
+
+    private final Shape3D[] shapes;
+    private final int[] primitives;
+    private final int[] materials;
+    private final double[] distances;
+    // 3 doubles per pixel
+    private final double[] points;
+    private final double[] normals;
+    // Geometry of the render that completed the buffer, null before
+    private volatile SceneGeometry complete;
+
+    GBuffer(final int pixelCount) {
+        this.shapes = new Shape3D[pixelCount];
+        this.primitives = new int[pixelCount];
+        this.materials = new int[pixelCount];
+        this.distances = new double[pixelCount];
+        this.points = new double[3 * pixelCount];
+        this.normals = new double[3 * pixelCount];
+    }
+
+    void store(final int pixel, final MutableImpact3D impact) {
+        shapes[pixel] = impact.getImpactedObject();
+        if (!impact.isHit()) return;
+        primitives[pixel] = impact.getPrimitive();
+        materials[pixel] = impact.getMaterial();
+        distances[pixel] = impact.getDistance();
+        points[3 * pixel] = impact.getX();
+        points[3 * pixel + 1] = impact.getY();
+        points[3 * pixel + 2] = impact.getZ();
+        normals[3 * pixel] = impact.getNormalX();
+        normals[3 * pixel + 1] = impact.getNormalY();
+        normals[3 * pixel + 2] = impact.getNormalZ();
+    }
+
+    void load(final int pixel, final MutableImpact3D impact) {
+        impact.reset(Double.POSITIVE_INFINITY);
+        final Shape3D shape = shapes[pixel];
+        if (shape == null) return;
+        impact.offer(shape, primitives[pixel], distances[pixel]);
+        impact.setMaterial(materials[pixel]);
+        impact.setPoint(points[3 * pixel], points[3 * pixel + 1], points[3 * pixel + 2]);
+        impact.setUnitNormal(normals[3 * pixel], normals[3 * pixel + 1], normals[3 * pixel + 2]);
+    }
+
+    /**
+     * Whether the buffer holds the primary hits of every pixel with the given geometry.
+     */
+    boolean isComplete(final SceneGeometry geometry) {
+        return complete == geometry;
+    }
+
+    void setComplete(final SceneGeometry geometry) {
+        this.complete = geometry;
+    }
+}
@@ -0,0 +1,121 @@
+package com.surenot.raytracer;
+
+import com.surenot.raytracer.primitives.Surface;
+import com.surenot.raytracer.shapes.Instance;
+import com.surenot.raytracer.shapes.Shape3D;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Surfaces of the geometry of a Scene compiled once into arrays indexed by material id. The
+ * hierarchy records the id of every impacted shape, shading reads its coefficients from
+ * there instead of decoding the colour of the surface for every sample. Equal surfaces share
+ * the same id, except those of shapes with several surfaces which get a block of ids each.
+ * Instances keeping the surfaces of their shape share its block.
+ */
+final class MaterialTable {
+
+    // Channels of the colour, in [0, 1]
+    final double[] red, green, blue;
+    // Ambient and diffuse coefficients, already scaled by the maximum intensity of the light
+    final double[] ambient, diffuse;
+    final double[] specular, specularExponent;
+    private final Map<Surface, Integer> ids;
+    // First id of the block of the shapes with several surfaces, see Shape3D.getSurfaceCount
+    private final Map<Shape3D, Integer> blocks;
+    // Surface of every id
+    private final List<Surface> surfaces;
+
+    MaterialTable(final Iterable<? extends Shape3D> shapes) {
+        this(new HashMap<>(), new IdentityHashMap<>(), new ArrayList<>(), shapes);
+    }
+
+    private MaterialTable(final Map<Surface, Integer> ids, final Map<Shape3D, Integer> blocks,
+                          final List<Surface> surfaces, final Iterable<? extends Shape3D> shapes) {
+        this.ids = ids;
+        this.blocks = blocks;
+        this.surfaces = surfaces;
+        for (Shape3D shape : shapes) {
+            final int count = shape.getSurfaceCount();
+            if (count > 1) {
+                // The surface index of a primitive is added to the first id
+                final Shape3D owner = owner(shape);
+                if (blocks.containsKey(owner)) continue;
+                blocks.put(owner, surfaces.size());
+                for (int i = 0; i < count; i++) surfaces.add(owner.getSurface(i));
+                continue;
+            }
+            final Surface surface = shape.getSurface();
+            if (!ids.containsKey(surface)) {
+                ids.put(surface, surfaces.size());
+                surfaces.add(surface);
+            }
+        }
+        final int n = surfaces.size();
+        red = new double[n];
+        green = new double[n];
+        blue = new double[n];
+        ambient = new double[n];
+        diffuse = new double[n];
+        specular = new double[n];
+        specularExponent = new double[n];
+        for (int id = 0; id < n; id++) {
+            final Surface surface = surfaces.get(id);
+            final int color = surface.getColor();
+            red[id] = (color >> 16 & 0xFF) / 255.0;
+            green[id] = (color >> 8 & 0xFF) / 255.0;
+            blue[id] = (color & 0xFF) / 255.0;
+            ambient[id] = Scene.MAX_AMBIENT_LIGHT_INTENSITY * surface.getAmbientReflectionCoefficient();
+            diffuse[id] = Scene.MAX_DIFFUSE_LIGHT_INTENSITY * surface.getDiffuseReflectionCoefficient();
+            specular[id] = surface.getSpecularReflectionCoefficient();
+            specularExponent[id] = surface.getSpecularReflectionExponent();
+        }
+    }
+
+    /**
+     * Table of the shapes of this one and the given ones. The ids of this table are kept, the
+     * surfaces of the shapes removed from a scene keep theirs until the table is built again.
+     */
+    MaterialTable with(final Collection<? extends Shape3D> shapes) {
+        boolean known = true;
+        for (Shape3D shape : shapes) {
+            known &= shape.getSurfaceCount() > 1 ? blocks.containsKey(owner(shape)) : ids.containsKey(shape.getSurface());
+        }
+        if (known) return this;
+        return new MaterialTable(new HashMap<>(ids), new IdentityHashMap<>(blocks), new ArrayList<>(surfaces), shapes);
+    }
+
+    /**
+     * Material id of a shape of the table, the first of its block when it has several surfaces.
+     */
+    int getId(final Shape3D shape) {
+        final Integer id = shape.getSurfaceCount() > 1 ? blocks.get(owner(shape)) : ids.get(shape.getSurface());
+        if (id == null) throw new IllegalArgumentException();
+        return id;
+    }
+
+    /**
+     * Shape whose surfaces a shape with several surfaces uses.
+     */
+    private static Shape3D owner(final Shape3D shape) {
+        return shape instanceof Instance && ((Instance) shape).getSurfaceCount() > 1 ?
+                owner(((Instance) shape).getShape()) :
+                shape;
+    }
+
+    int size() {
+        return surfaces.size();
+    }
+
+    @Override
+    public String toString() {
+        return "MaterialTable{" +
+                "size=" + surfaces.size() +
+                '}';
+    }
+}
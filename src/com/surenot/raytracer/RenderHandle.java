@@ -0,0 +1,157 @@
+package com.surenot.raytracer;
+
+import com.surenot.raytracer.render.Tile;
+
+import java.awt.image.BufferedImage;
+import java.util.BitSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Render started by Scene.submit. It can be cancelled, and it stops by itself at its deadline:
+ * tiles not started by then are skipped, the ones in progress are finished. The image is then
+ * only partially rendered, the coverage tells which pixels have a colour. With anti aliasing
+ * the pixels of a stopped render may only have their first sample.
+ */
+public final class RenderHandle {
+
+    private final BufferedImage image;
+    private final long timeoutNanos;
+    // System.nanoTime() at which the render stops, when it has a deadline, set once started
+    private volatile long deadline;
+    private final boolean hasDeadline;
+    private volatile boolean cancelled;
+    // Pixels written, by rows: y * width + x
+    private final BitSet coverage = new BitSet();
+    private int coveredPixelCount;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile Throwable failure;
+
+    /**
+     * @param timeoutNanos time after which the render stops, 0 for none
+     */
+    RenderHandle(final BufferedImage image, final long timeoutNanos) {
+        if (image == null || timeoutNanos < 0) throw new IllegalArgumentException();
+        this.image = image;
+        this.timeoutNanos = timeoutNanos;
+        this.hasDeadline = timeoutNanos > 0;
+    }
+
+    /**
+     * Starts the timeout, once the renders queued before this one are over.
+     */
+    void start() {
+        deadline = System.nanoTime() + timeoutNanos;
+    }
+
+    /**
+     * Stops the render as soon as possible, no new tile is started.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Whether the remaining tiles are to be skipped, because the render is cancelled or its
+     * deadline has passed.
+     */
+    boolean isStopped() {
+        return cancelled || hasDeadline && System.nanoTime() - deadline >= 0;
+    }
+
+    void cover(final Tile tile) {
+        final int width = image.getWidth();
+        synchronized (coverage) {
+            for (int y = tile.getY(); y < tile.getEndY(); y++) {
+                coverage.set(y * width + tile.getX(), y * width + tile.getEndX());
+            }
+            coveredPixelCount += tile.getPixelCount();
+        }
+    }
+
+    void finish(final Throwable failure) {
+        this.failure = failure;
+        done.countDown();
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    /**
+     * Whether the render is done and every pixel has a colour.
+     */
+    public boolean isComplete() {
+        return isDone() && getCoveredPixelCount() == image.getWidth() * image.getHeight();
+    }
+
+    /**
+     * Waits for the end of the render, complete or not.
+     *
+     * @return the image, see getCoverage for its pixels that were rendered
+     * @throws IllegalStateException if the render failed
+     */
+    public BufferedImage await() throws InterruptedException {
+        done.await();
+        return checkFailure();
+    }
+
+    /**
+     * @return the image, or null if the render is not done in time
+     */
+    public BufferedImage await(final long timeout, final TimeUnit unit) throws InterruptedException {
+        if (unit == null) throw new IllegalArgumentException();
+        if (!done.await(timeout, unit)) return null;
+        return checkFailure();
+    }
+
+    private BufferedImage checkFailure() {
+        final Throwable failure = this.failure;
+        if (failure != null) throw new IllegalStateException(failure);
+        return image;
+    }
+
+    /**
+     * Image being rendered, its pixels are only meaningful where covered.
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Pixels of the image already rendered, the bit of x, y is y * width + x.
+     */
+    public BitSet getCoverage() {
+        synchronized (coverage) {
+            return (BitSet) coverage.clone();
+        }
+    }
+
+    public boolean isCovered(final int x, final int y) {
+        if (x < 0 || y < 0 || x >= image.getWidth() || y >= image.getHeight()) throw new IllegalArgumentException();
+        synchronized (coverage) {
+            return coverage.get(y * image.getWidth() + x);
+        }
+    }
+
+    public int getCoveredPixelCount() {
+        synchronized (coverage) {
+            return coveredPixelCount;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RenderHandle{" +
+                "width=" + image.getWidth() +
+                ", height=" + image.getHeight() +
+                ", coveredPixelCount=" + getCoveredPixelCount() +
+                ", cancelled=" + cancelled +
+                ", done=" + isDone() +
+                '}';
+    }
+}
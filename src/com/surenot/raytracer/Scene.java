@@ -1,13 +1,29 @@
 package com.surenot.raytracer;
 
+import com.surenot.raytracer.acceleration.LightHierarchy;
+import com.surenot.raytracer.acceleration.PacketKernel;
 import com.surenot.raytracer.primitives.*;
+import com.surenot.raytracer.render.AntiAliasing;
+import com.surenot.raytracer.render.SoftShadows;
+import com.surenot.raytracer.render.Tile;
+import com.surenot.raytracer.render.TileRenderer;
 import com.surenot.raytracer.shapes.Light3D;
 import com.surenot.raytracer.shapes.Shape3D;
+import com.surenot.raytracer.stats.FrameSummary;
+import com.surenot.raytracer.stats.RenderStatistics;
+import com.surenot.raytracer.stats.TraceCounters;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 public final class Scene {
@@ -30,143 +46,1012 @@ public final class Scene {
 
     public final static double MAX_AMBIENT_LIGHT_INTENSITY = 0.3;
     public final static double MAX_DIFFUSE_LIGHT_INTENSITY = 1 - MAX_AMBIENT_LIGHT_INTENSITY;
-    public final static int ANTI_ALIASING = 1;
+    // A light attenuated below this adds less than half a level to an 8 bits channel
+    public final static double DEFAULT_LIGHT_THRESHOLD = 1.0 / 1024;
+    // Side of the blocks of pixels sharing a sample in the first pass of a progressive render
+    public final static int PREVIEW_BLOCK_SIZE = 4;
 
-    private final Collection<Collection<Ray>> newScreen;
-    private final Collection<Shape3D> shapes;
-    private final Collection<Light3D> lights;
-    private final BufferedImage image;
+    /**
+     * Receives the passes of a progressive render, on the thread that rendered them.
+     */
+    public interface PassListener {
+
+        /**
+         * @param image     the image, blocks of blockSize x blockSize pixels share their colour,
+         *                  the final image when blockSize is 1. Rendered over by the next pass.
+         * @param blockSize PREVIEW_BLOCK_SIZE, then halved by every pass down to 1
+         */
+        void passRendered(BufferedImage image, int blockSize);
+    }
+
+    private final Camera camera;
+    // Lights are kept out of the geometry so that they can move without updating its hierarchy
+    private volatile SceneGeometry geometry;
+    private volatile LightHierarchy lights;
+    // Changes of the shapes since the last render, guarded by this
+    private final SceneChanges changes = new SceneChanges();
+    private volatile boolean changed;
+    private volatile double lightThreshold = DEFAULT_LIGHT_THRESHOLD;
+    private final ThreadLocal<TraceContext> contexts = ThreadLocal.withInitial(TraceContext::new);
+    private volatile AntiAliasing antiAliasing = AntiAliasing.NONE;
+    private volatile SoftShadows softShadows = SoftShadows.NONE;
+    private volatile boolean gBufferEnabled;
+    private volatile int refinedPixelCount;
+    private volatile FrameSummary lastFrame = FrameSummary.NONE;
+    private volatile RenderStatistics statistics;
+    private volatile PacketKernel packetKernel;
+    // Starts of the renders waiting for the one in progress, which writes the image, G-buffer
+    // and first samples below. Each render starts the next one as it ends
+    private final Deque<Runnable> queuedRenders = new ArrayDeque<>();
+    // Guarded by queuedRenders
+    private boolean renderInProgress;
+    private BufferedImage image;
+    private GBuffer gBuffer;
+    // First sample and visible shape of every pixel, only allocated for adaptive anti aliasing
+    private int[] firstSamples;
+    private Shape3D[] visibleShapes;
 
     public Scene(final Point3D observer,
                  final Point3D origin,
                  final Dimension2D screenSize,
                  final int pixelCountX, final int pixelCountY,
                  final Collection<Shape3D> shapes) {
-        if (observer == null || origin == null || screenSize == null || shapes == null) {
+        this(new Camera(observer, origin, screenSize, pixelCountX, pixelCountY), shapes);
+    }
+
+    public Scene(final Camera camera, final Collection<Shape3D> shapes) {
+        if (camera == null || shapes == null) {
             throw new IllegalArgumentException();
         }
-        if (screenSize.getX() <= 0) throw new IllegalArgumentException();
-        if (screenSize.getY() <= 0) throw new IllegalArgumentException();
-        if (pixelCountX <= 0) throw new IllegalArgumentException();
-        if (pixelCountY <= 0) throw new IllegalArgumentException();
-
-        int aaPixelCountX = pixelCountX * ANTI_ALIASING;
-        int aaPixelCountY = pixelCountY * ANTI_ALIASING;
-
-        this.image = new BufferedImage(pixelCountY, pixelCountX, BufferedImage.TYPE_INT_RGB);
-        this.newScreen = new ArrayList<>(pixelCountX * pixelCountY);
-        this.shapes = new ArrayList<>(shapes);
-        this.lights = new ArrayList<>(shapes.stream()
+        this.camera = camera;
+        this.geometry = new SceneGeometry(camera, shapes.stream()
+                .filter((shape) -> !(shape instanceof Light3D))
+                .collect(Collectors.toList()));
+        this.lights = new LightHierarchy(shapes.stream()
                 .filter((shape) -> shape instanceof Light3D)
                 .map(light -> (Light3D) light)
-                .collect(Collectors.toList()));
+                .toArray(Light3D[]::new), lightThreshold);
+    }
 
-        double pixelSizeY = screenSize.getX() / pixelCountX;
-        double pixelSizeZ = screenSize.getY() / pixelCountY;
-        for (int i = 0; i < pixelCountY; i++) {
-            for (int j = 0; j < pixelCountX; j++) {
-                ArrayList<Ray> list = new ArrayList();
-                for ( int x = 0; x < ANTI_ALIASING; x++ ){
-                    for ( int y = 0; y < ANTI_ALIASING; y++ ){
-                        list.add(new Ray(i, j,
-                                new Vector3D(
-                                        new Point3D(origin.getX(),
-                                            origin.getY() + ( i + x ) * pixelSizeY,
-                                            origin.getZ() - ( j + y ) * pixelSizeZ)
-                                                .substract(observer),
-                                        new Point3D(origin.getX(),
-                                            origin.getY() + ( i + x ) * pixelSizeY,
-                                            origin.getZ() - ( j + y ) * pixelSizeZ)
-                                                .substract(observer),
-                                        false)));
-                    }
+    private Scene(final Camera camera, final Scene scene) {
+        scene.applyChanges();
+        this.camera = camera;
+        this.geometry = scene.geometry.withCamera(camera);
+        this.lights = scene.lights.getThreshold() == lightThreshold ?
+                scene.lights :
+                new LightHierarchy(scene.lights.getLights().toArray(new Light3D[0]), lightThreshold);
+    }
+
+    /**
+     * New scene of the same shapes and current lights seen through another camera. The
+     * geometry and its hierarchy are immutable and shared, only the screen bins of the camera
+     * are built; render settings are not copied. Later changes of either scene do not affect
+     * the other one.
+     */
+    public Scene withCamera(final Camera camera) {
+        if (camera == null) throw new IllegalArgumentException();
+        return new Scene(camera, this);
+    }
+
+    public Camera getCamera() {
+        return camera;
+    }
+
+    /**
+     * Every shape of the scene, the current lights included, enough to build the same scene again.
+     */
+    public Collection<Shape3D> getShapes() {
+        applyChanges();
+        final List<Shape3D> shapes = new ArrayList<>(geometry.shapes);
+        shapes.addAll(lights.getLights());
+        return shapes;
+    }
+
+    public Collection<Light3D> getLights() {
+        applyChanges();
+        return lights.getLights();
+    }
+
+    /**
+     * Adds a shape, or a light, to the scene.
+     * Changes of the shapes are batched: they are applied together when the next render starts
+     * and renders already in progress are not affected. Only the bins and the part of the
+     * hierarchy covering the changed shapes are updated. Shapes are compared by identity.
+     */
+    public synchronized void add(final Shape3D shape) {
+        if (shape == null) throw new IllegalArgumentException();
+        changes.add(shape);
+        changed = true;
+    }
+
+    /**
+     * Removes a shape, or a light, from the scene when the next render starts, see add.
+     * Nothing happens if the shape is not in the scene.
+     */
+    public synchronized void remove(final Shape3D shape) {
+        if (shape == null) throw new IllegalArgumentException();
+        changes.remove(shape);
+        changed = true;
+    }
+
+    /**
+     * Replaces a shape by another one when the next render starts, typically the same shape
+     * moved, see add. Lights are only replaced by lights. Nothing happens if the shape is not
+     * in the scene.
+     */
+    public synchronized void replace(final Shape3D shape, final Shape3D replacement) {
+        if (shape == null || replacement == null) throw new IllegalArgumentException();
+        if (shape instanceof Light3D != replacement instanceof Light3D) throw new IllegalArgumentException();
+        changes.replace(shape, replacement);
+        changed = true;
+    }
+
+    /**
+     * Applies the pending changes to the geometry and the lights.
+     */
+    private void applyChanges() {
+        if (!changed) return;
+        synchronized (this) {
+            changed = false;
+            if (changes.isEmpty()) return;
+            geometry = geometry.update(changes);
+            final Map<Shape3D, Shape3D> replaced = changes.getReplaced();
+            final List<Light3D> lights = new ArrayList<>();
+            boolean lightsChanged = false;
+            for (Light3D light : this.lights.getLights()) {
+                if (!replaced.containsKey(light)) {
+                    lights.add(light);
+                    continue;
                 }
-                newScreen.add(list);
+                lightsChanged = true;
+                if (replaced.get(light) != null) lights.add((Light3D) replaced.get(light));
+            }
+            for (Shape3D shape : changes.getAdded()) {
+                if (!(shape instanceof Light3D)) continue;
+                lightsChanged = true;
+                lights.add((Light3D) shape);
+            }
+            if (lightsChanged) this.lights = new LightHierarchy(lights.toArray(new Light3D[lights.size()]), lightThreshold);
+            changes.clear();
+        }
+    }
+
+    /**
+     * Replaces the lights of the scene from the next render on. The geometry is untouched, with
+     * the G-buffer enabled the next render only redoes the shading.
+     */
+    public synchronized void setLights(final Collection<Light3D> lights) {
+        if (lights == null || lights.contains(null)) throw new IllegalArgumentException();
+        applyChanges();
+        this.lights = new LightHierarchy(lights.toArray(new Light3D[lights.size()]), lightThreshold);
+    }
+
+    public double getLightThreshold() {
+        return lightThreshold;
+    }
+
+    /**
+     * Attenuation factor below which a light is ignored by the next renders: points beyond its
+     * influence radius are not shaded by it and cast no shadow ray to it. 0 never ignores any.
+     * DEFAULT_LIGHT_THRESHOLD by default.
+     */
+    public synchronized void setLightThreshold(final double lightThreshold) {
+        if (!(lightThreshold >= 0)) throw new IllegalArgumentException();
+        this.lightThreshold = lightThreshold;
+        applyChanges();
+        this.lights = new LightHierarchy(lights.getLights().toArray(new Light3D[0]), lightThreshold);
+    }
+
+    public AntiAliasing getAntiAliasing() {
+        return antiAliasing;
+    }
+
+    /**
+     * Anti aliasing used by the next renders, AntiAliasing.NONE by default.
+     */
+    public void setAntiAliasing(final AntiAliasing antiAliasing) {
+        if (antiAliasing == null) throw new IllegalArgumentException();
+        this.antiAliasing = antiAliasing;
+    }
+
+    public SoftShadows getSoftShadows() {
+        return softShadows;
+    }
+
+    /**
+     * Soft shadows used by the next renders, SoftShadows.NONE by default: every light is then a
+     * point at its center and casts hard shadows.
+     */
+    public void setSoftShadows(final SoftShadows softShadows) {
+        if (softShadows == null) throw new IllegalArgumentException();
+        this.softShadows = softShadows;
+    }
+
+    public boolean isGBufferEnabled() {
+        return gBufferEnabled;
+    }
+
+    /**
+     * Keeps the primary hit of every pixel (shape, point, normal and distance) after a render,
+     * the following renders only run the shading and shadow stage for them. Worth it when only
+     * the lights change between frames, it costs about 70 bytes per pixel.
+     * Additional anti aliasing samples are always traced.
+     */
+    public synchronized void setGBufferEnabled(final boolean enabled) {
+        this.gBufferEnabled = enabled;
+        if (!enabled) gBuffer = null;
+    }
+
+    /**
+     * Number of pixels that got more than one sample during the last render.
+     */
+    public int getRefinedPixelCount() {
+        return refinedPixelCount;
+    }
+
+    /**
+     * Rays, intersection tests and tile times of the last render, FrameSummary.NONE before the
+     * first one.
+     */
+    public FrameSummary getLastFrame() {
+        return lastFrame;
+    }
+
+    public RenderStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Statistics every following render is added to, null for none. Renders of a single tile
+     * count as frames of their pixels.
+     */
+    public void setStatistics(final RenderStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    public PacketKernel getPacketKernel() {
+        return packetKernel;
+    }
+
+    /**
+     * Kernel intersecting the spheres with the first samples of the pixels, traced by packets
+     * of RayPacket.SIZE consecutive pixels of a row, PacketKernels.getDefault() for the preferred
+     * one available. Null, the default, traces them one by one. The image is the same either way.
+     */
+    public void setPacketKernel(final PacketKernel packetKernel) {
+        this.packetKernel = packetKernel;
+    }
+
+    /**
+     * Colour of the primary ray going through the given image coordinates, traced as render
+     * would trace the first sample of a pixel but without the G-buffer.
+     */
+    public int computeColor(final double column, final double row) {
+        applyChanges();
+        final TraceContext context = contexts.get();
+        context.set(geometry, lights, softShadows);
+        return trace(column, row, context);
+    }
+
+    /**
+     * Colours of count consecutive pixels of a row from the given column on, traced as render
+     * traces first samples: by packets with the packet kernel, without the G-buffer.
+     */
+    public void computeColors(final int column, final int row, final int count, final int[] colors) {
+        if (colors == null || count < 0 || colors.length < count) throw new IllegalArgumentException();
+        applyChanges();
+        final Frame frame = new Frame(geometry, lights, antiAliasing, softShadows, null, packetKernel);
+        final TraceContext context = contexts.get();
+        context.set(frame.geometry, frame.lights, frame.softShadows);
+        for (int x = 0; x < count; x += RayPacket.SIZE) {
+            final int n = Math.min(RayPacket.SIZE, count - x);
+            final boolean packed = tracePacket(column + x, row, n, frame, context);
+            for (int lane = 0; lane < n; lane++) {
+                colors[x + lane] = firstSample(column + x + lane, row, -1, frame, context, packed ? lane : -1);
             }
         }
     }
 
     public BufferedImage render() {
-        newScreen.parallelStream()
-                .forEach(rayList -> {
-                    int r = 0, g = 0, b = 0;
-                    Integer x = null, y = null;
-                    for ( Ray ray : rayList ){
-                        if ( x == null ) x = ray.getX();
-                        if ( y == null ) y = ray.getY();
-                        Color c = new Color(computeColor(ray.getVector()));
-                        r += c.getRed();
-                        g += c.getGreen();
-                        b += c.getBlue();
-                    }
-                    synchronized (image) {
-                        image.setRGB(x, y,
-                                new Color(r / rayList.size(), g / rayList.size(), b / rayList.size()).getRGB());
+        return render(TileRenderer.DEFAULT);
+    }
+
+    /**
+     * Renders the image tile by tile on the given renderer. Every tile writes its own pixels
+     * straight into the backing array of the image, no lock is taken.
+     * The same image is returned, and overwritten, by every call. Renders of a scene run one at
+     * a time, a render waits for the end of the one in progress.
+     */
+    public BufferedImage render(final TileRenderer renderer) {
+        return render(renderer, getImage());
+    }
+
+    /**
+     * Renders into the given image instead of the one of the scene, so that callers can recycle
+     * their images between scenes. It must be a TYPE_INT_RGB image of the size of the camera.
+     */
+    public BufferedImage render(final TileRenderer renderer, final BufferedImage image) {
+        checkImage(renderer, image);
+        awaitTurn();
+        try {
+            render(renderer, image, null, null);
+        } finally {
+            endRender();
+        }
+        return image;
+    }
+
+    /**
+     * Renders progressively, coarse to fine: the first pass traces one pixel out of every
+     * PREVIEW_BLOCK_SIZE x PREVIEW_BLOCK_SIZE block and copies its colour to the whole block,
+     * every next pass halves the blocks and only traces their pixels not traced yet. Anti
+     * aliasing is applied after the last pass. Every pass is given to the listener.
+     */
+    public BufferedImage render(final TileRenderer renderer, final BufferedImage image, final PassListener listener) {
+        checkImage(renderer, image);
+        if (listener == null) throw new IllegalArgumentException();
+        awaitTurn();
+        try {
+            render(renderer, image, null, listener);
+        } finally {
+            endRender();
+        }
+        return image;
+    }
+
+    /**
+     * Starts rendering into the given image on the renderer and returns at once, see
+     * render(TileRenderer, BufferedImage). The render can be cancelled through the handle,
+     * which gives the partially rendered image. When a render of the scene is in progress it
+     * is queued and starts once the ones before it end: cancel them to start sooner, their
+     * tiles in flight are finished before this render writes anything. The timeout counts
+     * from that start.
+     */
+    public RenderHandle submit(final TileRenderer renderer, final BufferedImage image) {
+        return submit(renderer, image, 0);
+    }
+
+    /**
+     * @param timeoutNanos time after which the render stops, complete or not, 0 for none
+     */
+    public RenderHandle submit(final TileRenderer renderer, final BufferedImage image, final long timeoutNanos) {
+        return submit(renderer, image, timeoutNanos, null);
+    }
+
+    /**
+     * Starts a progressive render, see render(TileRenderer, BufferedImage, PassListener). Only
+     * the pixels of the last pass are covered, a render stopped before keeps its last pass.
+     *
+     * @param listener null for a render that is not progressive
+     */
+    public RenderHandle submit(final TileRenderer renderer, final BufferedImage image, final long timeoutNanos,
+                               final PassListener listener) {
+        checkImage(renderer, image);
+        final RenderHandle handle = new RenderHandle(image, timeoutNanos);
+        final Runnable start = () -> {
+            try {
+                renderer.execute(() -> {
+                    try {
+                        handle.start();
+                        render(renderer, image, handle, listener);
+                        handle.finish(null);
+                    } catch (RuntimeException | Error e) {
+                        handle.finish(e);
+                    } finally {
+                        endRender();
                     }
                 });
+            } catch (RuntimeException e) {
+                // Renderer shut down
+                handle.finish(e);
+                throw e;
+            }
+        };
+        synchronized (queuedRenders) {
+            if (renderInProgress) {
+                queuedRenders.add(start);
+                return handle;
+            }
+            renderInProgress = true;
+        }
+        try {
+            start.run();
+        } catch (RuntimeException e) {
+            endRender();
+            throw e;
+        }
+        return handle;
+    }
+
+    /**
+     * Waits for the renders in progress and queued to end, the caller then renders and calls
+     * endRender.
+     */
+    private void awaitTurn() {
+        final Semaphore turn = new Semaphore(0);
+        synchronized (queuedRenders) {
+            if (!renderInProgress) {
+                renderInProgress = true;
+                return;
+            }
+            queuedRenders.add(turn::release);
+        }
+        turn.acquireUninterruptibly();
+    }
+
+    /**
+     * Starts the next queued render, if any. Never blocks, it is called by the pool threads.
+     */
+    private void endRender() {
+        while (true) {
+            final Runnable next;
+            synchronized (queuedRenders) {
+                next = queuedRenders.poll();
+                if (next == null) {
+                    renderInProgress = false;
+                    return;
+                }
+            }
+            try {
+                next.run();
+                return;
+            } catch (RuntimeException e) {
+                // Its renderer is shut down and its handle failed, try the next one
+            }
+        }
+    }
+
+    private void checkImage(final TileRenderer renderer, final BufferedImage image) {
+        if (renderer == null || image == null) throw new IllegalArgumentException();
+        if (image.getType() != BufferedImage.TYPE_INT_RGB) throw new IllegalArgumentException();
+        if (image.getWidth() != camera.getWidth() || image.getHeight() != camera.getHeight()) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Renders the image, progressively when there is a listener. Tiles are skipped once the
+     * handle, when given, is stopped.
+     */
+    private void render(final TileRenderer renderer, final BufferedImage image, final RenderHandle handle,
+                        final PassListener listener) {
+        applyChanges();
+        final Frame frame = new Frame(geometry, lights, antiAliasing, softShadows, getGBuffer(), packetKernel);
+        // A stopped render leaves the buffer partially written
+        if (frame.gBuffer != null && !frame.reuseGBuffer) frame.gBuffer.setComplete(null);
+        final AntiAliasing aa = frame.antiAliasing;
+        final int width = image.getWidth(), height = image.getHeight();
+        final int[] raster = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        if (listener != null) {
+            renderPasses(renderer, image, frame, handle, listener);
+        } else if (!aa.isAdaptive()) {
+            renderer.render(width, height, tile -> {
+                if (handle != null && handle.isStopped()) return;
+                renderTile(tile, frame, raster, null, aa.getGridSize());
+                if (handle != null) handle.cover(tile);
+            });
+            refinedPixelCount = aa.getGridSize() == 1 ? 0 : handle == null ? width * height : handle.getCoveredPixelCount();
+        } else {
+            // Every pixel is compared with neighbours of other tiles, the first pass must be
+            // complete before any pixel is refined
+            final int[] samples = getFirstSamples();
+            final Shape3D[] shapes = visibleShapes;
+            final AtomicInteger refined = new AtomicInteger();
+            renderer.render(width, height, tile -> {
+                if (handle != null && handle.isStopped()) return;
+                renderTile(tile, frame, samples, shapes, 1);
+                if (handle != null) handle.cover(tile);
+            });
+            // Once stopped, the traced tiles only get their first samples
+            final boolean traced = handle == null || !handle.isStopped();
+            renderer.render(width, height, tile -> {
+                if (traced && (handle == null || !handle.isStopped())) {
+                    refined.addAndGet(refineTile(tile, frame, samples, shapes, raster));
+                } else if (handle.isCovered(tile.getX(), tile.getY())) {
+                    copyTile(tile, samples, raster);
+                }
+            });
+            refinedPixelCount = refined.get();
+        }
+        final int covered = handle == null ? width * height : handle.getCoveredPixelCount();
+        if (listener != null && covered == width * height) listener.passRendered(image, 1);
+        if (frame.gBuffer != null && covered == width * height) frame.gBuffer.setComplete(frame.geometry);
+        report(frame, covered);
+    }
+
+    private void report(final Frame frame, final int pixelCount) {
+        final FrameSummary summary = frame.statistics.summarize(pixelCount);
+        lastFrame = summary;
+        final RenderStatistics statistics = this.statistics;
+        if (statistics != null) statistics.add(summary);
+    }
+
+    /**
+     * Renders a single tile on the calling thread, independently of the rest of the image, for
+     * renderers that do not own the whole image. The pixels of the tile are written row by row
+     * and the G-buffer is not used. With adaptive anti aliasing the first pass also traces a one
+     * pixel border around the tile, the result is the same as in a full render. The tile is
+     * reported to the statistics as a frame of its own.
+     */
+    public void render(final Tile tile, final int[] pixels) {
+        if (tile == null || pixels == null) throw new IllegalArgumentException();
+        final int width = camera.getWidth(), height = camera.getHeight();
+        if (tile.getEndX() > width || tile.getEndY() > height) throw new IllegalArgumentException();
+        if (pixels.length < tile.getPixelCount()) throw new IllegalArgumentException();
+        applyChanges();
+        final Frame frame = new Frame(geometry, lights, antiAliasing, softShadows, null, packetKernel);
+        final AntiAliasing aa = frame.antiAliasing;
+        final TraceContext context = contexts.get();
+        context.set(frame.geometry, frame.lights, frame.softShadows);
+        context.counters.reset();
+        final long start = System.nanoTime();
+        if (!aa.isAdaptive()) {
+            final int gridSize = aa.getGridSize();
+            int i = 0;
+            for (int y = tile.getY(); y < tile.getEndY(); y++) {
+                for (int x0 = tile.getX(); x0 < tile.getEndX(); x0 += RayPacket.SIZE) {
+                    final int count = Math.min(RayPacket.SIZE, tile.getEndX() - x0);
+                    final boolean packed = tracePacket(x0, y, count, frame, context);
+                    for (int lane = 0; lane < count; lane++) {
+                        final int x = x0 + lane;
+                        final int rgb = firstSample(x, y, i, frame, context, packed ? lane : -1);
+                        pixels[i++] = gridSize == 1 ? rgb & 0xFFFFFF : supersample(x, y, rgb, gridSize, context);
+                    }
+                }
+            }
+            frame.statistics.add(context.counters, System.nanoTime() - start);
+            report(frame, tile.getPixelCount());
+            return;
+        }
+        final int startX = Math.max(0, tile.getX() - 1), endX = Math.min(width, tile.getEndX() + 1);
+        final int startY = Math.max(0, tile.getY() - 1), endY = Math.min(height, tile.getEndY() + 1);
+        final int borderWidth = endX - startX, borderHeight = endY - startY;
+        final int[] samples = new int[borderWidth * borderHeight];
+        final Shape3D[] shapes = new Shape3D[samples.length];
+        for (int y = startY, i = 0; y < endY; y++) {
+            for (int x0 = startX; x0 < endX; x0 += RayPacket.SIZE) {
+                final int count = Math.min(RayPacket.SIZE, endX - x0);
+                final boolean packed = tracePacket(x0, y, count, frame, context);
+                for (int lane = 0; lane < count; lane++, i++) {
+                    samples[i] = firstSample(x0 + lane, y, i, frame, context, packed ? lane : -1) & 0xFFFFFF;
+                    shapes[i] = visibleShape(context);
+                }
+            }
+        }
+        int pixel = 0;
+        for (int y = tile.getY(); y < tile.getEndY(); y++) {
+            for (int x = tile.getX(); x < tile.getEndX(); x++) {
+                final int bx = x - startX, by = y - startY;
+                final int i = by * borderWidth + bx;
+                pixels[pixel++] = isEdge(samples, shapes, bx, by, borderWidth, borderHeight, aa) ?
+                        supersample(x, y, samples[i], aa.getGridSize(), context) :
+                        samples[i];
+            }
+        }
+        frame.statistics.add(context.counters, System.nanoTime() - start);
+        report(frame, tile.getPixelCount());
+    }
+
+    private synchronized BufferedImage getImage() {
+        // Allocated on first render only, a Scene that is never rendered does not hold pixels
+        if (image == null) {
+            image = new BufferedImage(camera.getWidth(), camera.getHeight(), BufferedImage.TYPE_INT_RGB);
+        }
         return image;
     }
 
-    private int computeColor(final Vector3D v) {
-        // TODO Expensive computation, spend some time to optimise
-        Impact3D impact = shapes.stream()
-                //.filter // TODO Find a heuristic to remove shapes for which we know they will not be hit
-                .map(shape -> shape.isHit(v))
-                .filter(ri -> !ri.equals(Impact3D.NONE))
-                .reduce(Impact3D.NONE, (a, b) -> a.getDistance() < b.getDistance() ? a : b);
+    private synchronized GBuffer getGBuffer() {
+        if (gBufferEnabled && gBuffer == null) gBuffer = new GBuffer(camera.getWidth() * camera.getHeight());
+        return gBuffer;
+    }
+
+    private synchronized int[] getFirstSamples() {
+        if (firstSamples == null) {
+            firstSamples = new int[camera.getWidth() * camera.getHeight()];
+            visibleShapes = new Shape3D[firstSamples.length];
+        }
+        return firstSamples;
+    }
+
+    /**
+     * Traces a gridSize x gridSize grid in every pixel of the tile. The shape seen by the first
+     * sample of each pixel is recorded in shapes when given.
+     */
+    private void renderTile(final Tile tile, final Frame frame, final int[] raster,
+                            final Shape3D[] shapes, final int gridSize) {
+        final long start = System.nanoTime();
+        final int width = camera.getWidth();
+        final TraceContext context = contexts.get();
+        context.set(frame.geometry, frame.lights, frame.softShadows);
+        context.counters.reset();
+        for (int y = tile.getY(); y < tile.getEndY(); y++) {
+            for (int x0 = tile.getX(); x0 < tile.getEndX(); x0 += RayPacket.SIZE) {
+                final int count = Math.min(RayPacket.SIZE, tile.getEndX() - x0);
+                final boolean packed = tracePacket(x0, y, count, frame, context);
+                for (int lane = 0; lane < count; lane++) {
+                    final int x = x0 + lane;
+                    final int i = y * width + x;
+                    final int rgb = firstSample(x, y, i, frame, context, packed ? lane : -1);
+                    if (shapes != null) shapes[i] = visibleShape(context);
+                    raster[i] = gridSize == 1 ? rgb & 0xFFFFFF : supersample(x, y, rgb, gridSize, context);
+                }
+            }
+        }
+        frame.statistics.add(context.counters, System.nanoTime() - start);
+    }
+
+    /**
+     * Second adaptive pass: pixels on a contrast or shape edge get the full sample grid, the
+     * others keep their first sample.
+     *
+     * @return the number of refined pixels of the tile
+     */
+    private int refineTile(final Tile tile, final Frame frame, final int[] samples, final Shape3D[] shapes,
+                           final int[] raster) {
+        final long start = System.nanoTime();
+        final int width = camera.getWidth(), height = camera.getHeight();
+        final AntiAliasing aa = frame.antiAliasing;
+        final TraceContext context = contexts.get();
+        context.set(frame.geometry, frame.lights, frame.softShadows);
+        context.counters.reset();
+        int refined = 0;
+        for (int y = tile.getY(); y < tile.getEndY(); y++) {
+            for (int x = tile.getX(); x < tile.getEndX(); x++) {
+                final int i = y * width + x;
+                if (isEdge(samples, shapes, x, y, width, height, aa)) {
+                    raster[i] = supersample(x, y, samples[i], aa.getGridSize(), context);
+                    refined++;
+                } else {
+                    raster[i] = samples[i];
+                }
+            }
+        }
+        frame.statistics.add(context.counters, System.nanoTime() - start);
+        return refined;
+    }
+
+    /**
+     * Passes of a progressive render, then its anti aliasing. With adaptive anti aliasing the
+     * passes trace the first samples, which are copied to the image.
+     */
+    private void renderPasses(final TileRenderer renderer, final BufferedImage image, final Frame frame,
+                              final RenderHandle handle, final PassListener listener) {
+        final AntiAliasing aa = frame.antiAliasing;
+        final int width = image.getWidth(), height = image.getHeight();
+        final int[] raster = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        final int[] samples = aa.isAdaptive() ? getFirstSamples() : raster;
+        final Shape3D[] shapes = aa.isAdaptive() ? visibleShapes : null;
+        for (int blockSize = PREVIEW_BLOCK_SIZE; blockSize >= 1; blockSize /= 2) {
+            final int size = blockSize;
+            renderer.render(width, height, tile -> {
+                if (handle != null && handle.isStopped()) return;
+                traceBlocks(tile, frame, samples, shapes, size);
+                if (size == 1 && handle != null) handle.cover(tile);
+            });
+            // Blocks whose sample was not traced keep the previous pass
+            if (handle != null && handle.isStopped()) break;
+            if (size == 1) break;
+            renderer.render(width, height, tile -> fillBlocks(tile, samples, raster, size));
+            listener.passRendered(image, size);
+        }
+        final boolean traced = handle == null || !handle.isStopped();
+        if (!aa.isAdaptive()) {
+            if (aa.getGridSize() > 1 && traced) {
+                renderer.render(width, height, tile -> supersampleTile(tile, frame, raster, aa.getGridSize()));
+            }
+            refinedPixelCount = aa.getGridSize() == 1 || !traced ? 0 : width * height;
+            return;
+        }
+        final AtomicInteger refined = new AtomicInteger();
+        renderer.render(width, height, tile -> {
+            if (traced && (handle == null || !handle.isStopped())) {
+                refined.addAndGet(refineTile(tile, frame, samples, shapes, raster));
+            } else if (handle.isCovered(tile.getX(), tile.getY())) {
+                copyTile(tile, samples, raster);
+            }
+        });
+        refinedPixelCount = refined.get();
+    }
+
+    /**
+     * Traces the first sample of the pixels of the tile on the grid of the given block size not
+     * traced by the pass of the blocks twice as large.
+     */
+    private void traceBlocks(final Tile tile, final Frame frame, final int[] samples, final Shape3D[] shapes,
+                             final int blockSize) {
+        final long start = System.nanoTime();
+        final int width = camera.getWidth();
+        final TraceContext context = contexts.get();
+        context.set(frame.geometry, frame.lights, frame.softShadows);
+        context.counters.reset();
+        final boolean first = blockSize == PREVIEW_BLOCK_SIZE;
+        for (int y = tile.getY(); y < tile.getEndY(); y++) {
+            if (y % blockSize != 0) continue;
+            // Rows of the previous pass already have every other pixel
+            final boolean traced = !first && y % (2 * blockSize) == 0;
+            if (blockSize == 1 && !traced) {
+                for (int x0 = tile.getX(); x0 < tile.getEndX(); x0 += RayPacket.SIZE) {
+                    final int count = Math.min(RayPacket.SIZE, tile.getEndX() - x0);
+                    final boolean packed = tracePacket(x0, y, count, frame, context);
+                    for (int lane = 0; lane < count; lane++) {
+                        final int i = y * width + x0 + lane;
+                        samples[i] = firstSample(x0 + lane, y, i, frame, context, packed ? lane : -1) & 0xFFFFFF;
+                        if (shapes != null) shapes[i] = visibleShape(context);
+                    }
+                }
+                continue;
+            }
+            for (int x = tile.getX(); x < tile.getEndX(); x++) {
+                if (x % blockSize != 0 || traced && x % (2 * blockSize) == 0) continue;
+                final int i = y * width + x;
+                samples[i] = firstSample(x, y, i, frame, context, -1) & 0xFFFFFF;
+                if (shapes != null) shapes[i] = visibleShape(context);
+            }
+        }
+        frame.statistics.add(context.counters, System.nanoTime() - start);
+    }
+
+    /**
+     * Copies the sample of every block to its pixels.
+     */
+    private void fillBlocks(final Tile tile, final int[] samples, final int[] raster, final int blockSize) {
+        final int width = camera.getWidth();
+        for (int y = tile.getY(); y < tile.getEndY(); y++) {
+            final int row = (y - y % blockSize) * width;
+            for (int x = tile.getX(); x < tile.getEndX(); x++) {
+                raster[y * width + x] = samples[row + x - x % blockSize];
+            }
+        }
+    }
 
-        if (impact.equals(Impact3D.NONE)) return Color.BLACK.getRGB();
-        if (impact.getImpactedObject().getClass() == Light3D.class) return impact.getImpactedObject().getSurface().getColor();
+    /**
+     * Fixed anti aliasing of pixels whose first sample is already in the image.
+     */
+    private void supersampleTile(final Tile tile, final Frame frame, final int[] raster, final int gridSize) {
+        final long start = System.nanoTime();
+        final int width = camera.getWidth();
+        final TraceContext context = contexts.get();
+        context.set(frame.geometry, frame.lights, frame.softShadows);
+        context.counters.reset();
+        for (int y = tile.getY(); y < tile.getEndY(); y++) {
+            for (int x = tile.getX(); x < tile.getEndX(); x++) {
+                final int i = y * width + x;
+                raster[i] = supersample(x, y, raster[i], gridSize, context);
+            }
+        }
+        frame.statistics.add(context.counters, System.nanoTime() - start);
+    }
+
+    private void copyTile(final Tile tile, final int[] samples, final int[] raster) {
+        final int width = camera.getWidth();
+        for (int y = tile.getY(); y < tile.getEndY(); y++) {
+            System.arraycopy(samples, y * width + tile.getX(), raster, y * width + tile.getX(), tile.getWidth());
+        }
+    }
+
+    /**
+     * Whether the pixel at x, y of a width x height block of first samples differs from any of
+     * its neighbours in the block.
+     */
+    private static boolean isEdge(final int[] samples, final Shape3D[] shapes,
+                                  final int x, final int y, final int width, final int height,
+                                  final AntiAliasing aa) {
+        final int i = y * width + x;
+        return (x > 0 && isEdge(samples, shapes, i, i - 1, aa)) ||
+                (x < width - 1 && isEdge(samples, shapes, i, i + 1, aa)) ||
+                (y > 0 && isEdge(samples, shapes, i, i - width, aa)) ||
+                (y < height - 1 && isEdge(samples, shapes, i, i + width, aa));
+    }
+
+    private static boolean isEdge(final int[] samples, final Shape3D[] shapes, final int i, final int j,
+                                  final AntiAliasing aa) {
+        if (shapes[i] != shapes[j]) return true;
+        final int a = samples[i], b = samples[j];
+        final int threshold = aa.getContrastThreshold();
+        return Math.abs((a >> 16 & 0xFF) - (b >> 16 & 0xFF)) > threshold ||
+                Math.abs((a >> 8 & 0xFF) - (b >> 8 & 0xFF)) > threshold ||
+                Math.abs((a & 0xFF) - (b & 0xFF)) > threshold;
+    }
+
+    private static Shape3D visibleShape(final TraceContext context) {
+        return context.lightImpact.isHit() ?
+                context.lightImpact.getImpactedObject() :
+                context.impact.getImpactedObject();
+    }
+
+    /**
+     * Averages a gridSize x gridSize grid of samples over the pixel, the first sample (at the
+     * pixel corner) is already traced.
+     */
+    private int supersample(final int x, final int y, final int first, final int gridSize, final TraceContext context) {
+        int r = first >> 16 & 0xFF, g = first >> 8 & 0xFF, b = first & 0xFF;
+        for ( int sx = 0; sx < gridSize; sx++ ){
+            for ( int sy = 0; sy < gridSize; sy++ ){
+                if (sx == 0 && sy == 0) continue;
+                final int rgb = trace(x + sx / (double) gridSize, y + sy / (double) gridSize, context);
+                r += rgb >> 16 & 0xFF;
+                g += rgb >> 8 & 0xFF;
+                b += rgb & 0xFF;
+            }
+        }
+        final int samples = gridSize * gridSize;
+        return (r / samples) << 16 | (g / samples) << 8 | (b / samples);
+    }
+
+    /**
+     * Traces the primary rays of count pixels of a row from x on as one packet, unless the
+     * frame traces them one by one or reads them from the G-buffer.
+     *
+     * @return whether the packet holds the primary hits of the pixels
+     */
+    private boolean tracePacket(final int x, final int y, final int count, final Frame frame, final TraceContext context) {
+        if (frame.packetKernel == null || frame.reuseGBuffer) return false;
+        final RayPacket packet = context.packet;
+        packet.setCount(count);
+        for (int lane = 0; lane < count; lane++) {
+            camera.primaryRay(x + lane, y, context.ray);
+            packet.set(lane, context.ray);
+        }
+        final ScreenBins bins = frame.geometry.bins();
+        final int bin = bins.getBin(x, y);
+        if (bin >= 0 && bin == bins.getBin(x + count - 1, y)) {
+            bins.closestHit(bin, packet, frame.packetKernel, context.counters);
+        } else {
+            frame.geometry.hierarchy.closestHit(packet, frame.packetKernel, context.counters);
+        }
+        return true;
+    }
+
+    /**
+     * First sample of a pixel, its primary hit goes through the G-buffer when enabled.
+     *
+     * @param pixel index of the pixel in the G-buffer
+     * @param lane  lane of the pixel in the packet traced by tracePacket, -1 to trace it alone
+     */
+    private int firstSample(final int x, final int y, final int pixel, final Frame frame, final TraceContext context,
+                            final int lane) {
+        final MutableRay3D ray = context.ray;
+        camera.primaryRay(x, y, ray);
+        if (frame.reuseGBuffer) {
+            frame.gBuffer.load(pixel, context.impact);
+        } else {
+            if (lane < 0) {
+                primaryHit(ray, x, y, context);
+            } else {
+                context.packet.load(lane, context.impact);
+                if (context.impact.isHit()) completeHit(ray, context.impact);
+            }
+            if (frame.gBuffer != null) frame.gBuffer.store(pixel, context.impact);
+        }
+        final int rgb = computeShading(ray, context.impact, context);
+        if (!frame.reuseGBuffer) context.counters.countPrimaryRay(context.impact.isHit() || context.lightImpact.isHit());
+        return rgb;
+    }
+
+    private int trace(final double column, final double row, final TraceContext context) {
+        final MutableRay3D ray = context.ray;
+        camera.primaryRay(column, row, ray);
+        primaryHit(ray, column, row, context);
+        final int rgb = computeShading(ray, context.impact, context);
+        context.counters.countPrimaryRay(context.impact.isHit() || context.lightImpact.isHit());
+        return rgb;
+    }
+
+    /**
+     * Closest impact of the primary ray going through the given image coordinates with the
+     * geometry, its point and normal are set when hit. Only the shapes of its screen bin are
+     * tested, unless the bin is crowded.
+     */
+    private static void primaryHit(final MutableRay3D ray, final double column, final double row,
+                                   final TraceContext context) {
+        final MutableImpact3D impact = context.impact;
+        final TraceCounters counters = context.counters;
+        final ScreenBins bins = context.geometry.bins();
+        final double ox = ray.getOriginX(), oy = ray.getOriginY(), oz = ray.getOriginZ();
+        final double dx = ray.getDirectionX(), dy = ray.getDirectionY(), dz = ray.getDirectionZ();
+        final int bin = bins.getBin(column, row);
+        final boolean hit = bin >= 0 ?
+                bins.closestHit(bin, ox, oy, oz, dx, dy, dz, impact, counters) :
+                context.geometry.hierarchy.closestHit(ox, oy, oz, dx, dy, dz, impact, counters);
+        if (hit) completeHit(ray, impact);
+    }
+
+    /**
+     * Sets the point and normal of the impact of the ray from its distance, and the material of
+     * the impacted primitive.
+     */
+    private static void completeHit(final MutableRay3D ray, final MutableImpact3D impact) {
+        final double distance = impact.getDistance();
+        final Shape3D object = impact.getImpactedObject();
+        impact.setPoint(ray.getOriginX() + ray.getDirectionX() * distance,
+                ray.getOriginY() + ray.getDirectionY() * distance,
+                ray.getOriginZ() + ray.getDirectionZ() * distance);
+        object.computeNormal(impact);
+        impact.setMaterial(impact.getMaterial() + object.getSurfaceIndex(impact.getPrimitive()));
+    }
+
+    /**
+     * Colour seen along the ray given its primary impact with the geometry: a light in front of
+     * it, or the impacted surface lit by every light it can see.
+     */
+    private int computeShading(final MutableRay3D ray, final MutableImpact3D impact, final TraceContext context) {
+        // TODO Expensive computation, spend some time to optimise
+        final double dx = ray.getDirectionX(), dy = ray.getDirectionY(), dz = ray.getDirectionZ();
+        final MutableImpact3D lightImpact = context.lightImpact;
+        lightImpact.reset(impact.getDistance());
+        context.lights.closerHit(ray.getOriginX(), ray.getOriginY(), ray.getOriginZ(), dx, dy, dz, lightImpact, context.counters);
+        if (lightImpact.isHit()) return lightImpact.getImpactedObject().getSurface().getColor();
+        if (!impact.isHit()) return Color.BLACK.getRGB();
 
-        Vector3D n = impact.getImpactedObject().getNormal(impact.getPoint());
+        final Shape3D object = impact.getImpactedObject();
+        final double distance = impact.getDistance();
+        final double px = impact.getX(), py = impact.getY(), pz = impact.getZ();
+        final double nx = impact.getNormalX(), ny = impact.getNormalY(), nz = impact.getNormalZ();
 
-        final Color impactedColor = new Color(impact.getImpactedObject().getSurface().getColor());
-        final double or = impactedColor.getRed() / 255.0;
-        final double og = impactedColor.getGreen() / 255.0;
-        final double ob = impactedColor.getBlue() / 255.0;
+        final MaterialTable materials = context.geometry.materials;
+        final int material = impact.getMaterial();
+        final double or = materials.red[material];
+        final double og = materials.green[material];
+        final double ob = materials.blue[material];
 
-        final double diffuseCoefficient = MAX_DIFFUSE_LIGHT_INTENSITY * impact.getImpactedObject().getSurface().getDiffuseReflectionCoefficient();
-        final double tmp = MAX_AMBIENT_LIGHT_INTENSITY * impact.getImpactedObject().getSurface().getAmbientReflectionCoefficient();
+        final double diffuseCoefficient = materials.diffuse[material];
+        final double specularCoefficient = materials.specular[material];
+        final double specularExponent = materials.specularExponent[material];
+        final double tmp = materials.ambient[material];
         double ambientIntensityR = or * tmp, ambientIntensityG = og * tmp, ambientIntensityB = ob * tmp;
         double diffuseIntensityR = 0, diffuseIntensityG = 0, diffuseIntensityB = 0;
         double specularIntensityR = 0, specularIntensityG = 0, specularIntensityB = 0;
-        for ( Light3D light : lights ){
-            Vector3D lightVector = new Vector3D(light.getCenter(), impact.getPoint().substract(light.getCenter()), true).normalize();
-            final double sqd = lightVector.getOrigin().squareDistance(impact.getPoint());
-            if (shapes.stream()
-                    .filter(shape -> shape != light && shape != impact.getImpactedObject())
-                    .anyMatch(shape -> {
-                        Impact3D i = shape.isHit(lightVector);
-                        return !i.equals(Impact3D.NONE) &&
-                                !i.getPoint().equals(impact.getImpactedObject()) &&
-                                i.getSquareDistance() < sqd;
-                    })) continue;
-
-            final Color lightColor = new Color(light.getSurface().getColor());
-            final double lr = lightColor.getRed() / 255.0;
-            final double lg = lightColor.getGreen() / 255.0;
-            final double lb = lightColor.getBlue() / 255.0;
+
+        // Reflection of the view direction, it does not depend on the light
+        final double vn = dx * nx + dy * ny + dz * nz;
+        double rx = dx - nx * 2 * vn, ry = dy - ny * 2 * vn, rz = dz - nz * 2 * vn;
+        final double rLength = Math.sqrt(rx * rx + ry * ry + rz * rz);
+        rx /= rLength;
+        ry /= rLength;
+        rz /= rLength;
+
+        // Only the lights whose influence reaches the point
+        final LightHierarchy lights = context.lights;
+        final int[] litBy = context.litBy;
+        final int lightCount = lights.findLights(px, py, pz, litBy);
+        for ( int k = 0; k < lightCount; k++ ){
+            final int i = litBy[k];
+            final Light3D light = lights.getLight(i);
+            final Point3D center = light.getCenter();
+            final double cx = center.getX(), cy = center.getY(), cz = center.getZ();
+            double lx = px - cx, ly = py - cy, lz = pz - cz;
+            final double lightDistance = Math.sqrt(lx * lx + ly * ly + lz * lz);
+            lx /= lightDistance;
+            ly /= lightDistance;
+            lz /= lightDistance;
+            // Fraction of the light reaching the point
+            final double visibility = context.softShadows.isEnabled() && light.getRadius() > 0 ?
+                    visibility(i, light.getRadius(), cx, cy, cz, px, py, pz, lx, ly, lz, object, impact.getPrimitive(), context) :
+                    isInShadow(i, cx, cy, cz, lx, ly, lz, lightDistance, object, impact.getPrimitive(), context) ? 0 : 1;
+            if (visibility == 0) continue;
+
+            final double lr = lights.getRed(i);
+            final double lg = lights.getGreen(i);
+            final double lb = lights.getBlue(i);
 
             // Diffuse light
-            double theta = -n.normalize().scalarProduct(lightVector.normalize());
+            double theta = -(nx * lx + ny * ly + nz * lz);
+            final double travelled = lightDistance + distance;
             double atmosphericAttenuation = Math.min(1,
                     (1 / ( light.getConstantAttenuationCoefficient() +
-                            light.getLinearAttenuationCoefficient() *
-                                    (lightVector.normalize().getOrigin().distance(impact.getPoint()) + impact.getDistance()) +
-                            light.getQuadraticAttenuationCoefficient() *
-                                    Math.pow(lightVector.normalize().getOrigin().distance(impact.getPoint()) + impact.getDistance(), 2) )));
-            double diffuseIntensity = diffuseCoefficient * theta * atmosphericAttenuation;
+                            light.getLinearAttenuationCoefficient() * travelled +
+                            light.getQuadraticAttenuationCoefficient() * travelled * travelled )));
+            double diffuseIntensity = diffuseCoefficient * theta * atmosphericAttenuation * visibility;
             diffuseIntensityR += theta < 0 ? 0 : or * diffuseIntensity;
             diffuseIntensityG += theta < 0 ? 0 : og * diffuseIntensity;
             diffuseIntensityB += theta < 0 ? 0 : ob * diffuseIntensity;
 
             // Specular light
-            Vector3D r = v.normalize().substract(n.normalize().multiply(2).multiply(v.normalize().scalarProduct(n.normalize())));
-            double scalarProduct = r.normalize().scalarProduct(lightVector.negate().normalize());
+            double scalarProduct = -(rx * lx + ry * ly + rz * lz);
             if ( scalarProduct > 0 ) {
-                double specularIntensity = atmosphericAttenuation *
-                        impact.getImpactedObject().getSurface().getSpecularReflectionCoefficient() *
-                        Math.pow(scalarProduct, impact.getImpactedObject().getSurface().getSpecularReflectionExponent());
+                double specularIntensity = atmosphericAttenuation * visibility *
+                        specularCoefficient *
+                        Math.pow(scalarProduct, specularExponent);
                 specularIntensityR += lr * specularIntensity;
                 specularIntensityG += lg * specularIntensity;
                 specularIntensityB += lb * specularIntensity;
@@ -176,10 +1061,107 @@ public final class Scene {
         final double intensityG = ambientIntensityG + diffuseIntensityG + specularIntensityG;
         final double intensityB = ambientIntensityB + diffuseIntensityB + specularIntensityB;
 
-        return new Color(
-                (float) (Math.max(Math.min(intensityR, 1), 0)),
-                (float) (Math.max(Math.min(intensityG, 1), 0)),
-                (float) (Math.max(Math.min(intensityB, 1), 0)))
-                .getRGB();
+        return 0xFF000000 | channel(intensityR) << 16 | channel(intensityG) << 8 | channel(intensityB);
+    }
+
+    /**
+     * 8 bits value of a channel intensity, rounded as java.awt.Color rounds float channels.
+     */
+    private static int channel(final double intensity) {
+        return (int) ((float) Math.max(Math.min(intensity, 1), 0) * 255 + 0.5);
+    }
+
+    /**
+     * Fraction of the samples of a spherical light not shadowed from the point p, lx, ly, lz
+     * being the direction from the center c of the light to p. The samples are stratified over
+     * the disc of the light facing p and jittered by a hash of p, the same point always gets the
+     * same samples. The corner samples are probes: the others are only traced when the probes
+     * disagree, the point is then in the penumbra.
+     */
+    private double visibility(final int lightIndex, final double radius,
+                              final double cx, final double cy, final double cz,
+                              final double px, final double py, final double pz,
+                              final double lx, final double ly, final double lz,
+                              final Shape3D receiver, final int receiverPrimitive, final TraceContext context) {
+        // Orthonormal basis u, v of the disc, perpendicular to l
+        final double sign = Math.copySign(1, lz);
+        final double a = -1 / (sign + lz);
+        final double b = lx * ly * a;
+        final double ux = 1 + sign * lx * lx * a, uy = sign * b, uz = -sign * lx;
+        final double vx = b, vy = sign + ly * ly * a, vz = -ly;
+
+        final int gridSize = context.softShadows.getGridSize();
+        final int last = gridSize - 1;
+        long seed = mix(mix(mix(lightIndex + 0x9E3779B97F4A7C15L ^ Double.doubleToLongBits(px))
+                ^ Double.doubleToLongBits(py)) ^ Double.doubleToLongBits(pz));
+        int visible = 0;
+        int traced = 0;
+        for (int probes = 1; probes >= 0; probes--) {
+            for (int row = 0; row < gridSize; row++) {
+                for (int column = 0; column < gridSize; column++) {
+                    final boolean corner = (row == 0 || row == last) && (column == 0 || column == last);
+                    if (corner != (probes == 1)) continue;
+                    seed = mix(seed);
+                    // Jittered point of the stratum, mapped onto the unit disc by the concentric mapping
+                    final double sx = 2 * (column + (seed >>> 40) * 0x1.0p-24) / gridSize - 1;
+                    final double sy = 2 * (row + (seed & 0xFFFFFF) * 0x1.0p-24) / gridSize - 1;
+                    final double r, phi;
+                    if (Math.abs(sx) > Math.abs(sy)) {
+                        r = sx;
+                        phi = Math.PI / 4 * sy / sx;
+                    } else {
+                        r = sy;
+                        phi = sy == 0 ? 0 : Math.PI / 2 - Math.PI / 4 * sx / sy;
+                    }
+                    final double du = radius * r * Math.cos(phi), dv = radius * r * Math.sin(phi);
+                    final double ox = cx + du * ux + dv * vx;
+                    final double oy = cy + du * uy + dv * vy;
+                    final double oz = cz + du * uz + dv * vz;
+                    double dx = px - ox, dy = py - oy, dz = pz - oz;
+                    final double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+                    dx /= distance;
+                    dy /= distance;
+                    dz /= distance;
+                    if (!isInShadow(lightIndex, ox, oy, oz, dx, dy, dz, distance, receiver, receiverPrimitive, context)) {
+                        visible++;
+                    }
+                    traced++;
+                }
+            }
+            if (visible == 0 || visible == traced) break;
+        }
+        return (double) visible / traced;
+    }
+
+    /**
+     * Next value of a SplitMix64 sequence, used to jitter soft shadow samples.
+     */
+    private static long mix(long z) {
+        z += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private boolean isInShadow(final int lightIndex,
+                               final double cx, final double cy, final double cz,
+                               final double lx, final double ly, final double lz,
+                               final double lightDistance, final Shape3D receiver,
+                               final int receiverPrimitive, final TraceContext context) {
+        final LightHierarchy lights = context.lights;
+        final TraceCounters counters = context.counters;
+        counters.countShadowRay();
+        final Shape3D last = context.lastOccluders[lightIndex];
+        if (last != null && last != receiver) {
+            counters.countTest(TraceCounters.typeOf(last));
+            if (last.occludes(cx, cy, cz, lx, ly, lz, lightDistance)) return true;
+        }
+        final Light3D light = lights.getLight(lightIndex);
+        Shape3D occluder = context.geometry.hierarchy.findOccluder(cx, cy, cz, lx, ly, lz, lightDistance, light,
+                receiver, receiverPrimitive, counters);
+        if (occluder == null) occluder = lights.findOccluder(cx, cy, cz, lx, ly, lz, lightDistance, light, counters);
+        if (occluder == null) return false;
+        context.lastOccluders[lightIndex] = occluder;
+        return true;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,86 @@
+package com.surenot.raytracer;
+
+import com.surenot.raytracer.shapes.Shape3D;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shapes added, removed and replaced in a Scene since its last render, lights included, applied
+ * together when the next one starts. Shapes are compared by identity: the same instance must
+ * be given to remove or replace a shape. Changes of the same shape are merged, a shape added
+ * then moved twice is only added, in its last position.
+ */
+final class SceneChanges {
+
+    // Shapes of the scene replaced by another one, or removed when mapped to null
+    private final Map<Shape3D, Shape3D> replaced = new IdentityHashMap<>();
+    // Shape of the scene every pending replacement replaces
+    private final Map<Shape3D, Shape3D> originals = new IdentityHashMap<>();
+    private final List<Shape3D> added = new ArrayList<>();
+
+    void add(final Shape3D shape) {
+        added.add(shape);
+    }
+
+    void remove(final Shape3D shape) {
+        final int index = indexOf(shape);
+        if (index >= 0) {
+            added.remove(index);
+            return;
+        }
+        final Shape3D original = originals.remove(shape);
+        replaced.put(original != null ? original : shape, null);
+    }
+
+    void replace(final Shape3D shape, final Shape3D replacement) {
+        final int index = indexOf(shape);
+        if (index >= 0) {
+            added.set(index, replacement);
+            return;
+        }
+        final Shape3D original = originals.remove(shape);
+        final Shape3D key = original != null ? original : shape;
+        replaced.put(key, replacement);
+        originals.put(replacement, key);
+    }
+
+    private int indexOf(final Shape3D shape) {
+        for (int i = 0; i < added.size(); i++) {
+            if (added.get(i) == shape) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Shapes of the scene replaced by another one, or removed when mapped to null.
+     */
+    Map<Shape3D, Shape3D> getReplaced() {
+        return Collections.unmodifiableMap(replaced);
+    }
+
+    List<Shape3D> getAdded() {
+        return Collections.unmodifiableList(added);
+    }
+
+    boolean isEmpty() {
+        return replaced.isEmpty() && added.isEmpty();
+    }
+
+    void clear() {
+        replaced.clear();
+        originals.clear();
+        added.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "SceneChanges{" +
+                "replacedCount=" + replaced.size() +
+                ", addedCount=" + added.size() +
+                '}';
+    }
+}
@@ -0,0 +1,16 @@
+package com.surenot.raytracer;
+
+/**
+ * Builds the scene of every frame of an animation, used by the renderers that are not given a
+ * Scene directly.
+ */
+public interface SceneFactory {
+
+    /**
+     * @param frame  index of the frame, from 0
+     * @param width  width of the image in pixels
+     * @param height height of the image in pixels
+     */
+    Scene create(int frame, int width, int height);
+
+}
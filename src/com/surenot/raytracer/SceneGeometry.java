@@ -0,0 +1,122 @@
+package com.surenot.raytracer;
+
+import com.surenot.raytracer.acceleration.BoundingVolumeHierarchy;
+import com.surenot.raytracer.shapes.Light3D;
+import com.surenot.raytracer.shapes.Shape3D;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shapes of a Scene other than its lights, with their materials, hierarchy and screen bins.
+ * Immutable: changing the shapes makes a new one, a render keeps the one it started with.
+ * Changes are applied incrementally, everything is built again from scratch once the shapes
+ * changed since the last build reach REBUILD_FRACTION of them, incremental updates degrade
+ * the hierarchy and the bins. The screen bins are only built for the first primary ray: a
+ * geometry seen through a camera that never renders does not pay for them.
+ */
+final class SceneGeometry {
+
+    final static double REBUILD_FRACTION = 0.5;
+
+    final List<Shape3D> shapes;
+    final MaterialTable materials;
+    final BoundingVolumeHierarchy hierarchy;
+    private final Camera camera;
+    // Null until built
+    private volatile ScreenBins bins;
+    // Shapes changed since everything was built from scratch
+    private final int changeCount;
+
+    SceneGeometry(final Camera camera, final Collection<Shape3D> shapes) {
+        this.shapes = Collections.unmodifiableList(new ArrayList<>(shapes));
+        this.materials = new MaterialTable(this.shapes);
+        this.hierarchy = new BoundingVolumeHierarchy(this.shapes, materials::getId);
+        this.camera = camera;
+        this.changeCount = 0;
+    }
+
+    private SceneGeometry(final List<Shape3D> shapes, final MaterialTable materials,
+                          final BoundingVolumeHierarchy hierarchy, final Camera camera, final ScreenBins bins,
+                          final int changeCount) {
+        this.shapes = shapes;
+        this.materials = materials;
+        this.hierarchy = hierarchy;
+        this.camera = camera;
+        this.bins = bins;
+        this.changeCount = changeCount;
+    }
+
+    /**
+     * Same shapes seen through another camera, this one for the same camera. Screen bins are
+     * built again by the first primary ray.
+     */
+    SceneGeometry withCamera(final Camera camera) {
+        if (camera.equals(this.camera)) return this;
+        return new SceneGeometry(shapes, materials, hierarchy, camera, null, changeCount);
+    }
+
+    /**
+     * Screen bins of the camera, built by the first call.
+     */
+    ScreenBins bins() {
+        ScreenBins bins = this.bins;
+        if (bins != null) return bins;
+        synchronized (this) {
+            if (this.bins == null) this.bins = new ScreenBins(camera, shapes, materials::getId);
+            return this.bins;
+        }
+    }
+
+    /**
+     * Geometry of these shapes with the changes, lights are ignored. This one when nothing
+     * changes.
+     */
+    SceneGeometry update(final SceneChanges changes) {
+        final Map<Shape3D, Shape3D> replaced = changes.getReplaced();
+        final List<Shape3D> shapes = new ArrayList<>(this.shapes.size() + changes.getAdded().size());
+        final List<Shape3D> added = new ArrayList<>();
+        // Replacements and added shapes
+        final List<Shape3D> inserted = new ArrayList<>();
+        int changed = 0;
+        for (Shape3D shape : this.shapes) {
+            if (!replaced.containsKey(shape)) {
+                shapes.add(shape);
+                continue;
+            }
+            changed++;
+            final Shape3D replacement = replaced.get(shape);
+            if (replacement == null) continue;
+            shapes.add(replacement);
+            inserted.add(replacement);
+        }
+        for (Shape3D shape : changes.getAdded()) {
+            if (shape instanceof Light3D) continue;
+            changed++;
+            shapes.add(shape);
+            added.add(shape);
+            inserted.add(shape);
+        }
+        if (changed == 0) return this;
+        if (changeCount + changed > REBUILD_FRACTION * shapes.size()) return new SceneGeometry(camera, shapes);
+
+        final MaterialTable materials = this.materials.with(inserted);
+        final ScreenBins bins = this.bins;
+        return new SceneGeometry(Collections.unmodifiableList(shapes), materials,
+                hierarchy.update(replaced, added, materials::getId), camera,
+                bins == null ? null : bins.update(camera, replaced, inserted, materials::getId),
+                changeCount + changed);
+    }
+
+    @Override
+    public String toString() {
+        return "SceneGeometry{" +
+                "shapeCount=" + shapes.size() +
+                ", materialCount=" + materials.size() +
+                ", changeCount=" + changeCount +
+                '}';
+    }
+}
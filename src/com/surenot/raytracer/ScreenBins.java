@@ -0,0 +1,338 @@
+package com.surenot.raytracer;
+
+import com.surenot.raytracer.acceleration.PacketKernel;
+import com.surenot.raytracer.primitives.BoundingBox;
+import com.surenot.raytracer.primitives.MutableImpact3D;
+import com.surenot.raytracer.primitives.RayPacket;
+import com.surenot.raytracer.shapes.Shape3D;
+import com.surenot.raytracer.shapes.Sphere3D;
+import com.surenot.raytracer.stats.TraceCounters;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * Shapes of a scene binned by the square blocks of pixels of the image their boxes project on,
+ * for the primary rays of a camera. A primary ray only tests the unbounded shapes and the
+ * candidates of its bin, nearest boxes first, and stops at the first box farther than its
+ * closest impact, without walking the hierarchy. Bins with
+ * more than MAX_CANDIDATES candidates are not kept: their rays go through the hierarchy, which
+ * is cheaper for them. Shapes off screen are in no bin, shapes around or behind the observer
+ * in every bin.
+ */
+final class ScreenBins {
+
+    final static int BIN_SIZE = 16;
+    // Sorted by distance, most rays stop after a few candidates: a bin is still cheaper than the
+    // hierarchy with dozens of them
+    final static int MAX_CANDIDATES = 64;
+    // Pixels added around every projected box, for sub pixel samples and rounding errors
+    private final static double MARGIN = 1;
+    private final static double EPSILON = 1e-9;
+
+    private final int columns, rows;
+    private final Shape3D[] unbounded;
+    private final int[] unboundedTypes;
+    private final int[] unboundedMaterials;
+    // Candidates of bin b, in candidates from offsets[b] to offsets[b + 1], nothing for crowded bins
+    private final boolean[] crowded;
+    private final int[] offsets;
+    private final Shape3D[] candidates;
+    private final int[] candidateTypes;
+    private final int[] candidateMaterials;
+    // Candidates intersected by the packet kernels, null for the others
+    private final Sphere3D[] candidateSpheres;
+    // Distance from the observer to the box of every candidate, increasing in every bin
+    private final double[] candidateDistances;
+
+    ScreenBins(final Camera camera, final Collection<? extends Shape3D> shapes,
+               final ToIntFunction<? super Shape3D> materials) {
+        this(camera, null, Collections.emptyMap(), shapes, materials);
+    }
+
+    /**
+     * Bins of the shapes of previous with the given changes, or of the inserted shapes alone
+     * without previous. Only the bins of the changed shapes are updated, crowded bins stay
+     * crowded.
+     *
+     * @param replaced shapes of previous replaced by another one or removed, the replacements
+     *                 are among the inserted shapes
+     */
+    private ScreenBins(final Camera camera, final ScreenBins previous, final Map<Shape3D, Shape3D> replaced,
+                       final Collection<? extends Shape3D> inserted, final ToIntFunction<? super Shape3D> materials) {
+        this.columns = (camera.getWidth() + BIN_SIZE - 1) / BIN_SIZE;
+        this.rows = (camera.getHeight() + BIN_SIZE - 1) / BIN_SIZE;
+        if (previous != null && (previous.columns != columns || previous.rows != rows)) {
+            throw new IllegalArgumentException();
+        }
+
+        final List<Shape3D> unboundedShapes = new ArrayList<>();
+        final List<Shape3D> bounded = new ArrayList<>(inserted.size());
+        if (previous != null) {
+            for (Shape3D shape : previous.unbounded) {
+                if (!replaced.containsKey(shape)) unboundedShapes.add(shape);
+            }
+        }
+        for (Shape3D shape : inserted) {
+            if (shape.getBounds().isBounded()) bounded.add(shape);
+            else unboundedShapes.add(shape);
+        }
+        this.unbounded = unboundedShapes.toArray(new Shape3D[unboundedShapes.size()]);
+        this.unboundedTypes = new int[unbounded.length];
+        this.unboundedMaterials = new int[unbounded.length];
+        for (int i = 0; i < unbounded.length; i++) {
+            unboundedTypes[i] = TraceCounters.typeOf(unbounded[i]);
+            unboundedMaterials[i] = materials.applyAsInt(unbounded[i]);
+        }
+
+        // Candidates kept from previous, then the inserted shapes: first bin column and row and
+        // last ones of every shape, empty ranges when off screen
+        final int[] counts = new int[columns * rows];
+        this.crowded = new boolean[counts.length];
+        if (previous != null) {
+            for (int b = 0; b < counts.length; b++) {
+                crowded[b] = previous.crowded[b];
+                for (int i = previous.offsets[b]; i < previous.offsets[b + 1]; i++) {
+                    if (!replaced.containsKey(previous.candidates[i])) counts[b]++;
+                }
+            }
+        }
+        final int n = bounded.size();
+        final int[] ranges = new int[4 * n];
+        final double[] coordinates = new double[2];
+        for (int i = 0; i < n; i++) {
+            project(camera, bounded.get(i).getBounds(), coordinates, ranges, 4 * i);
+            for (int row = ranges[4 * i + 1]; row <= ranges[4 * i + 3]; row++) {
+                for (int column = ranges[4 * i]; column <= ranges[4 * i + 2]; column++) counts[row * columns + column]++;
+            }
+        }
+
+        this.offsets = new int[counts.length + 1];
+        for (int b = 0; b < counts.length; b++) {
+            crowded[b] |= counts[b] > MAX_CANDIDATES;
+            offsets[b + 1] = offsets[b] + (crowded[b] ? 0 : counts[b]);
+        }
+        final int total = offsets[counts.length];
+        this.candidates = new Shape3D[total];
+        this.candidateTypes = new int[total];
+        this.candidateMaterials = new int[total];
+        this.candidateSpheres = new Sphere3D[total];
+        this.candidateDistances = new double[total];
+        final int[] next = new int[counts.length];
+        System.arraycopy(offsets, 0, next, 0, counts.length);
+        if (previous != null) {
+            for (int b = 0; b < counts.length; b++) {
+                if (crowded[b]) continue;
+                for (int i = previous.offsets[b]; i < previous.offsets[b + 1]; i++) {
+                    if (replaced.containsKey(previous.candidates[i])) continue;
+                    final int c = next[b]++;
+                    candidates[c] = previous.candidates[i];
+                    candidateTypes[c] = previous.candidateTypes[i];
+                    candidateMaterials[c] = previous.candidateMaterials[i];
+                    candidateSpheres[c] = previous.candidateSpheres[i];
+                    candidateDistances[c] = previous.candidateDistances[i];
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            final Shape3D shape = bounded.get(i);
+            final int type = TraceCounters.typeOf(shape);
+            final int material = materials.applyAsInt(shape);
+            final double distance = distance(shape.getBounds());
+            for (int row = ranges[4 * i + 1]; row <= ranges[4 * i + 3]; row++) {
+                for (int column = ranges[4 * i]; column <= ranges[4 * i + 2]; column++) {
+                    final int b = row * columns + column;
+                    if (crowded[b]) continue;
+                    final int c = next[b]++;
+                    candidates[c] = shape;
+                    candidateTypes[c] = type;
+                    candidateMaterials[c] = material;
+                    if (shape.getClass() == Sphere3D.class) candidateSpheres[c] = (Sphere3D) shape;
+                    candidateDistances[c] = distance;
+                }
+            }
+        }
+        for (int b = 0; b < counts.length; b++) sort(offsets[b], offsets[b + 1]);
+    }
+
+    /**
+     * Bins of the shapes of these ones with the given changes, for the same camera. The bins
+     * are unchanged, renders using them are not disturbed.
+     *
+     * @param replaced shapes replaced by another one, or removed when mapped to null
+     * @param inserted replacements and added shapes
+     */
+    ScreenBins update(final Camera camera, final Map<Shape3D, Shape3D> replaced,
+                      final Collection<? extends Shape3D> inserted, final ToIntFunction<? super Shape3D> materials) {
+        return new ScreenBins(camera, this, replaced, inserted, materials);
+    }
+
+    /**
+     * Distance from the observer, the origin of the coordinates of the rays, to the box.
+     */
+    private static double distance(final BoundingBox box) {
+        final double dx = Math.max(0, Math.max(box.getMinX(), -box.getMaxX()));
+        final double dy = Math.max(0, Math.max(box.getMinY(), -box.getMaxY()));
+        final double dz = Math.max(0, Math.max(box.getMinZ(), -box.getMaxZ()));
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    // Insertion sort of the candidates of a bin by distance, bins are small
+    private void sort(final int from, final int to) {
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && candidateDistances[j - 1] > candidateDistances[j]; j--) {
+                swap(j - 1, j);
+            }
+        }
+    }
+
+    private void swap(final int i, final int j) {
+        final Shape3D shape = candidates[i];
+        candidates[i] = candidates[j];
+        candidates[j] = shape;
+        final int type = candidateTypes[i];
+        candidateTypes[i] = candidateTypes[j];
+        candidateTypes[j] = type;
+        final int material = candidateMaterials[i];
+        candidateMaterials[i] = candidateMaterials[j];
+        candidateMaterials[j] = material;
+        final Sphere3D sphere = candidateSpheres[i];
+        candidateSpheres[i] = candidateSpheres[j];
+        candidateSpheres[j] = sphere;
+        final double distance = candidateDistances[i];
+        candidateDistances[i] = candidateDistances[j];
+        candidateDistances[j] = distance;
+    }
+
+    /**
+     * Whether a shape of a box at the given distance from the observer cannot be hit before
+     * the current impact of a ray starting at the given distance. Points along a primary ray
+     * are as far from the observer as from the screen plus the length of its origin, a margin
+     * covers rounding errors.
+     */
+    private static boolean isBeyond(final double boxDistance, final double originLength, final double impactDistance) {
+        return impactDistance < (boxDistance - originLength) * (1 - EPSILON) - EPSILON;
+    }
+
+    /**
+     * Writes the range of bins covered by the projection of the box, every bin when a corner
+     * is not in front of the observer.
+     */
+    private void project(final Camera camera, final BoundingBox box, final double[] coordinates,
+                         final int[] ranges, final int offset) {
+        double minColumn = Double.POSITIVE_INFINITY, minRow = Double.POSITIVE_INFINITY;
+        double maxColumn = Double.NEGATIVE_INFINITY, maxRow = Double.NEGATIVE_INFINITY;
+        for (int corner = 0; corner < 8; corner++) {
+            final double x = (corner & 1) == 0 ? box.getMinX() : box.getMaxX();
+            final double y = (corner & 2) == 0 ? box.getMinY() : box.getMaxY();
+            final double z = (corner & 4) == 0 ? box.getMinZ() : box.getMaxZ();
+            if (!camera.project(x, y, z, coordinates)) {
+                ranges[offset] = 0;
+                ranges[offset + 1] = 0;
+                ranges[offset + 2] = columns - 1;
+                ranges[offset + 3] = rows - 1;
+                return;
+            }
+            minColumn = Math.min(minColumn, coordinates[0]);
+            maxColumn = Math.max(maxColumn, coordinates[0]);
+            minRow = Math.min(minRow, coordinates[1]);
+            maxRow = Math.max(maxRow, coordinates[1]);
+        }
+        ranges[offset] = bin(minColumn - MARGIN, columns);
+        ranges[offset + 1] = bin(minRow - MARGIN, rows);
+        ranges[offset + 2] = bin(maxColumn + MARGIN, columns);
+        ranges[offset + 3] = bin(maxRow + MARGIN, rows);
+        // Entirely off screen, left of the first bin or right of the last one
+        if (maxColumn + MARGIN < 0 || minColumn - MARGIN >= columns * BIN_SIZE ||
+                maxRow + MARGIN < 0 || minRow - MARGIN >= rows * BIN_SIZE) {
+            ranges[offset] = 1;
+            ranges[offset + 2] = 0;
+        }
+    }
+
+    private static int bin(final double coordinate, final int count) {
+        return (int) Math.max(0, Math.min(count - 1, Math.floor(coordinate / BIN_SIZE)));
+    }
+
+    /**
+     * Bin of the primary rays going through the given image coordinates, -1 when it is crowded
+     * and they must go through the hierarchy.
+     */
+    int getBin(final double column, final double row) {
+        final int b = bin(row, rows) * columns + bin(column, columns);
+        return crowded[b] ? -1 : b;
+    }
+
+    /**
+     * Records the closest impact of a primary ray of the bin with its candidates, as
+     * BoundingVolumeHierarchy.closestHit does with every shape.
+     *
+     * @return true if a shape was hit
+     */
+    boolean closestHit(final int bin,
+                       final double ox, final double oy, final double oz,
+                       final double dx, final double dy, final double dz,
+                       final MutableImpact3D impact, final TraceCounters counters) {
+        impact.reset(Double.POSITIVE_INFINITY);
+        for (int i = 0; i < unbounded.length; i++) {
+            counters.countTest(unboundedTypes[i]);
+            if (unbounded[i].intersect(ox, oy, oz, dx, dy, dz, impact)) impact.setMaterial(unboundedMaterials[i]);
+        }
+        final double originLength = Math.sqrt(ox * ox + oy * oy + oz * oz);
+        for (int i = offsets[bin]; i < offsets[bin + 1]; i++) {
+            if (isBeyond(candidateDistances[i], originLength, impact.getDistance())) break;
+            counters.countTest(candidateTypes[i]);
+            if (candidates[i].intersect(ox, oy, oz, dx, dy, dz, impact)) impact.setMaterial(candidateMaterials[i]);
+        }
+        return impact.isHit();
+    }
+
+    /**
+     * Records the closest impact of every ray of a packet of primary rays of the bin, spheres
+     * are given to the kernel.
+     */
+    void closestHit(final int bin, final RayPacket packet, final PacketKernel kernel, final TraceCounters counters) {
+        final int count = packet.getCount();
+        for (int i = 0; i < unbounded.length; i++) {
+            counters.countTests(unboundedTypes[i], count);
+            for (int lane = 0; lane < count; lane++) packet.intersect(lane, unbounded[i], unboundedMaterials[i]);
+        }
+        for (int i = offsets[bin]; i < offsets[bin + 1]; i++) {
+            if (isBeyond(candidateDistances[i], packet)) break;
+            counters.countTests(candidateTypes[i], count);
+            if (candidateSpheres[i] != null) {
+                kernel.intersect(packet, candidateSpheres[i], candidateMaterials[i]);
+            } else {
+                for (int lane = 0; lane < count; lane++) packet.intersect(lane, candidates[i], candidateMaterials[i]);
+            }
+        }
+    }
+
+    private static boolean isBeyond(final double boxDistance, final RayPacket packet) {
+        for (int lane = 0; lane < packet.getCount(); lane++) {
+            final double ox = packet.originX[lane], oy = packet.originY[lane], oz = packet.originZ[lane];
+            if (!isBeyond(boxDistance, Math.sqrt(ox * ox + oy * oy + oz * oz), packet.distance[lane])) return false;
+        }
+        return true;
+    }
+
+    int getCrowdedBinCount() {
+        int count = 0;
+        for (boolean c : crowded) if (c) count++;
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "ScreenBins{" +
+                "columns=" + columns +
+                ", rows=" + rows +
+                ", crowdedBinCount=" + getCrowdedBinCount() +
+                ", candidateCount=" + candidates.length +
+                '}';
+    }
+}
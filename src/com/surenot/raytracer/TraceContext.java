@@ -0,0 +1,43 @@
+package com.surenot.raytracer;
+
+import com.surenot.raytracer.acceleration.LightHierarchy;
+import com.surenot.raytracer.primitives.MutableImpact3D;
+import com.surenot.raytracer.primitives.MutableRay3D;
+import com.surenot.raytracer.primitives.RayPacket;
+import com.surenot.raytracer.render.SoftShadows;
+import com.surenot.raytracer.shapes.Shape3D;
+import com.surenot.raytracer.stats.TraceCounters;
+
+/**
+ * Scratch state of a render thread, reused for every ray it traces so that tracing a pixel
+ * does not allocate.
+ */
+final class TraceContext {
+
+    final MutableRay3D ray = new MutableRay3D();
+    final MutableImpact3D impact = new MutableImpact3D();
+    final MutableImpact3D lightImpact = new MutableImpact3D();
+    final RayPacket packet = new RayPacket();
+    // Counts of the tile being rendered
+    final TraceCounters counters = new TraceCounters();
+    // Geometry and lights of the frame being rendered
+    SceneGeometry geometry;
+    LightHierarchy lights = LightHierarchy.EMPTY;
+    SoftShadows softShadows = SoftShadows.NONE;
+    // Last shape found between each light and a shaded point. Neighbouring pixels are usually
+    // shadowed by the same shape, it is tested before walking the hierarchy.
+    Shape3D[] lastOccluders = new Shape3D[0];
+    // Indices of the lights reaching the point being shaded
+    int[] litBy = new int[0];
+
+    void set(final SceneGeometry geometry, final LightHierarchy lights, final SoftShadows softShadows) {
+        this.softShadows = softShadows;
+        if (this.geometry == geometry && this.lights == lights) return;
+        // The last occluders may have been removed or moved since
+        this.geometry = geometry;
+        this.lights = lights;
+        this.lastOccluders = new Shape3D[lights.getLightCount()];
+        this.litBy = new int[lights.getLightCount()];
+    }
+
+}
@@ -0,0 +1,411 @@
+package com.surenot.raytracer.acceleration;
+
+import com.surenot.raytracer.primitives.BoundingBox;
+import com.surenot.raytracer.primitives.MutableImpact3D;
+import com.surenot.raytracer.primitives.RayPacket;
+import com.surenot.raytracer.shapes.Shape3D;
+import com.surenot.raytracer.shapes.Sphere3D;
+import com.surenot.raytracer.stats.TraceCounters;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+/**
+ * Bounding volume hierarchy over the bounded shapes of a scene, built by a
+ * BoundingVolumeTree. Unbounded shapes (planes) cannot be put in a box, they are kept aside
+ * and tested against every ray.
+ * A hierarchy is immutable, update makes a new one for shapes that were added, removed or
+ * moved: the tree is refitted around moved shapes, removed ones leave an empty position and
+ * added ones are kept aside with the unbounded shapes until there are too many of them.
+ */
+public final class BoundingVolumeHierarchy {
+
+    // Bounded shapes kept aside beyond which update builds the tree again
+    private final static int MAX_LOOSE_SHAPES = 16;
+
+    // Null at the positions of the shapes removed since the tree was built
+    private final Shape3D[] bounded;
+    // Unbounded shapes and bounded shapes added since the tree was built
+    private final Shape3D[] unbounded;
+    // TraceCounters type of every shape, counted without looking up its class
+    private final int[] boundedTypes;
+    private final int[] unboundedTypes;
+    // Material id of every shape, recorded with its impacts
+    private final int[] boundedMaterials;
+    private final int[] unboundedMaterials;
+    // Shapes intersected by the packet kernels, null for the others
+    private final Sphere3D[] spheres;
+    private final BoundingVolumeTree tree;
+    // Position of every bounded shape, built by the first update and handed to the next
+    // hierarchy, which is the only one updated again in practice
+    private Map<Shape3D, Integer> positions;
+
+    public BoundingVolumeHierarchy(final Collection<? extends Shape3D> shapes) {
+        this(shapes, shape -> -1);
+    }
+
+    /**
+     * @param materials material id of every shape, recorded with its impacts
+     */
+    public BoundingVolumeHierarchy(final Collection<? extends Shape3D> shapes,
+                                   final ToIntFunction<? super Shape3D> materials) {
+        if (shapes == null || materials == null) throw new IllegalArgumentException();
+
+        final List<Shape3D> boundedShapes = new ArrayList<>(shapes.size());
+        final List<Shape3D> unboundedShapes = new ArrayList<>();
+        for (Shape3D shape : shapes) {
+            if (shape == null) throw new IllegalArgumentException();
+            if (shape.getBounds().isBounded()) boundedShapes.add(shape);
+            else unboundedShapes.add(shape);
+        }
+        this.unbounded = unboundedShapes.toArray(new Shape3D[unboundedShapes.size()]);
+
+        final int n = boundedShapes.size();
+        final float[] bounds = new float[6 * n];
+        for (int i = 0; i < n; i++) {
+            final BoundingBox b = boundedShapes.get(i).getBounds();
+            for (int axis = 0; axis < 3; axis++) {
+                bounds[6 * i + axis] = BoundingVolumeTree.floor(b.getMin(axis));
+                bounds[6 * i + 3 + axis] = BoundingVolumeTree.ceil(b.getMax(axis));
+            }
+        }
+        final int[] order = new int[n];
+        this.tree = new BoundingVolumeTree(bounds, order);
+
+        this.bounded = new Shape3D[n];
+        for (int i = 0; i < n; i++) {
+            bounded[i] = boundedShapes.get(order[i]);
+        }
+        this.boundedTypes = types(bounded);
+        this.unboundedTypes = types(unbounded);
+        this.boundedMaterials = materials(bounded, materials);
+        this.unboundedMaterials = materials(unbounded, materials);
+        this.spheres = new Sphere3D[n];
+        for (int i = 0; i < n; i++) {
+            if (bounded[i].getClass() == Sphere3D.class) spheres[i] = (Sphere3D) bounded[i];
+        }
+    }
+
+    private BoundingVolumeHierarchy(final Shape3D[] bounded, final int[] boundedTypes, final int[] boundedMaterials,
+                                    final Sphere3D[] spheres, final Shape3D[] unbounded,
+                                    final ToIntFunction<? super Shape3D> materials, final BoundingVolumeTree tree) {
+        this.bounded = bounded;
+        this.boundedTypes = boundedTypes;
+        this.boundedMaterials = boundedMaterials;
+        this.spheres = spheres;
+        this.unbounded = unbounded;
+        this.unboundedTypes = types(unbounded);
+        this.unboundedMaterials = materials(unbounded, materials);
+        this.tree = tree;
+    }
+
+    /**
+     * Hierarchy of the shapes of this one with the given changes. Shapes are compared by
+     * identity, those that are not in the hierarchy are ignored. This hierarchy is unchanged,
+     * renders using it are not disturbed.
+     *
+     * @param replaced  shapes replaced by another one, or removed when mapped to null
+     * @param added     shapes added
+     * @param materials material id of every shape, those of the shapes already in the
+     *                  hierarchy must not change
+     */
+    public synchronized BoundingVolumeHierarchy update(final Map<Shape3D, Shape3D> replaced,
+                                                       final Collection<? extends Shape3D> added,
+                                                       final ToIntFunction<? super Shape3D> materials) {
+        if (replaced == null || added == null || materials == null) throw new IllegalArgumentException();
+        // The positions are updated in place, they only remain valid for the new hierarchy
+        final Map<Shape3D, Integer> positions = getPositions();
+        this.positions = null;
+        final Shape3D[] bounded = this.bounded.clone();
+        final int[] boundedTypes = this.boundedTypes.clone();
+        final int[] boundedMaterials = this.boundedMaterials.clone();
+        final Sphere3D[] spheres = this.spheres.clone();
+        final List<Shape3D> unbounded = new ArrayList<>(unboundedMaterials.length + added.size());
+        for (Shape3D shape : this.unbounded) {
+            if (!replaced.containsKey(shape)) unbounded.add(shape);
+            else if (replaced.get(shape) != null) unbounded.add(replaced.get(shape));
+        }
+        final Set<Integer> leaves = new LinkedHashSet<>();
+        for (Map.Entry<Shape3D, Shape3D> entry : replaced.entrySet()) {
+            final Integer position = positions.remove(entry.getKey());
+            if (position == null) continue;
+            final Shape3D shape = entry.getValue();
+            leaves.add(tree.getLeaf(position));
+            if (shape != null && shape.getBounds().isBounded()) {
+                bounded[position] = shape;
+                boundedTypes[position] = TraceCounters.typeOf(shape);
+                boundedMaterials[position] = materials.applyAsInt(shape);
+                spheres[position] = shape.getClass() == Sphere3D.class ? (Sphere3D) shape : null;
+                positions.put(shape, position);
+            } else {
+                bounded[position] = null;
+                spheres[position] = null;
+                if (shape != null) unbounded.add(shape);
+            }
+        }
+        for (Shape3D shape : added) {
+            if (shape == null) throw new IllegalArgumentException();
+            unbounded.add(shape);
+        }
+
+        int loose = 0;
+        for (Shape3D shape : unbounded) {
+            if (shape.getBounds().isBounded()) loose++;
+        }
+        if (loose > MAX_LOOSE_SHAPES) {
+            for (Shape3D shape : bounded) {
+                if (shape != null) unbounded.add(shape);
+            }
+            return new BoundingVolumeHierarchy(unbounded, materials);
+        }
+
+        final int[] refitted = new int[leaves.size()];
+        final float[] bounds = new float[6 * refitted.length];
+        int count = 0;
+        for (int leaf : leaves) {
+            // A leaf whose shapes are all removed keeps its box, no ray reaches a shape there
+            if (!fit(leaf, bounded, bounds, 6 * count)) continue;
+            refitted[count++] = leaf;
+        }
+        final BoundingVolumeHierarchy hierarchy = new BoundingVolumeHierarchy(bounded, boundedTypes, boundedMaterials,
+                spheres, unbounded.toArray(new Shape3D[unbounded.size()]), materials,
+                tree.isEmpty() ? tree : tree.refit(refitted, bounds, count));
+        hierarchy.positions = positions;
+        return hierarchy;
+    }
+
+    private Map<Shape3D, Integer> getPositions() {
+        if (positions == null) {
+            positions = new IdentityHashMap<>(bounded.length);
+            for (int i = 0; i < bounded.length; i++) {
+                if (bounded[i] != null) positions.put(bounded[i], i);
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Writes the box of the shapes of the leaf at the given offset.
+     *
+     * @return false when the leaf has no shape left
+     */
+    private boolean fit(final int leaf, final Shape3D[] bounded, final float[] bounds, final int offset) {
+        boolean empty = true;
+        for (int axis = 0; axis < 3; axis++) {
+            bounds[offset + axis] = Float.POSITIVE_INFINITY;
+            bounds[offset + 3 + axis] = Float.NEGATIVE_INFINITY;
+        }
+        final int first = tree.getFirst(leaf);
+        for (int i = first; i < first + tree.getPrimitiveCount(leaf); i++) {
+            if (bounded[i] == null) continue;
+            empty = false;
+            final BoundingBox b = bounded[i].getBounds();
+            for (int axis = 0; axis < 3; axis++) {
+                bounds[offset + axis] = Math.min(bounds[offset + axis], BoundingVolumeTree.floor(b.getMin(axis)));
+                bounds[offset + 3 + axis] = Math.max(bounds[offset + 3 + axis], BoundingVolumeTree.ceil(b.getMax(axis)));
+            }
+        }
+        return !empty;
+    }
+
+    private static int[] materials(final Shape3D[] shapes, final ToIntFunction<? super Shape3D> materials) {
+        final int[] ids = new int[shapes.length];
+        for (int i = 0; i < shapes.length; i++) ids[i] = materials.applyAsInt(shapes[i]);
+        return ids;
+    }
+
+    private static int[] types(final Shape3D[] shapes) {
+        final int[] types = new int[shapes.length];
+        for (int i = 0; i < shapes.length; i++) types[i] = TraceCounters.typeOf(shapes[i]);
+        return types;
+    }
+
+    /**
+     * Records the closest impact of the ray with any shape, with its material id. The direction
+     * must be normalized. Every shape tested is counted in counters.
+     *
+     * @return true if a shape was hit
+     */
+    public boolean closestHit(final double ox, final double oy, final double oz,
+                              final double dx, final double dy, final double dz,
+                              final MutableImpact3D impact, final TraceCounters counters) {
+        impact.reset(Double.POSITIVE_INFINITY);
+        for (int i = 0; i < unbounded.length; i++) {
+            counters.countTest(unboundedTypes[i]);
+            if (unbounded[i].intersect(ox, oy, oz, dx, dy, dz, impact)) impact.setMaterial(unboundedMaterials[i]);
+        }
+        if (!tree.isEmpty()) closestHit(0, ox, oy, oz, dx, dy, dz, 1 / dx, 1 / dy, 1 / dz, impact, counters);
+        return impact.isHit();
+    }
+
+    /**
+     * Same as closestHit, but only records an impact closer than the one already in impact.
+     *
+     * @return true if a closer shape was hit
+     */
+    public boolean closerHit(final double ox, final double oy, final double oz,
+                             final double dx, final double dy, final double dz,
+                             final MutableImpact3D impact, final TraceCounters counters) {
+        final double previous = impact.getDistance();
+        for (int i = 0; i < unbounded.length; i++) {
+            counters.countTest(unboundedTypes[i]);
+            if (unbounded[i].intersect(ox, oy, oz, dx, dy, dz, impact)) impact.setMaterial(unboundedMaterials[i]);
+        }
+        if (!tree.isEmpty()) closestHit(0, ox, oy, oz, dx, dy, dz, 1 / dx, 1 / dy, 1 / dz, impact, counters);
+        return impact.getDistance() < previous;
+    }
+
+    private void closestHit(final int node,
+                            final double ox, final double oy, final double oz,
+                            final double dx, final double dy, final double dz,
+                            final double ix, final double iy, final double iz,
+                            final MutableImpact3D impact, final TraceCounters counters) {
+        if (!tree.intersects(node, ox, oy, oz, ix, iy, iz, impact.getDistance())) return;
+        if (tree.isLeaf(node)) {
+            final int first = tree.getFirst(node);
+            final int count = tree.getPrimitiveCount(node);
+            for (int i = first; i < first + count; i++) {
+                if (bounded[i] == null) continue;
+                counters.countTest(boundedTypes[i]);
+                if (bounded[i].intersect(ox, oy, oz, dx, dy, dz, impact)) impact.setMaterial(boundedMaterials[i]);
+            }
+            return;
+        }
+        // Visit the nearest child first, the farthest one is likely culled by then
+        final int near, far;
+        if (tree.isRightNearer(node, ix, iy, iz)) {
+            near = tree.getRightChild(node);
+            far = tree.getLeftChild(node);
+        } else {
+            near = tree.getLeftChild(node);
+            far = tree.getRightChild(node);
+        }
+        closestHit(near, ox, oy, oz, dx, dy, dz, ix, iy, iz, impact, counters);
+        closestHit(far, ox, oy, oz, dx, dy, dz, ix, iy, iz, impact, counters);
+    }
+
+    /**
+     * Records the closest impact of every ray of the packet, as closestHit does for a single
+     * ray. A node is visited when any ray hits its box, spheres are given to the kernel and
+     * the other shapes are tested ray by ray. Nearest children are chosen for the first ray,
+     * the rays of a packet are expected to be coherent.
+     */
+    public void closestHit(final RayPacket packet, final PacketKernel kernel, final TraceCounters counters) {
+        final int count = packet.getCount();
+        for (int i = 0; i < unbounded.length; i++) {
+            counters.countTests(unboundedTypes[i], count);
+            for (int lane = 0; lane < count; lane++) packet.intersect(lane, unbounded[i], unboundedMaterials[i]);
+        }
+        if (!tree.isEmpty()) closestHit(0, packet, kernel, counters);
+    }
+
+    private void closestHit(final int node, final RayPacket packet, final PacketKernel kernel,
+                            final TraceCounters counters) {
+        final int count = packet.getCount();
+        if (!intersects(node, packet, count)) return;
+        if (tree.isLeaf(node)) {
+            final int first = tree.getFirst(node);
+            final int primitives = tree.getPrimitiveCount(node);
+            for (int i = first; i < first + primitives; i++) {
+                if (bounded[i] == null) continue;
+                counters.countTests(boundedTypes[i], count);
+                if (spheres[i] != null) {
+                    kernel.intersect(packet, spheres[i], boundedMaterials[i]);
+                } else {
+                    for (int lane = 0; lane < count; lane++) packet.intersect(lane, bounded[i], boundedMaterials[i]);
+                }
+            }
+            return;
+        }
+        final int near, far;
+        if (tree.isRightNearer(node, packet.inverseX[0], packet.inverseY[0], packet.inverseZ[0])) {
+            near = tree.getRightChild(node);
+            far = tree.getLeftChild(node);
+        } else {
+            near = tree.getLeftChild(node);
+            far = tree.getRightChild(node);
+        }
+        closestHit(near, packet, kernel, counters);
+        closestHit(far, packet, kernel, counters);
+    }
+
+    private boolean intersects(final int node, final RayPacket packet, final int count) {
+        for (int lane = 0; lane < count; lane++) {
+            if (tree.intersects(node, packet.originX[lane], packet.originY[lane], packet.originZ[lane],
+                    packet.inverseX[lane], packet.inverseY[lane], packet.inverseZ[lane], packet.distance[lane])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * First shape other than source found to be hit by the ray closer than maxDistance, or
+     * null. The receiver only counts when another of its primitives is hit, see
+     * Shape3D.occludesOthers. The direction must be normalized. Every shape tested is counted
+     * in counters.
+     */
+    public Shape3D findOccluder(final double ox, final double oy, final double oz,
+                                final double dx, final double dy, final double dz,
+                                final double maxDistance, final Shape3D source,
+                                final Shape3D receiver, final int receiverPrimitive,
+                                final TraceCounters counters) {
+        for (int i = 0; i < unbounded.length; i++) {
+            final Shape3D shape = unbounded[i];
+            if (shape == source) continue;
+            if (shape == receiver) {
+                if (shape.occludesOthers(ox, oy, oz, dx, dy, dz, maxDistance, receiverPrimitive)) return shape;
+                continue;
+            }
+            counters.countTest(unboundedTypes[i]);
+            if (shape.occludes(ox, oy, oz, dx, dy, dz, maxDistance)) return shape;
+        }
+        if (tree.isEmpty()) return null;
+        return findOccluder(0, ox, oy, oz, dx, dy, dz, 1 / dx, 1 / dy, 1 / dz, maxDistance,
+                source, receiver, receiverPrimitive, counters);
+    }
+
+    private Shape3D findOccluder(final int node,
+                                 final double ox, final double oy, final double oz,
+                                 final double dx, final double dy, final double dz,
+                                 final double ix, final double iy, final double iz,
+                                 final double maxDistance, final Shape3D source,
+                                 final Shape3D receiver, final int receiverPrimitive,
+                                 final TraceCounters counters) {
+        if (!tree.intersects(node, ox, oy, oz, ix, iy, iz, maxDistance)) return null;
+        if (tree.isLeaf(node)) {
+            final int first = tree.getFirst(node);
+            final int count = tree.getPrimitiveCount(node);
+            for (int i = first; i < first + count; i++) {
+                final Shape3D shape = bounded[i];
+                if (shape == null || shape == source) continue;
+                if (shape == receiver) {
+                    if (shape.occludesOthers(ox, oy, oz, dx, dy, dz, maxDistance, receiverPrimitive)) return shape;
+                    continue;
+                }
+                counters.countTest(boundedTypes[i]);
+                if (shape.occludes(ox, oy, oz, dx, dy, dz, maxDistance)) return shape;
+            }
+            return null;
+        }
+        final Shape3D occluder = findOccluder(tree.getLeftChild(node), ox, oy, oz, dx, dy, dz, ix, iy, iz, maxDistance,
+                source, receiver, receiverPrimitive, counters);
+        if (occluder != null) return occluder;
+        return findOccluder(tree.getRightChild(node), ox, oy, oz, dx, dy, dz, ix, iy, iz, maxDistance,
+                source, receiver, receiverPrimitive, counters);
+    }
+
+    public int getNodeCount() {
+        return tree.getNodeCount();
+    }
+
+    public int getDepth() {
+        return tree.getDepth();
+    }
+}
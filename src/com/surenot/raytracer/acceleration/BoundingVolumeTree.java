@@ -0,0 +1,486 @@
+package com.surenot.raytracer.acceleration;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Flattened bounding volume tree over indexed primitives, built with a binned surface area
+ * heuristic. It only knows the primitive boxes: the owner reorders its primitives as given by
+ * the build, so that every leaf covers a contiguous range of them, and tests the primitives of
+ * the leaves itself.
+ * Nodes are stored in depth first order: the left child of an inner node is always the next
+ * node, only the index of the right child is stored. Boxes are kept in floats, a box rounded
+ * outwards is still a valid box and the tree takes half the memory.
+ */
+public final class BoundingVolumeTree implements Serializable {
+
+    private final static long serialVersionUID = 1L;
+
+    private final static int BIN_COUNT = 12;
+    private final static int MAX_LEAF_SIZE = 4;
+    private final static double TRAVERSAL_COST = 1;
+    private final static double INTERSECTION_COST = 1;
+
+    // 6 floats per node: minX, minY, minZ, maxX, maxY, maxZ
+    private float[] nodeBounds;
+    // Leaf: position of the first primitive. Inner node: index of the right child.
+    private int[] nodeOffset;
+    // Leaf: number of primitives. Inner node: 0.
+    private int[] nodePrimitiveCount;
+    // Inner node: split axis, used to visit the nearest child first.
+    private byte[] nodeAxis;
+    private int nodeCount;
+    private int depth;
+    // Parent of every node and leaf of every primitive, computed for the first refit and shared
+    // by the refitted trees
+    private transient int[] parents;
+    private transient int[] leaves;
+
+    // Build scratch space, reused by every node as bins are consumed before recursing
+    private transient int[] binCount;
+    private transient double[] binBounds;
+    private transient double[] rightArea;
+    private transient int[] rightCount;
+    private transient double[] centroidMin;
+    private transient double[] centroidScale;
+
+    /**
+     * @param bounds 6 floats per primitive: minX, minY, minZ, maxX, maxY, maxZ. They are
+     *               reordered along with the primitives, so the build reads them sequentially.
+     * @param order  receives the index of the primitive at every position, its length is the
+     *               number of primitives
+     */
+    public BoundingVolumeTree(final float[] bounds, final int[] order) {
+        if (bounds == null || order == null) throw new IllegalArgumentException();
+        if (bounds.length != 6 * order.length) throw new IllegalArgumentException();
+
+        final int n = order.length;
+        final int capacity = Math.max(1, 2 * n - 1);
+        this.nodeBounds = new float[6 * capacity];
+        this.nodeOffset = new int[capacity];
+        this.nodePrimitiveCount = new int[capacity];
+        this.nodeAxis = new byte[capacity];
+        for (int i = 0; i < n; i++) order[i] = i;
+        if (n == 0) return;
+
+        this.binCount = new int[3 * BIN_COUNT];
+        this.binBounds = new double[3 * 6 * BIN_COUNT];
+        this.rightArea = new double[BIN_COUNT];
+        this.rightCount = new int[BIN_COUNT];
+        this.centroidMin = new double[3];
+        this.centroidScale = new double[3];
+        build(bounds, order, 0, n, 1);
+        this.binCount = null;
+        this.binBounds = null;
+        this.rightArea = null;
+        this.rightCount = null;
+        this.centroidMin = null;
+        this.centroidScale = null;
+
+        // Leaves hold several primitives, far fewer nodes than the worst case are used
+        this.nodeBounds = Arrays.copyOf(nodeBounds, 6 * nodeCount);
+        this.nodeOffset = Arrays.copyOf(nodeOffset, nodeCount);
+        this.nodePrimitiveCount = Arrays.copyOf(nodePrimitiveCount, nodeCount);
+        this.nodeAxis = Arrays.copyOf(nodeAxis, nodeCount);
+    }
+
+    private BoundingVolumeTree(final BoundingVolumeTree tree, final float[] nodeBounds) {
+        this.nodeBounds = nodeBounds;
+        this.nodeOffset = tree.nodeOffset;
+        this.nodePrimitiveCount = tree.nodePrimitiveCount;
+        this.nodeAxis = tree.nodeAxis;
+        this.nodeCount = tree.nodeCount;
+        this.depth = tree.depth;
+        this.parents = tree.parents;
+        this.leaves = tree.leaves;
+    }
+
+    /**
+     * Smallest float not greater than the value, for boxes computed in doubles.
+     */
+    public static float floor(final double value) {
+        final float f = (float) value;
+        return f > value ? Math.nextDown(f) : f;
+    }
+
+    /**
+     * Smallest float not less than the value, for boxes computed in doubles.
+     */
+    public static float ceil(final double value) {
+        final float f = (float) value;
+        return f < value ? Math.nextUp(f) : f;
+    }
+
+    public boolean isEmpty() {
+        return nodeCount == 0;
+    }
+
+    public boolean isLeaf(final int node) {
+        return nodePrimitiveCount[node] > 0;
+    }
+
+    /**
+     * Position of the first primitive of a leaf.
+     */
+    public int getFirst(final int node) {
+        return nodeOffset[node];
+    }
+
+    public int getPrimitiveCount(final int node) {
+        return nodePrimitiveCount[node];
+    }
+
+    public int getLeftChild(final int node) {
+        return node + 1;
+    }
+
+    public int getRightChild(final int node) {
+        return nodeOffset[node];
+    }
+
+    /**
+     * Whether the right child of an inner node is nearer than the left one along the ray, from
+     * the inverse of its direction.
+     */
+    public boolean isRightNearer(final int node, final double ix, final double iy, final double iz) {
+        final int axis = nodeAxis[node];
+        return (axis == 0 ? ix : axis == 1 ? iy : iz) < 0;
+    }
+
+    /**
+     * Slab test of the box of a node against the ray, from the inverse of its direction.
+     */
+    public boolean intersects(final int node,
+                              final double ox, final double oy, final double oz,
+                              final double ix, final double iy, final double iz,
+                              final double maxDistance) {
+        final float[] nodeBounds = this.nodeBounds;
+        final int b = 6 * node;
+        double tNear = 0, tFar = maxDistance;
+        double t0 = (nodeBounds[b] - ox) * ix, t1 = (nodeBounds[b + 3] - ox) * ix;
+        // Comparisons are written so that a NaN (origin on a slab, direction parallel to it) is ignored
+        if (t0 > t1) { double t = t0; t0 = t1; t1 = t; }
+        if (t0 > tNear) tNear = t0;
+        if (t1 < tFar) tFar = t1;
+        t0 = (nodeBounds[b + 1] - oy) * iy;
+        t1 = (nodeBounds[b + 4] - oy) * iy;
+        if (t0 > t1) { double t = t0; t0 = t1; t1 = t; }
+        if (t0 > tNear) tNear = t0;
+        if (t1 < tFar) tFar = t1;
+        t0 = (nodeBounds[b + 2] - oz) * iz;
+        t1 = (nodeBounds[b + 5] - oz) * iz;
+        if (t0 > t1) { double t = t0; t0 = t1; t1 = t; }
+        if (t0 > tNear) tNear = t0;
+        if (t1 < tFar) tFar = t1;
+        return tNear <= tFar;
+    }
+
+    /**
+     * Whether the point is inside the box of a node, or on its boundary.
+     */
+    public boolean contains(final int node, final double x, final double y, final double z) {
+        final int b = 6 * node;
+        return x >= nodeBounds[b] && x <= nodeBounds[b + 3] &&
+                y >= nodeBounds[b + 1] && y <= nodeBounds[b + 4] &&
+                z >= nodeBounds[b + 2] && z <= nodeBounds[b + 5];
+    }
+
+    /**
+     * Squared distance from the point to the box of a node, 0 inside of it.
+     */
+    public double distanceSquared(final int node, final double x, final double y, final double z) {
+        final int b = 6 * node;
+        final double dx = Math.max(0, Math.max(nodeBounds[b] - x, x - nodeBounds[b + 3]));
+        final double dy = Math.max(0, Math.max(nodeBounds[b + 1] - y, y - nodeBounds[b + 4]));
+        final double dz = Math.max(0, Math.max(nodeBounds[b + 2] - z, z - nodeBounds[b + 5]));
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Bound of the root box along an axis, min for 0 to 2 and max for 3 to 5.
+     */
+    public float getRootBound(final int index) {
+        if (index < 0 || index >= 6) throw new IllegalArgumentException();
+        return nodeBounds[index];
+    }
+
+    /**
+     * Leaf holding the primitive at the given position.
+     */
+    public int getLeaf(final int position) {
+        return topology()[position];
+    }
+
+    /**
+     * Copy of the tree where the given leaves have new boxes and their ancestors are grown or
+     * shrunk to fit, for primitives that moved. The nodes and the order of the primitives are
+     * shared, only the boxes are copied, this tree is unchanged. Refitted boxes are valid but
+     * not as tight as rebuilt ones, a tree refitted too many times is worth building again.
+     *
+     * @param bounds 6 floats per leaf: minX, minY, minZ, maxX, maxY, maxZ
+     */
+    public BoundingVolumeTree refit(final int[] leaves, final float[] bounds, final int count) {
+        if (leaves == null || bounds == null || count < 0 || count > leaves.length || bounds.length < 6 * count) {
+            throw new IllegalArgumentException();
+        }
+        topology();
+        final int[] parents = this.parents;
+        final float[] nodeBounds = this.nodeBounds.clone();
+        for (int i = 0; i < count; i++) {
+            int node = leaves[i];
+            if (!isLeaf(node)) throw new IllegalArgumentException();
+            System.arraycopy(bounds, 6 * i, nodeBounds, 6 * node, 6);
+            while (node != 0) {
+                node = parents[node];
+                final int b = 6 * node, l = 6 * getLeftChild(node), r = 6 * getRightChild(node);
+                for (int axis = 0; axis < 3; axis++) {
+                    nodeBounds[b + axis] = Math.min(nodeBounds[l + axis], nodeBounds[r + axis]);
+                    nodeBounds[b + 3 + axis] = Math.max(nodeBounds[l + 3 + axis], nodeBounds[r + 3 + axis]);
+                }
+            }
+        }
+        return new BoundingVolumeTree(this, nodeBounds);
+    }
+
+    /**
+     * Leaf of every primitive, with the parents of the nodes computed along.
+     */
+    private synchronized int[] topology() {
+        if (leaves != null) return leaves;
+        int primitiveCount = 0;
+        final int[] parents = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            if (isLeaf(node)) {
+                primitiveCount = Math.max(primitiveCount, getFirst(node) + getPrimitiveCount(node));
+            } else {
+                parents[getLeftChild(node)] = node;
+                parents[getRightChild(node)] = node;
+            }
+        }
+        final int[] leaves = new int[primitiveCount];
+        for (int node = 0; node < nodeCount; node++) {
+            if (!isLeaf(node)) continue;
+            for (int p = getFirst(node); p < getFirst(node) + getPrimitiveCount(node); p++) leaves[p] = node;
+        }
+        this.parents = parents;
+        this.leaves = leaves;
+        return leaves;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    private int build(final float[] bounds, final int[] order, final int start, final int end, final int level) {
+        final int node = nodeCount++;
+        depth = Math.max(depth, level);
+
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        // Centroids are kept doubled, (min + max) instead of (min + max) / 2, it does not change the splits
+        double cMinX = Double.POSITIVE_INFINITY, cMinY = Double.POSITIVE_INFINITY, cMinZ = Double.POSITIVE_INFINITY;
+        double cMaxX = Double.NEGATIVE_INFINITY, cMaxY = Double.NEGATIVE_INFINITY, cMaxZ = Double.NEGATIVE_INFINITY;
+        for (int p = 6 * start; p < 6 * end; p += 6) {
+            minX = Math.min(minX, bounds[p]);
+            minY = Math.min(minY, bounds[p + 1]);
+            minZ = Math.min(minZ, bounds[p + 2]);
+            maxX = Math.max(maxX, bounds[p + 3]);
+            maxY = Math.max(maxY, bounds[p + 4]);
+            maxZ = Math.max(maxZ, bounds[p + 5]);
+            final double cx = (double) bounds[p] + bounds[p + 3];
+            final double cy = (double) bounds[p + 1] + bounds[p + 4];
+            final double cz = (double) bounds[p + 2] + bounds[p + 5];
+            cMinX = Math.min(cMinX, cx);
+            cMinY = Math.min(cMinY, cy);
+            cMinZ = Math.min(cMinZ, cz);
+            cMaxX = Math.max(cMaxX, cx);
+            cMaxY = Math.max(cMaxY, cy);
+            cMaxZ = Math.max(cMaxZ, cz);
+        }
+        final int b = 6 * node;
+        nodeBounds[b] = minX;
+        nodeBounds[b + 1] = minY;
+        nodeBounds[b + 2] = minZ;
+        nodeBounds[b + 3] = maxX;
+        nodeBounds[b + 4] = maxY;
+        nodeBounds[b + 5] = maxZ;
+
+        final int count = end - start;
+        if (count == 1) return leaf(node, start, count);
+
+        // Small nodes get fewer bins, they are most of the nodes and would be dominated by the
+        // cost of evaluating empty bins otherwise
+        final int bins = Math.min(BIN_COUNT, count);
+        // Bins of a centroid: (centroid - min) * scale, a flat axis has all its centroids in bin 0
+        final double[] cMin = centroidMin, cScale = centroidScale;
+        cMin[0] = cMinX;
+        cMin[1] = cMinY;
+        cMin[2] = cMinZ;
+        cScale[0] = cMaxX > cMinX ? bins / (cMaxX - cMinX) : 0;
+        cScale[1] = cMaxY > cMinY ? bins / (cMaxY - cMinY) : 0;
+        cScale[2] = cMaxZ > cMinZ ? bins / (cMaxZ - cMinZ) : 0;
+
+        // Binned SAH: bin the primitives on the 3 axes at once, then evaluate bins - 1
+        // candidate planes on each axis
+        for (int axis = 0; axis < 3; axis++) {
+            Arrays.fill(binCount, axis * BIN_COUNT, axis * BIN_COUNT + bins, 0);
+            for (int k = 0; k < bins; k++) empty(binBounds, axis * BIN_COUNT + k);
+        }
+        for (int p = 6 * start; p < 6 * end; p += 6) {
+            final int kx = bin(bounds, p, 0, cMinX, cScale[0], bins);
+            final int ky = BIN_COUNT + bin(bounds, p, 1, cMinY, cScale[1], bins);
+            final int kz = 2 * BIN_COUNT + bin(bounds, p, 2, cMinZ, cScale[2], bins);
+            binCount[kx]++;
+            binCount[ky]++;
+            binCount[kz]++;
+            grow(binBounds, kx, bounds, p);
+            grow(binBounds, ky, bounds, p);
+            grow(binBounds, kz, bounds, p);
+        }
+        int bestAxis = -1, bestSplit = -1;
+        double bestCost = Double.POSITIVE_INFINITY;
+        final double area = area(minX, minY, minZ, maxX, maxY, maxZ);
+        for (int axis = 0; axis < 3; axis++) {
+            if (cScale[axis] == 0) continue;
+            final int first = axis * BIN_COUNT;
+            double aMinX = Double.POSITIVE_INFINITY, aMinY = Double.POSITIVE_INFINITY, aMinZ = Double.POSITIVE_INFINITY;
+            double aMaxX = Double.NEGATIVE_INFINITY, aMaxY = Double.NEGATIVE_INFINITY, aMaxZ = Double.NEGATIVE_INFINITY;
+            int accCount = 0;
+            for (int k = bins - 1; k > 0; k--) {
+                final int bb = 6 * (first + k);
+                aMinX = Math.min(aMinX, binBounds[bb]);
+                aMinY = Math.min(aMinY, binBounds[bb + 1]);
+                aMinZ = Math.min(aMinZ, binBounds[bb + 2]);
+                aMaxX = Math.max(aMaxX, binBounds[bb + 3]);
+                aMaxY = Math.max(aMaxY, binBounds[bb + 4]);
+                aMaxZ = Math.max(aMaxZ, binBounds[bb + 5]);
+                accCount += binCount[first + k];
+                rightArea[k] = area(aMinX, aMinY, aMinZ, aMaxX, aMaxY, aMaxZ);
+                rightCount[k] = accCount;
+            }
+            aMinX = aMinY = aMinZ = Double.POSITIVE_INFINITY;
+            aMaxX = aMaxY = aMaxZ = Double.NEGATIVE_INFINITY;
+            int leftCount = 0;
+            for (int k = 1; k < bins; k++) {
+                final int bb = 6 * (first + k - 1);
+                aMinX = Math.min(aMinX, binBounds[bb]);
+                aMinY = Math.min(aMinY, binBounds[bb + 1]);
+                aMinZ = Math.min(aMinZ, binBounds[bb + 2]);
+                aMaxX = Math.max(aMaxX, binBounds[bb + 3]);
+                aMaxY = Math.max(aMaxY, binBounds[bb + 4]);
+                aMaxZ = Math.max(aMaxZ, binBounds[bb + 5]);
+                leftCount += binCount[first + k - 1];
+                if (leftCount == 0 || rightCount[k] == 0) continue;
+                final double cost = TRAVERSAL_COST + INTERSECTION_COST *
+                        (area(aMinX, aMinY, aMinZ, aMaxX, aMaxY, aMaxZ) * leftCount + rightArea[k] * rightCount[k]) / area;
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestAxis = axis;
+                    bestSplit = k;
+                }
+            }
+        }
+
+        if (bestAxis < 0) return leaf(node, start, count);
+        if (count <= MAX_LEAF_SIZE && bestCost >= INTERSECTION_COST * count) return leaf(node, start, count);
+
+        int mid = start;
+        for (int i = start; i < end; i++) {
+            if (bin(bounds, 6 * i, bestAxis, cMin[bestAxis], cScale[bestAxis], bins) < bestSplit) {
+                swap(bounds, order, i, mid++);
+            }
+        }
+        if (mid == start || mid == end) mid = medianSplit(bounds, order, start, end, bestAxis);
+
+        nodeAxis[node] = (byte) bestAxis;
+        build(bounds, order, start, mid, level + 1);
+        nodeOffset[node] = build(bounds, order, mid, end, level + 1);
+        nodePrimitiveCount[node] = 0;
+        return node;
+    }
+
+    private int leaf(final int node, final int start, final int count) {
+        nodeOffset[node] = start;
+        nodePrimitiveCount[node] = count;
+        return node;
+    }
+
+    /**
+     * Partitions the range around its median centroid on the axis, in place.
+     */
+    private static int medianSplit(final float[] bounds, final int[] order,
+                                   final int start, final int end, final int axis) {
+        final int mid = (start + end) >>> 1;
+        int lo = start, hi = end - 1;
+        while (lo < hi) {
+            final double pivot = centroid(bounds, (lo + hi) >>> 1, axis);
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (centroid(bounds, i, axis) < pivot) i++;
+                while (centroid(bounds, j, axis) > pivot) j--;
+                if (i <= j) swap(bounds, order, i++, j--);
+            }
+            if (mid <= j) hi = j;
+            else if (mid >= i) lo = i;
+            else break;
+        }
+        return mid;
+    }
+
+    private static void swap(final float[] bounds, final int[] order, final int i, final int j) {
+        if (i == j) return;
+        final int tmp = order[i];
+        order[i] = order[j];
+        order[j] = tmp;
+        for (int k = 0; k < 6; k++) {
+            final float f = bounds[6 * i + k];
+            bounds[6 * i + k] = bounds[6 * j + k];
+            bounds[6 * j + k] = f;
+        }
+    }
+
+    private static double centroid(final float[] bounds, final int position, final int axis) {
+        return (double) bounds[6 * position + axis] + bounds[6 * position + 3 + axis];
+    }
+
+    private static int bin(final float[] bounds, final int p, final int axis,
+                           final double min, final double scale, final int bins) {
+        final int b = (int) (((double) bounds[p + axis] + bounds[p + 3 + axis] - min) * scale);
+        return b < 0 ? 0 : b >= bins ? bins - 1 : b;
+    }
+
+    private static void empty(final double[] boxes, final int box) {
+        final int b = 6 * box;
+        boxes[b] = boxes[b + 1] = boxes[b + 2] = Double.POSITIVE_INFINITY;
+        boxes[b + 3] = boxes[b + 4] = boxes[b + 5] = Double.NEGATIVE_INFINITY;
+    }
+
+    private static void grow(final double[] boxes, final int box, final float[] bounds, final int p) {
+        final int b = 6 * box;
+        boxes[b] = Math.min(boxes[b], bounds[p]);
+        boxes[b + 1] = Math.min(boxes[b + 1], bounds[p + 1]);
+        boxes[b + 2] = Math.min(boxes[b + 2], bounds[p + 2]);
+        boxes[b + 3] = Math.max(boxes[b + 3], bounds[p + 3]);
+        boxes[b + 4] = Math.max(boxes[b + 4], bounds[p + 4]);
+        boxes[b + 5] = Math.max(boxes[b + 5], bounds[p + 5]);
+    }
+
+    private static double area(final double minX, final double minY, final double minZ,
+                               final double maxX, final double maxY, final double maxZ) {
+        final double dx = maxX - minX, dy = maxY - minY, dz = maxZ - minZ;
+        if (dx < 0 || dy < 0 || dz < 0) return 0;
+        return 2 * (dx * dy + dy * dz + dz * dx);
+    }
+
+    @Override
+    public String toString() {
+        return "BoundingVolumeTree{" +
+                "nodeCount=" + nodeCount +
+                ", depth=" + depth +
+                '}';
+    }
+}
@@ -0,0 +1,181 @@
+package com.surenot.raytracer.acceleration;
+
+import com.surenot.raytracer.primitives.MutableImpact3D;
+import com.surenot.raytracer.primitives.Point3D;
+import com.surenot.raytracer.shapes.Light3D;
+import com.surenot.raytracer.shapes.Shape3D;
+import com.surenot.raytracer.stats.TraceCounters;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The lights of a scene, indexed twice: by their shapes, for the rays that may hit them, and
+ * by their sphere of influence, beyond which their attenuation factor is below a threshold,
+ * for the points they may light. A point outside the sphere of a light is not shaded by it.
+ */
+public final class LightHierarchy {
+
+    public final static LightHierarchy EMPTY = new LightHierarchy(new Light3D[0], 0);
+
+    private final Light3D[] lights;
+    private final double threshold;
+    // Channels of the colour of every light, in [0, 1]
+    private final double[] colors;
+    private final BoundingVolumeHierarchy shapes;
+    // Lights with an infinite influence, they light every point
+    private final int[] unbounded;
+    // Lights with a bounded influence in the order of the tree, and center and squared radius
+    // of their spheres
+    private final int[] bounded;
+    private final double[] spheres;
+    private final BoundingVolumeTree tree;
+
+    /**
+     * @param threshold attenuation factor below which a light is ignored, 0 to never ignore any
+     */
+    public LightHierarchy(final Light3D[] lights, final double threshold) {
+        if (lights == null || !(threshold >= 0)) throw new IllegalArgumentException();
+        this.lights = lights.clone();
+        this.threshold = threshold;
+        this.shapes = new BoundingVolumeHierarchy(Arrays.asList(this.lights));
+        this.colors = new double[3 * lights.length];
+
+        final int[] unbounded = new int[lights.length];
+        final int[] bounded = new int[lights.length];
+        int unboundedCount = 0, boundedCount = 0;
+        final double[] radii = new double[lights.length];
+        for (int i = 0; i < lights.length; i++) {
+            if (lights[i] == null) throw new IllegalArgumentException();
+            final int color = lights[i].getSurface().getColor();
+            colors[3 * i] = (color >> 16 & 0xFF) / 255.0;
+            colors[3 * i + 1] = (color >> 8 & 0xFF) / 255.0;
+            colors[3 * i + 2] = (color & 0xFF) / 255.0;
+            radii[i] = lights[i].getInfluenceRadius(threshold);
+            if (Double.isInfinite(radii[i])) unbounded[unboundedCount++] = i;
+            else bounded[boundedCount++] = i;
+        }
+        this.unbounded = Arrays.copyOf(unbounded, unboundedCount);
+
+        final float[] bounds = new float[6 * boundedCount];
+        for (int i = 0; i < boundedCount; i++) {
+            final Point3D center = lights[bounded[i]].getCenter();
+            final double r = radii[bounded[i]];
+            bounds[6 * i] = BoundingVolumeTree.floor(center.getX() - r);
+            bounds[6 * i + 1] = BoundingVolumeTree.floor(center.getY() - r);
+            bounds[6 * i + 2] = BoundingVolumeTree.floor(center.getZ() - r);
+            bounds[6 * i + 3] = BoundingVolumeTree.ceil(center.getX() + r);
+            bounds[6 * i + 4] = BoundingVolumeTree.ceil(center.getY() + r);
+            bounds[6 * i + 5] = BoundingVolumeTree.ceil(center.getZ() + r);
+        }
+        final int[] order = new int[boundedCount];
+        this.tree = new BoundingVolumeTree(bounds, order);
+        this.bounded = new int[boundedCount];
+        this.spheres = new double[4 * boundedCount];
+        for (int i = 0; i < boundedCount; i++) {
+            final int light = bounded[order[i]];
+            final Point3D center = lights[light].getCenter();
+            this.bounded[i] = light;
+            spheres[4 * i] = center.getX();
+            spheres[4 * i + 1] = center.getY();
+            spheres[4 * i + 2] = center.getZ();
+            spheres[4 * i + 3] = radii[light] * radii[light];
+        }
+    }
+
+    public List<Light3D> getLights() {
+        return Collections.unmodifiableList(Arrays.asList(lights));
+    }
+
+    public int getLightCount() {
+        return lights.length;
+    }
+
+    public Light3D getLight(final int index) {
+        return lights[index];
+    }
+
+    public double getRed(final int index) {
+        return colors[3 * index];
+    }
+
+    public double getGreen(final int index) {
+        return colors[3 * index + 1];
+    }
+
+    public double getBlue(final int index) {
+        return colors[3 * index + 2];
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Writes the indices of the lights whose influence reaches the point, in increasing order,
+     * so that their contributions are summed in the same order as without culling.
+     *
+     * @param indices receives the indices, getLightCount() long at least
+     * @return the number of indices written
+     */
+    public int findLights(final double x, final double y, final double z, final int[] indices) {
+        System.arraycopy(unbounded, 0, indices, 0, unbounded.length);
+        int count = unbounded.length;
+        if (!tree.isEmpty()) count = findLights(0, x, y, z, indices, count);
+        // Few lights reach a point, and the unbounded ones are already sorted
+        for (int i = unbounded.length; i < count; i++) {
+            final int index = indices[i];
+            int j = i;
+            for (; j > 0 && indices[j - 1] > index; j--) indices[j] = indices[j - 1];
+            indices[j] = index;
+        }
+        return count;
+    }
+
+    private int findLights(final int node, final double x, final double y, final double z,
+                           final int[] indices, int count) {
+        if (!tree.contains(node, x, y, z)) return count;
+        if (tree.isLeaf(node)) {
+            final int first = tree.getFirst(node);
+            for (int i = first; i < first + tree.getPrimitiveCount(node); i++) {
+                final double dx = x - spheres[4 * i], dy = y - spheres[4 * i + 1], dz = z - spheres[4 * i + 2];
+                if (dx * dx + dy * dy + dz * dz <= spheres[4 * i + 3]) indices[count++] = bounded[i];
+            }
+            return count;
+        }
+        count = findLights(tree.getLeftChild(node), x, y, z, indices, count);
+        return findLights(tree.getRightChild(node), x, y, z, indices, count);
+    }
+
+    /**
+     * Records the impact of the ray with a light when closer than the one already in impact.
+     * The direction must be normalized.
+     *
+     * @return true if a light was hit closer
+     */
+    public boolean closerHit(final double ox, final double oy, final double oz,
+                             final double dx, final double dy, final double dz,
+                             final MutableImpact3D impact, final TraceCounters counters) {
+        return shapes.closerHit(ox, oy, oz, dx, dy, dz, impact, counters);
+    }
+
+    /**
+     * First light other than source found to be hit by the ray closer than maxDistance, or
+     * null. The direction must be normalized.
+     */
+    public Shape3D findOccluder(final double ox, final double oy, final double oz,
+                                final double dx, final double dy, final double dz,
+                                final double maxDistance, final Light3D source, final TraceCounters counters) {
+        return shapes.findOccluder(ox, oy, oz, dx, dy, dz, maxDistance, source, null, -1, counters);
+    }
+
+    @Override
+    public String toString() {
+        return "LightHierarchy{" +
+                "lightCount=" + lights.length +
+                ", threshold=" + threshold +
+                ", unboundedCount=" + unbounded.length +
+                '}';
+    }
+}
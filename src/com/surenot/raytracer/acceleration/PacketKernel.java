@@ -0,0 +1,21 @@
+package com.surenot.raytracer.acceleration;
+
+import com.surenot.raytracer.primitives.RayPacket;
+import com.surenot.raytracer.shapes.Sphere3D;
+
+/**
+ * Intersects every ray of a packet with a sphere at once. Implementations compute exactly what
+ * Sphere3D.intersect computes for each ray, in the same order of operations, so that packets
+ * and single rays give the same images. See PacketKernels for the available ones.
+ */
+public interface PacketKernel {
+
+    /**
+     * Offers the impact of every ray of the packet with the sphere, a ray keeps its closest one.
+     *
+     * @param material material id of the sphere, offered along with its impacts
+     */
+    void intersect(RayPacket packet, Sphere3D sphere, int material);
+
+    String getName();
+}
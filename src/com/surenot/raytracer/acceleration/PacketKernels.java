@@ -0,0 +1,66 @@
+package com.surenot.raytracer.acceleration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * The packet kernels available to this JVM: the scalar one, always, and those found by the
+ * ServiceLoader. The SIMD kernel of the raytracer-simd module needs Java 17 or later and
+ * --add-modules jdk.incubator.vector, without them it is silently left out.
+ */
+public final class PacketKernels {
+
+    public final static PacketKernel SCALAR = new ScalarPacketKernel();
+
+    private final static List<PacketKernel> AVAILABLE = load();
+
+    private PacketKernels() {
+    }
+
+    /**
+     * Every available kernel, the preferred one first.
+     */
+    public static List<PacketKernel> getAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * The first kernel found by the ServiceLoader, the scalar one when there is none.
+     */
+    public static PacketKernel getDefault() {
+        return AVAILABLE.get(0);
+    }
+
+    public static PacketKernel get(final String name) {
+        for (PacketKernel kernel : AVAILABLE) {
+            if (kernel.getName().equals(name)) return kernel;
+        }
+        throw new IllegalArgumentException("Packet kernel not available: " + name);
+    }
+
+    private static List<PacketKernel> load() {
+        final List<PacketKernel> kernels = new ArrayList<>();
+        final Iterator<PacketKernel> services = ServiceLoader.load(PacketKernel.class).iterator();
+        while (hasNext(services)) {
+            try {
+                kernels.add(services.next());
+            } catch (ServiceConfigurationError | LinkageError e) {
+                // Typically the incubator module missing, the next kernels may still load
+            }
+        }
+        kernels.add(SCALAR);
+        return Collections.unmodifiableList(kernels);
+    }
+
+    private static boolean hasNext(final Iterator<PacketKernel> services) {
+        try {
+            return services.hasNext();
+        } catch (ServiceConfigurationError e) {
+            return false;
+        }
+    }
+}
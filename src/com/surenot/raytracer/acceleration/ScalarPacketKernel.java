@@ -0,0 +1,45 @@
+package com.surenot.raytracer.acceleration;
+
+import com.surenot.raytracer.primitives.Point3D;
+import com.surenot.raytracer.primitives.RayPacket;
+import com.surenot.raytracer.shapes.Sphere3D;
+
+/**
+ * Portable kernel, a loop over the lanes that runs on any JVM. Still cheaper than tracing the
+ * rays one by one: the sphere is read once per packet.
+ */
+final class ScalarPacketKernel implements PacketKernel {
+
+    @Override
+    public void intersect(final RayPacket packet, final Sphere3D sphere, final int material) {
+        final Point3D center = sphere.getCenter();
+        final double cx = center.getX(), cy = center.getY(), cz = center.getZ();
+        final double r2 = sphere.getRadiusSquared();
+        final double[] ox = packet.originX, oy = packet.originY, oz = packet.originZ;
+        final double[] dx = packet.directionX, dy = packet.directionY, dz = packet.directionZ;
+        for (int lane = 0; lane < packet.getCount(); lane++) {
+            final double nox = ox[lane] - cx;
+            final double noy = oy[lane] - cy;
+            final double noz = oz[lane] - cz;
+            final double b = 2 * (dx[lane] * nox + dy[lane] * noy + dz[lane] * noz);
+            final double c = nox * nox + noy * noy + noz * noz - r2;
+            final double d = b * b - 4 * c;
+            if (d < 0) continue;
+            final double sqrtD = Math.sqrt(d);
+            final double t0 = (-b + sqrtD) / 2;
+            final double t1 = (-b - sqrtD) / 2;
+            final double t = t1 < 0 ? t0 : t1;
+            if (t >= 0) packet.offer(lane, sphere, 0, material, t);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    public String toString() {
+        return "ScalarPacketKernel";
+    }
+}
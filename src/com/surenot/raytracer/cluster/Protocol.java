@@ -0,0 +1,113 @@
+package com.surenot.raytracer.cluster;
+
+import com.surenot.raytracer.Camera;
+import com.surenot.raytracer.Scene;
+import com.surenot.raytracer.render.AntiAliasing;
+import com.surenot.raytracer.render.SoftShadows;
+import com.surenot.raytracer.shapes.Shape3D;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Messages exchanged between the coordinator and its workers, every message starts with its
+ * type.
+ *
+ * HELLO   worker to coordinator, once: magic number, render threads of the worker
+ * SCENE   coordinator to worker, once per frame: frame id, length, serialized scene
+ * TILE    coordinator to worker: frame id, tile index, x, y, width, height
+ * PIXELS  worker to coordinator: frame id, tile index, the RGB pixels of the tile row by row
+ */
+final class Protocol {
+
+    final static int MAGIC = 0x52545243;
+    final static int HELLO = 1;
+    final static int SCENE = 2;
+    final static int TILE = 3;
+    final static int PIXELS = 4;
+
+    // Classes outside of the ray tracer a serialized scene may contain
+    private final static String SCENE_PACKAGE = "com.surenot.raytracer.";
+    private final static Set<String> SCENE_CLASSES = new HashSet<>(Arrays.asList(
+            ArrayList.class.getName(), Enum.class.getName()));
+
+    private Protocol() {
+    }
+
+    /**
+     * Camera, shapes, lights included, anti aliasing and soft shadows of the scene: what a
+     * worker needs to build the same scene again.
+     */
+    static byte[] serialize(final Scene scene) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(scene.getCamera());
+            out.writeObject(new ArrayList<>(scene.getShapes()));
+            out.writeObject(scene.getAntiAliasing());
+            out.writeObject(scene.getSoftShadows());
+        }
+        return bytes.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    static Scene deserialize(final byte[] bytes) throws IOException {
+        try (ObjectInputStream in = new SceneInputStream(new ByteArrayInputStream(bytes))) {
+            final Camera camera = (Camera) in.readObject();
+            final Collection<Shape3D> shapes = (Collection<Shape3D>) in.readObject();
+            final AntiAliasing antiAliasing = (AntiAliasing) in.readObject();
+            final SoftShadows softShadows = (SoftShadows) in.readObject();
+            final Scene scene = new Scene(camera, shapes);
+            scene.setAntiAliasing(antiAliasing);
+            scene.setSoftShadows(softShadows);
+            return scene;
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Invalid scene", e);
+        }
+    }
+
+    static void writePixels(final DataOutputStream out, final int[] pixels, final int count) throws IOException {
+        final byte[] bytes = new byte[4 * count];
+        ByteBuffer.wrap(bytes).asIntBuffer().put(pixels, 0, count);
+        out.write(bytes);
+    }
+
+    static void readPixels(final DataInputStream in, final int[] pixels, final int count) throws IOException {
+        final byte[] bytes = new byte[4 * count];
+        in.readFully(bytes);
+        ByteBuffer.wrap(bytes).asIntBuffer().get(pixels, 0, count);
+    }
+
+    /**
+     * Only resolves the classes a scene is made of, the bytes come from the network.
+     */
+    private static final class SceneInputStream extends ObjectInputStream {
+
+        private SceneInputStream(final InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass description) throws IOException, ClassNotFoundException {
+            String name = description.getName();
+            while (name.startsWith("[")) name = name.substring(1);
+            if (name.length() == 1) return super.resolveClass(description);
+            if (name.startsWith("L") && name.endsWith(";")) name = name.substring(1, name.length() - 1);
+            if (name.startsWith(SCENE_PACKAGE) || SCENE_CLASSES.contains(name)) return super.resolveClass(description);
+            throw new InvalidClassException(description.getName(), "not part of a scene");
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.surenot.raytracer.cluster;
+
+import com.surenot.raytracer.Scene;
+import com.surenot.raytracer.render.Tile;
+import com.surenot.raytracer.render.TileOrder;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders frames on worker processes connected over TCP, see RenderWorker. Each frame is
+ * serialized once and sent to every worker, then its tiles are handed out to the workers as
+ * they complete the previous ones, a few tiles ahead per render thread so that no worker waits
+ * on the network. The tiles of a worker that disconnects are given to the others.
+ * Workers may join at any time, a frame waits for at least one of them.
+ */
+public final class RenderCoordinator implements Closeable {
+
+    public final static int DEFAULT_PORT = 7878;
+
+    // Tiles sent ahead to a worker for each of its render threads
+    private final static int TILES_PER_THREAD = 2;
+    // Period at which an idle worker looks for tiles given back by a dead one
+    private final static long POLL_MILLISECONDS = 100;
+
+    private final ServerSocket server;
+    private final int tileSize;
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final Object lock = new Object();
+    // Frame being rendered, guarded by lock
+    private Job job;
+    private int frameCount;
+    private volatile boolean closed;
+
+    /**
+     * Listens for workers on the given port, 0 for any free port.
+     */
+    public RenderCoordinator(final int port, final int tileSize) throws IOException {
+        if (port < 0 || tileSize <= 0) throw new IllegalArgumentException();
+        this.server = new ServerSocket(port);
+        this.tileSize = tileSize;
+        final Thread acceptor = new Thread(this::accept, "coordinator-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int getWorkerCount() {
+        return connections.size();
+    }
+
+    /**
+     * Renders the scene on the workers with its anti aliasing, lights and camera, and returns a
+     * new image once every tile is back. Fails with an IOException when the coordinator is
+     * closed meanwhile.
+     */
+    public synchronized BufferedImage render(final Scene scene) throws IOException, InterruptedException {
+        if (scene == null) throw new IllegalArgumentException();
+        if (closed) throw new IllegalStateException();
+        final int width = scene.getCamera().getWidth(), height = scene.getCamera().getHeight();
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final Job job = new Job(frameCount++, Protocol.serialize(scene), width,
+                ((DataBufferInt) image.getRaster().getDataBuffer()).getData(),
+                TileOrder.MORTON.tiles(width, height, tileSize));
+        synchronized (lock) {
+            this.job = job;
+            lock.notifyAll();
+        }
+        try {
+            while (!job.remaining.await(POLL_MILLISECONDS, TimeUnit.MILLISECONDS)) {
+                if (closed) throw new IOException("Coordinator closed");
+            }
+        } finally {
+            synchronized (lock) {
+                this.job = null;
+            }
+        }
+        return image;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        server.close();
+        for (Connection connection : connections) connection.close();
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                final Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                final Connection connection = new Connection(socket);
+                connections.add(connection);
+                final Thread thread = new Thread(connection, "coordinator-" + socket.getRemoteSocketAddress());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!closed) System.err.println("Could not accept a worker: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Next frame not yet complete other than the given one, null once closed.
+     */
+    private Job awaitJob(final Job previous) throws InterruptedException {
+        synchronized (lock) {
+            while (!closed && (job == null || job == previous || job.isComplete())) lock.wait();
+            return closed ? null : job;
+        }
+    }
+
+    private static final class Job {
+
+        private final int id;
+        private final byte[] scene;
+        private final int width;
+        private final int[] raster;
+        private final List<Tile> tiles;
+        private final BlockingDeque<Integer> pending = new LinkedBlockingDeque<>();
+        private final CountDownLatch remaining;
+
+        private Job(final int id, final byte[] scene, final int width, final int[] raster, final List<Tile> tiles) {
+            this.id = id;
+            this.scene = scene;
+            this.width = width;
+            this.raster = raster;
+            this.tiles = tiles;
+            this.remaining = new CountDownLatch(tiles.size());
+            for (int i = 0; i < tiles.size(); i++) pending.add(i);
+        }
+
+        private boolean isComplete() {
+            return remaining.getCount() == 0;
+        }
+    }
+
+    /**
+     * Feeds one worker: sends it the scene of every frame, keeps a window of tiles in flight and
+     * copies their pixels back in the image.
+     */
+    private final class Connection implements Runnable {
+
+        private final Socket socket;
+        // Tiles sent and not received yet, given back to the frame if the worker dies
+        private final Map<Integer, Tile> inFlight = new HashMap<>();
+        private Job current;
+
+        private Connection(final Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            try {
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                if (in.readInt() != Protocol.HELLO || in.readInt() != Protocol.MAGIC) throw new IOException("Not a worker");
+                final int window = Math.max(1, in.readInt()) * TILES_PER_THREAD;
+                int[] pixels = new int[0];
+                while ((current = awaitJob(current)) != null) {
+                    out.writeInt(Protocol.SCENE);
+                    out.writeInt(current.id);
+                    out.writeInt(current.scene.length);
+                    out.write(current.scene);
+                    while (!current.isComplete()) {
+                        Integer index;
+                        while (inFlight.size() < window && (index = current.pending.pollFirst()) != null) {
+                            send(out, index);
+                        }
+                        out.flush();
+                        if (inFlight.isEmpty()) {
+                            // Everything is handed out, wait for the tiles of a worker that dies
+                            index = current.pending.poll(POLL_MILLISECONDS, TimeUnit.MILLISECONDS);
+                            if (index != null) send(out, index);
+                            continue;
+                        }
+                        if (in.readInt() != Protocol.PIXELS || in.readInt() != current.id) throw new IOException("Unexpected message");
+                        final Tile tile = inFlight.remove(in.readInt());
+                        if (tile == null) throw new IOException("Unexpected tile");
+                        if (pixels.length < tile.getPixelCount()) pixels = new int[tile.getPixelCount()];
+                        Protocol.readPixels(in, pixels, tile.getPixelCount());
+                        for (int y = 0; y < tile.getHeight(); y++) {
+                            System.arraycopy(pixels, y * tile.getWidth(),
+                                    current.raster, (tile.getY() + y) * current.width + tile.getX(), tile.getWidth());
+                        }
+                        current.remaining.countDown();
+                    }
+                }
+            } catch (IOException e) {
+                if (!closed) System.err.println("Lost worker " + socket.getRemoteSocketAddress() + ": " + e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                // Give the tiles back before leaving, another worker renders them
+                if (current != null) {
+                    for (Integer index : inFlight.keySet()) current.pending.addFirst(index);
+                }
+                inFlight.clear();
+                connections.remove(this);
+                close();
+            }
+        }
+
+        private void send(final DataOutputStream out, final int index) throws IOException {
+            final Tile tile = current.tiles.get(index);
+            inFlight.put(index, tile);
+            out.writeInt(Protocol.TILE);
+            out.writeInt(current.id);
+            out.writeInt(index);
+            out.writeInt(tile.getX());
+            out.writeInt(tile.getY());
+            out.writeInt(tile.getWidth());
+            out.writeInt(tile.getHeight());
+        }
+
+        private void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing left to release
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RenderCoordinator{" +
+                "port=" + getPort() +
+                ", tileSize=" + tileSize +
+                ", workerCount=" + getWorkerCount() +
+                '}';
+    }
+}
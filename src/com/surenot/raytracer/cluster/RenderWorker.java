@@ -0,0 +1,160 @@
+package com.surenot.raytracer.cluster;
+
+import com.surenot.raytracer.Scene;
+import com.surenot.raytracer.render.Tile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Worker process of a RenderCoordinator: connects to it, rebuilds the scene of every frame it
+ * receives and renders the tiles it is given on its own threads, until the coordinator goes
+ * away.
+ */
+public final class RenderWorker {
+
+    private final static String USAGE = String.join("\n",
+            "Usage: RenderWorker [options]",
+            "  --connect <host>:<port>  coordinator to render for (default: localhost:" + RenderCoordinator.DEFAULT_PORT + ")",
+            "  --threads <n>            render threads (default: all processors)");
+
+    private final String host;
+    private final int port;
+    private final int threads;
+
+    public RenderWorker(final String host, final int port, final int threads) {
+        if (host == null || port <= 0 || threads <= 0) throw new IllegalArgumentException();
+        this.host = host;
+        this.port = port;
+        this.threads = threads;
+    }
+
+    /**
+     * Renders for the coordinator until it closes the connection.
+     */
+    public void run() throws IOException, InterruptedException {
+        final ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "worker-render");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(Protocol.HELLO);
+            out.writeInt(Protocol.MAGIC);
+            out.writeInt(threads);
+            out.flush();
+
+            Scene scene = null;
+            int frame = -1;
+            while (true) {
+                final int type;
+                try {
+                    type = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                switch (type) {
+                    case Protocol.SCENE: {
+                        frame = in.readInt();
+                        final byte[] bytes = new byte[in.readInt()];
+                        in.readFully(bytes);
+                        scene = Protocol.deserialize(bytes);
+                        break;
+                    }
+                    case Protocol.TILE: {
+                        if (in.readInt() != frame || scene == null) throw new IOException("Tile of an unknown frame");
+                        final int index = in.readInt();
+                        final Tile tile = new Tile(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                        final Scene tileScene = scene;
+                        final int tileFrame = frame;
+                        pool.execute(() -> render(tileScene, tileFrame, index, tile, out, socket));
+                        break;
+                    }
+                    default:
+                        throw new IOException("Unexpected message " + type);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private static void render(final Scene scene, final int frame, final int index, final Tile tile,
+                               final DataOutputStream out, final Socket socket) {
+        final int[] pixels = new int[tile.getPixelCount()];
+        try {
+            scene.render(tile, pixels);
+        } catch (RuntimeException e) {
+            // Disconnect rather than leave the tile pending, the coordinator gives it to another worker
+            System.err.println("Could not render tile " + index + " of frame " + frame + ": " + e);
+            close(socket);
+            return;
+        }
+        try {
+            synchronized (out) {
+                out.writeInt(Protocol.PIXELS);
+                out.writeInt(frame);
+                out.writeInt(index);
+                Protocol.writePixels(out, pixels, pixels.length);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The coordinator is gone, stop reading from it as well
+            close(socket);
+        }
+    }
+
+    private static void close(final Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Already closed
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+
+        String coordinator = "localhost:" + RenderCoordinator.DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        final RenderWorker worker;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                final String option = args[i];
+                if (option.equals("--help")) {
+                    System.out.println(USAGE);
+                    return;
+                }
+                if (i + 1 == args.length) throw new IllegalArgumentException("Missing value for " + option);
+                final String value = args[++i];
+                switch (option) {
+                    case "--connect": coordinator = value; break;
+                    case "--threads": threads = Integer.parseInt(value); break;
+                    default: throw new IllegalArgumentException("Unknown option " + option);
+                }
+            }
+            final int separator = coordinator.lastIndexOf(':');
+            if (separator < 0) throw new IllegalArgumentException("Invalid coordinator " + coordinator);
+            worker = new RenderWorker(coordinator.substring(0, separator),
+                    Integer.parseInt(coordinator.substring(separator + 1)), threads);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage() != null ? e.getMessage() : e.toString());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        worker.run();
+    }
+}
@@ -0,0 +1,96 @@
+package com.surenot.raytracer.io;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+/**
+ * Writes rendered images to disk without any AWT windowing, the format is chosen from the
+ * file extension. Images are written next to their destination and moved in place once
+ * complete, so a reader never sees a half written frame.
+ */
+public final class ImageFiles {
+
+    public enum Format {
+        PNG,
+        // Binary portable pixmap, trivial to encode and streamed row by row
+        PPM;
+
+        public static Format of(final Path path) {
+            final String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+            if (name.endsWith(".png")) return PNG;
+            if (name.endsWith(".ppm")) return PPM;
+            throw new IllegalArgumentException("Unsupported image format: " + path);
+        }
+    }
+
+    private final static int BUFFER_SIZE = 1 << 16;
+
+    private ImageFiles() {
+    }
+
+    public static void write(final BufferedImage image, final Path path) throws IOException {
+        if (image == null || path == null) throw new IllegalArgumentException();
+        final Format format = Format.of(path);
+        final Path partial = path.resolveSibling(path.getFileName() + ".part");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(partial), BUFFER_SIZE)) {
+            write(image, format, out);
+        }
+        try {
+            Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public static void write(final BufferedImage image, final Format format, final OutputStream out) throws IOException {
+        switch (format) {
+            case PNG:
+                if (!ImageIO.write(image, "png", out)) throw new IOException("No PNG writer available");
+                break;
+            case PPM:
+                writePpm(image, out);
+                break;
+            default:
+                throw new IllegalArgumentException();
+        }
+    }
+
+    private static void writePpm(final BufferedImage image, final OutputStream out) throws IOException {
+        final int width = image.getWidth(), height = image.getHeight();
+        out.write(("P6\n" + width + " " + height + "\n255\n").getBytes(StandardCharsets.US_ASCII));
+        final int[] raster = image.getType() == BufferedImage.TYPE_INT_RGB ?
+                ((DataBufferInt) image.getRaster().getDataBuffer()).getData() :
+                null;
+        final int[] pixels = raster != null ? null : new int[width];
+        final byte[] row = new byte[3 * width];
+        for (int y = 0; y < height; y++) {
+            final int[] source;
+            final int offset;
+            if (raster != null) {
+                source = raster;
+                offset = y * width;
+            } else {
+                image.getRGB(0, y, width, 1, pixels, 0, width);
+                source = pixels;
+                offset = 0;
+            }
+            for (int x = 0; x < width; x++) {
+                final int rgb = source[offset + x];
+                row[3 * x] = (byte) (rgb >> 16);
+                row[3 * x + 1] = (byte) (rgb >> 8);
+                row[3 * x + 2] = (byte) rgb;
+            }
+            out.write(row);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.surenot.raytracer.io;
+
+import com.surenot.raytracer.primitives.Surface;
+import com.surenot.raytracer.shapes.TriangleMesh;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads triangle meshes from Wavefront OBJ files. The file is memory mapped and parsed in
+ * place, byte by byte, without a String per line or an object per vertex: only the packed
+ * vertex and index arrays of the mesh are allocated.
+ * Vertices (v) and faces (f) are read, polygons are split in triangle fans and negative indices
+ * are relative to the last vertex. Texture coordinates, normals, groups and materials are
+ * ignored.
+ */
+public final class ObjFiles {
+
+    // Largest region mapped at once, bigger files are mapped window by window
+    private final static int WINDOW_SIZE = 1 << 30;
+
+    private ObjFiles() {
+    }
+
+    public static TriangleMesh read(final Path path, final Surface surface) throws IOException {
+        if (path == null || surface == null) throw new IllegalArgumentException();
+        final Parser parser;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            parser = new Parser(path, channel, WINDOW_SIZE);
+            parser.parse();
+        }
+        if (parser.indexCount == 0) throw new IOException(path + ": no face");
+        return new TriangleMesh(
+                Arrays.copyOf(parser.vertices, parser.vertexCount),
+                Arrays.copyOf(parser.indices, parser.indexCount),
+                surface);
+    }
+
+    private static final class Parser {
+
+        // Exact powers of ten in a double, for the fast path of number parsing
+        private final static double[] POWERS_OF_TEN = new double[23];
+
+        static {
+            POWERS_OF_TEN[0] = 1;
+            for (int i = 1; i < POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+
+        private final Path path;
+        private final FileChannel channel;
+        private final long size;
+        private final int windowSize;
+        private MappedByteBuffer buffer;
+        // File offset of the first byte of buffer
+        private long base;
+        private int position;
+        private long line;
+
+        private float[] vertices = new float[3 * 1024];
+        private int vertexCount;
+        private int[] indices = new int[3 * 1024];
+        private int indexCount;
+        // Vertices of the face being read
+        private int[] face = new int[16];
+
+        Parser(final Path path, final FileChannel channel, final int windowSize) throws IOException {
+            this.path = path;
+            this.channel = channel;
+            this.size = channel.size();
+            this.windowSize = windowSize;
+            map(0);
+        }
+
+        void parse() throws IOException {
+            while (base + position < size) {
+                line++;
+                final int end = lineEnd();
+                parseLine(end);
+                position = end + 1;
+            }
+        }
+
+        /**
+         * Position of the end of the current line in buffer, the window is moved to the start
+         * of the line first if the line crosses its end.
+         */
+        private int lineEnd() throws IOException {
+            int end = find();
+            if (end < 0 && base + buffer.limit() < size) {
+                map(base + position);
+                end = find();
+                if (end < 0 && base + buffer.limit() < size) throw error("line too long");
+            }
+            return end < 0 ? buffer.limit() : end;
+        }
+
+        private int find() {
+            final int limit = buffer.limit();
+            for (int i = position; i < limit; i++) {
+                if (buffer.get(i) == '\n') return i;
+            }
+            return -1;
+        }
+
+        private void map(final long offset) throws IOException {
+            base = offset;
+            position = 0;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(windowSize, size - offset));
+        }
+
+        private void parseLine(final int end) throws IOException {
+            position = skipSpaces(position, end);
+            if (position == end) return;
+            final byte keyword = buffer.get(position);
+            if (position + 1 < end && !isSpace(buffer.get(position + 1))) return;
+            if (keyword == 'v') parseVertex(end);
+            else if (keyword == 'f') parseFace(end);
+        }
+
+        private void parseVertex(final int end) throws IOException {
+            if (vertexCount + 3 > vertices.length) vertices = Arrays.copyOf(vertices, grow(vertices.length, vertexCount + 3));
+            position++;
+            for (int axis = 0; axis < 3; axis++) {
+                position = skipSpaces(position, end);
+                if (position == end) throw error("missing vertex coordinate");
+                vertices[vertexCount + axis] = parseNumber(end);
+            }
+            // An optional w coordinate follows, it is ignored
+            vertexCount += 3;
+        }
+
+        private void parseFace(final int end) throws IOException {
+            int count = 0;
+            position++;
+            while (true) {
+                position = skipSpaces(position, end);
+                if (position == end) break;
+                final int index = parseIndex(end);
+                // Skip the texture and normal indices of v/vt/vn
+                while (position < end && !isSpace(buffer.get(position))) position++;
+                if (count == face.length) face = Arrays.copyOf(face, 2 * count);
+                face[count++] = index;
+            }
+            if (count < 3) throw error("face with less than 3 vertices");
+            final int triangles = count - 2;
+            if (indexCount + 3 * triangles > indices.length) {
+                indices = Arrays.copyOf(indices, grow(indices.length, indexCount + 3 * triangles));
+            }
+            for (int i = 1; i < count - 1; i++) {
+                indices[indexCount++] = face[0];
+                indices[indexCount++] = face[i];
+                indices[indexCount++] = face[i + 1];
+            }
+        }
+
+        private int parseIndex(final int end) throws IOException {
+            boolean negative = false;
+            if (buffer.get(position) == '-') {
+                negative = true;
+                position++;
+            }
+            long value = 0;
+            final int start = position;
+            while (position < end) {
+                final int digit = buffer.get(position) - '0';
+                if (digit < 0 || digit > 9) break;
+                value = 10 * value + digit;
+                if (value > Integer.MAX_VALUE) throw error("vertex index out of range");
+                position++;
+            }
+            if (position == start) throw error("invalid vertex index");
+            final int available = vertexCount / 3;
+            final long index = negative ? available - value : value - 1;
+            if (value == 0 || index < 0 || index >= available) throw error("vertex index out of range");
+            return (int) index;
+        }
+
+        /**
+         * Vertex coordinate, rejected when it does not fit a finite float.
+         */
+        private float parseNumber(final int end) throws IOException {
+            final int start = position;
+            boolean negative = false;
+            byte b = buffer.get(position);
+            if (b == '-' || b == '+') {
+                negative = b == '-';
+                position++;
+            }
+            long mantissa = 0;
+            int digits = 0, exponent = 0;
+            boolean valid = false, exact = true;
+            while (position < end && isDigit(b = buffer.get(position))) {
+                valid = true;
+                if (digits < 18) {
+                    mantissa = 10 * mantissa + (b - '0');
+                    if (mantissa != 0) digits++;
+                } else {
+                    exponent++;
+                    exact = false;
+                }
+                position++;
+            }
+            if (position < end && buffer.get(position) == '.') {
+                position++;
+                while (position < end && isDigit(b = buffer.get(position))) {
+                    valid = true;
+                    if (digits < 18) {
+                        mantissa = 10 * mantissa + (b - '0');
+                        if (mantissa != 0) digits++;
+                        exponent--;
+                    } else {
+                        exact = false;
+                    }
+                    position++;
+                }
+            }
+            if (position < end && ((b = buffer.get(position)) == 'e' || b == 'E')) {
+                position++;
+                boolean negativeExponent = false;
+                if (position < end && ((b = buffer.get(position)) == '-' || b == '+')) {
+                    negativeExponent = b == '-';
+                    position++;
+                }
+                int value = 0;
+                final int digitsStart = position;
+                while (position < end && isDigit(b = buffer.get(position))) {
+                    if (value < 10000) value = 10 * value + (b - '0');
+                    position++;
+                }
+                if (position == digitsStart) valid = false;
+                exponent += negativeExponent ? -value : value;
+            }
+            if (!valid || (position < end && !isSpace(buffer.get(position)))) throw error("invalid number");
+
+            final double value;
+            // Exact when both the mantissa and the power of ten are exact doubles
+            if (exact && mantissa < (1L << 53) && Math.abs(exponent) < POWERS_OF_TEN.length) {
+                final double magnitude = exponent < 0 ?
+                        mantissa / POWERS_OF_TEN[-exponent] :
+                        mantissa * POWERS_OF_TEN[exponent];
+                value = negative ? -magnitude : magnitude;
+            } else {
+                final byte[] text = new byte[position - start];
+                for (int i = 0; i < text.length; i++) text[i] = buffer.get(start + i);
+                value = Double.parseDouble(new String(text, StandardCharsets.US_ASCII));
+            }
+            final float coordinate = (float) value;
+            if (Float.isInfinite(coordinate)) throw error("invalid number");
+            return coordinate;
+        }
+
+        private int skipSpaces(int from, final int end) {
+            while (from < end && isSpace(buffer.get(from))) from++;
+            return from;
+        }
+
+        private static boolean isSpace(final byte b) {
+            return b == ' ' || b == '\t' || b == '\r';
+        }
+
+        private static boolean isDigit(final byte b) {
+            return b >= '0' && b <= '9';
+        }
+
+        private static int grow(final int length, final int needed) {
+            final long grown = Math.max(needed, length + (long) (length >> 1));
+            if (grown > Integer.MAX_VALUE - 8) throw new OutOfMemoryError("Mesh too large");
+            return (int) grown;
+        }
+
+        private IOException error(final String message) {
+            return new IOException(path + ":" + line + ": " + message);
+        }
+    }
+}
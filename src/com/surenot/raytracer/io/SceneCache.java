@@ -0,0 +1,164 @@
+package com.surenot.raytracer.io;
+
+import com.surenot.raytracer.Scene;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Scenes read by SceneFiles, kept with their bounding volume hierarchy and keyed by the
+ * SHA-256 of the file content: the same content is only parsed and built once, whatever its
+ * path, and a modified file is read again. The hash of a file is itself remembered until its
+ * size or modification time changes, a cached scene is returned without reading the file.
+ * The least recently used scenes are dropped beyond the capacity.
+ */
+public final class SceneCache {
+
+    public final static int DEFAULT_CAPACITY = 4;
+
+    // Region hashed at once
+    private final static int WINDOW_SIZE = 1 << 30;
+
+    private final int capacity;
+    private final Map<String, Scene> scenes;
+    private final Map<FileKey, String> hashes = new HashMap<>();
+
+    public SceneCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SceneCache(final int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException();
+        this.capacity = capacity;
+        this.scenes = new LinkedHashMap<String, Scene>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Scene> eldest) {
+                return size() > SceneCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * New Scene of the file, sharing its shapes and hierarchy with every other scene of the
+     * same content. Each call returns its own Scene, with its own image and render settings.
+     */
+    public Scene get(final Path path) throws IOException {
+        final Scene scene = cached(path);
+        return scene.withCamera(scene.getCamera());
+    }
+
+    /**
+     * Same as get, rendering an image of the given size instead of the one of the file.
+     */
+    public Scene get(final Path path, final int width, final int height) throws IOException {
+        final Scene scene = cached(path);
+        return scene.withCamera(scene.getCamera().withResolution(width, height));
+    }
+
+    /**
+     * Scene of the file kept by the cache, never handed out: its copies are.
+     */
+    private synchronized Scene cached(final Path path) throws IOException {
+        if (path == null) throw new IllegalArgumentException();
+        final String hash = hash(path);
+        Scene scene = scenes.get(hash);
+        if (scene == null) {
+            scene = SceneFiles.read(path);
+            scenes.put(hash, scene);
+        }
+        return scene;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return scenes.size();
+    }
+
+    public synchronized void clear() {
+        scenes.clear();
+        hashes.clear();
+    }
+
+    private String hash(final Path path) throws IOException {
+        final Path file = path.toRealPath();
+        final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        final FileKey key = new FileKey(file, attributes.size(), attributes.lastModifiedTime().toMillis());
+        String hash = hashes.get(key);
+        if (hash == null) {
+            hash = digest(file);
+            // Older versions of the file are useless
+            hashes.keySet().removeIf(k -> k.path.equals(file));
+            hashes.put(key, hash);
+        }
+        return hash;
+    }
+
+    private static String digest(final Path path) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            for (long offset = 0; offset < size; offset += WINDOW_SIZE) {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(WINDOW_SIZE, size - offset)));
+            }
+        }
+        final StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+    private static final class FileKey {
+
+        private final Path path;
+        private final long size;
+        private final long modified;
+
+        private FileKey(final Path path, final long size, final long modified) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            final FileKey that = (FileKey) o;
+
+            if (size != that.size) return false;
+            if (modified != that.modified) return false;
+            return path.equals(that.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, size, modified);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SceneCache{" +
+                "capacity=" + capacity +
+                ", size=" + scenes.size() +
+                '}';
+    }
+}
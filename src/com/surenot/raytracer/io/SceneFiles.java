@@ -0,0 +1,426 @@
+package com.surenot.raytracer.io;
+
+import com.surenot.raytracer.Camera;
+import com.surenot.raytracer.Scene;
+import com.surenot.raytracer.primitives.Dimension2D;
+import com.surenot.raytracer.primitives.Point3D;
+import com.surenot.raytracer.primitives.Surface;
+import com.surenot.raytracer.primitives.Vector3D;
+import com.surenot.raytracer.shapes.Light3D;
+import com.surenot.raytracer.shapes.Plane;
+import com.surenot.raytracer.shapes.Shape3D;
+import com.surenot.raytracer.shapes.Sphere3D;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads and writes scene descriptions: camera, surfaces, spheres, planes and lights. The
+ * format is chosen from the file extension.
+ *
+ * The text form (.scene) has one element per line, lines starting with # are comments:
+ * <pre>
+ * camera &lt;observer x y z&gt; &lt;screen origin x y z&gt; &lt;screen width height&gt; &lt;image width height&gt;
+ * surface &lt;name&gt; #[aa]rrggbb &lt;ambient&gt; &lt;diffuse&gt; &lt;specular&gt; &lt;specular exponent&gt;
+ * sphere &lt;center x y z&gt; &lt;radius&gt; &lt;surface name&gt;
+ * plane &lt;point x y z&gt; &lt;normal x y z&gt; &lt;surface name&gt;
+ * light sphere|plane ...
+ * </pre>
+ * Surfaces are declared before the shapes using them.
+ *
+ * The binary form (.sceneb) holds the same elements in fixed size big endian records, it is
+ * memory mapped and read without any parsing:
+ * <pre>
+ * magic, version                                          2 ints
+ * camera: observer, screen origin, screen size            8 doubles
+ *         pixel counts along X and Y                      2 ints
+ * surface count, then per surface: colour, coefficients   int, then int and 4 doubles
+ * shape count, then per shape: type, flags, surface       int, then 2 bytes and an int
+ *         sphere: center, radius                          4 doubles
+ *         plane: point, normal                            6 doubles
+ * </pre>
+ */
+public final class SceneFiles {
+
+    public enum Format {
+        TEXT,
+        BINARY;
+
+        public static Format of(final Path path) {
+            final String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+            if (name.endsWith(".scene")) return TEXT;
+            if (name.endsWith(".sceneb")) return BINARY;
+            throw new IllegalArgumentException("Unsupported scene format: " + path);
+        }
+    }
+
+    private final static int MAGIC = 0x52545342;
+    private final static int VERSION = 1;
+    private final static byte SPHERE = 1;
+    private final static byte PLANE = 2;
+    // Flag of a shape emitting light
+    private final static byte LIGHT = 1;
+
+    private SceneFiles() {
+    }
+
+    public static Scene read(final Path path) throws IOException {
+        if (path == null) throw new IllegalArgumentException();
+        switch (Format.of(path)) {
+            case TEXT:
+                return readText(path);
+            case BINARY:
+                return readBinary(path);
+            default:
+                throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Writes the camera and shapes of the scene, lights included. Only spheres and planes, as
+     * such or as lights of the default attenuation, can be written.
+     */
+    public static void write(final Scene scene, final Path path) throws IOException {
+        if (scene == null || path == null) throw new IllegalArgumentException();
+        final Format format = Format.of(path);
+        final List<Shape3D> shapes = new ArrayList<>(scene.getShapes());
+        for (Shape3D shape : shapes) {
+            final Shape3D s = shape instanceof Light3D ? ((Light3D) shape).getShape() : shape;
+            if (!(s instanceof Sphere3D) && !(s instanceof Plane)) {
+                throw new IllegalArgumentException("Cannot write " + shape.getClass().getSimpleName());
+            }
+            if (shape instanceof Light3D && !hasDefaultAttenuation((Light3D) shape)) {
+                throw new IllegalArgumentException("Cannot write the attenuation of " + shape);
+            }
+        }
+        switch (format) {
+            case TEXT:
+                writeText(scene.getCamera(), shapes, path);
+                break;
+            case BINARY:
+                writeBinary(scene.getCamera(), shapes, path);
+                break;
+            default:
+                throw new IllegalArgumentException();
+        }
+    }
+
+    private static boolean hasDefaultAttenuation(final Light3D light) {
+        return light.getConstantAttenuationCoefficient() == Light3D.DEFAULT_CONSTANT_ATTENUATION &&
+                light.getLinearAttenuationCoefficient() == Light3D.DEFAULT_LINEAR_ATTENUATION &&
+                light.getQuadraticAttenuationCoefficient() == Light3D.DEFAULT_QUADRATIC_ATTENUATION;
+    }
+
+    /**
+     * Converts a scene file to the format of another: SceneFiles &lt;input&gt; &lt;output&gt;.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: SceneFiles <input>.scene|.sceneb <output>.scene|.sceneb");
+            System.exit(2);
+            return;
+        }
+        write(read(Paths.get(args[0])), Paths.get(args[1]));
+    }
+
+    private static Scene readText(final Path path) throws IOException {
+        Camera camera = null;
+        final Map<String, Surface> surfaces = new HashMap<>();
+        final List<Shape3D> shapes = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            for (int number = 1; (line = reader.readLine()) != null; number++) {
+                final String[] tokens = line.trim().split("\\s+");
+                if (tokens[0].isEmpty() || tokens[0].startsWith("#")) continue;
+                try {
+                    final Tokens t = new Tokens(tokens);
+                    final String keyword = t.next();
+                    switch (keyword) {
+                        case "camera": {
+                            if (camera != null) throw new IllegalArgumentException("second camera");
+                            final Point3D observer = t.point();
+                            final Point3D origin = t.point();
+                            final Dimension2D screen = new Dimension2D(t.number(), t.number());
+                            final int width = t.integer(), height = t.integer();
+                            camera = new Camera(observer, origin, screen, height, width);
+                            break;
+                        }
+                        case "surface": {
+                            final String name = t.next();
+                            if (surfaces.containsKey(name)) throw new IllegalArgumentException("surface " + name + " declared twice");
+                            surfaces.put(name, new Surface(t.color(), t.number(), t.number(), t.number(), t.number()));
+                            break;
+                        }
+                        case "light":
+                            shapes.add(new Light3D(shape(t.next(), t, surfaces)));
+                            break;
+                        default:
+                            shapes.add(shape(keyword, t, surfaces));
+                            break;
+                    }
+                    t.end();
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(path + ":" + number + ": " +
+                            (e.getMessage() != null ? e.getMessage() : "invalid " + tokens[0]), e);
+                }
+            }
+        }
+        if (camera == null) throw new IOException(path + ": no camera");
+        return new Scene(camera, shapes);
+    }
+
+    private static Shape3D shape(final String type, final Tokens t, final Map<String, Surface> surfaces) {
+        switch (type) {
+            case "sphere": {
+                final Point3D center = t.point();
+                final double radius = t.number();
+                return new Sphere3D(center, radius, surface(t.next(), surfaces));
+            }
+            case "plane": {
+                final Point3D point = t.point();
+                final Point3D normal = t.point();
+                return plane(point, normal, surface(t.next(), surfaces));
+            }
+            default:
+                throw new IllegalArgumentException("unknown element " + type);
+        }
+    }
+
+    private static Surface surface(final String name, final Map<String, Surface> surfaces) {
+        final Surface surface = surfaces.get(name);
+        if (surface == null) throw new IllegalArgumentException("unknown surface " + name);
+        return surface;
+    }
+
+    /**
+     * Plane through the point, the vector of the plane is any direction within it.
+     */
+    private static Plane plane(final Point3D point, final Point3D normal, final Surface surface) {
+        final double nx = Math.abs(normal.getX()), ny = Math.abs(normal.getY()), nz = Math.abs(normal.getZ());
+        if (nx + ny + nz == 0) throw new IllegalArgumentException("null normal");
+        // Cross product of the normal with the axis it is the least aligned with
+        final Point3D direction = nx <= ny && nx <= nz ? new Point3D(0, normal.getZ(), -normal.getY()) :
+                ny <= nz ? new Point3D(-normal.getZ(), 0, normal.getX()) :
+                        new Point3D(normal.getY(), -normal.getX(), 0);
+        return new Plane(new Vector3D(point, direction, true), new Vector3D(point, normal, true), surface);
+    }
+
+    private static void writeText(final Camera camera, final List<Shape3D> shapes, final Path path) throws IOException {
+        final Map<Surface, String> names = new HashMap<>();
+        try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            out.write("camera " + format(camera.getObserver()) + "  " + format(camera.getOrigin()) + "  " +
+                    format(camera.getScreenSize().getX()) + " " + format(camera.getScreenSize().getY()) + "  " +
+                    camera.getWidth() + " " + camera.getHeight() + "\n");
+            for (Shape3D shape : shapes) {
+                final Surface surface = shape.getSurface();
+                if (names.containsKey(surface)) continue;
+                final String name = "s" + names.size();
+                names.put(surface, name);
+                final int color = surface.getColor();
+                out.write("surface " + name + " " +
+                        ((color >>> 24) == 0xFF ? String.format("#%06x", color & 0xFFFFFF) : String.format("#%08x", color)) + " " +
+                        format(surface.getAmbientReflectionCoefficient()) + " " +
+                        format(surface.getDiffuseReflectionCoefficient()) + " " +
+                        format(surface.getSpecularReflectionCoefficient()) + " " +
+                        format(surface.getSpecularReflectionExponent()) + "\n");
+            }
+            for (Shape3D shape : shapes) {
+                final boolean light = shape instanceof Light3D;
+                final Shape3D s = light ? ((Light3D) shape).getShape() : shape;
+                if (light) out.write("light ");
+                if (s instanceof Sphere3D) {
+                    out.write("sphere " + format(s.getCenter()) + " " + format(((Sphere3D) s).getRadius()));
+                } else {
+                    final Plane plane = (Plane) s;
+                    out.write("plane " + format(plane.getVector().getOrigin()) + " " + format(plane.getNormal().getDirection()));
+                }
+                out.write(" " + names.get(shape.getSurface()) + "\n");
+            }
+        }
+    }
+
+    private static String format(final Point3D p) {
+        return format(p.getX()) + " " + format(p.getY()) + " " + format(p.getZ());
+    }
+
+    private static String format(final double value) {
+        // Shortest representation that reads back as the same double
+        return value == (long) value ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    private static Scene readBinary(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException(path + ": too large");
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) throw new IOException(path + ": not a binary scene");
+            if (buffer.getInt() != VERSION) throw new IOException(path + ": unsupported version");
+            final Camera camera = new Camera(
+                    new Point3D(buffer.getDouble(), buffer.getDouble(), buffer.getDouble()),
+                    new Point3D(buffer.getDouble(), buffer.getDouble(), buffer.getDouble()),
+                    new Dimension2D(buffer.getDouble(), buffer.getDouble()),
+                    buffer.getInt(), buffer.getInt());
+            final Surface[] surfaces = new Surface[count(buffer, 36, path)];
+            for (int i = 0; i < surfaces.length; i++) {
+                surfaces[i] = new Surface(buffer.getInt(),
+                        buffer.getDouble(), buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+            }
+            final int shapeCount = count(buffer, 38, path);
+            final List<Shape3D> shapes = new ArrayList<>(shapeCount);
+            for (int i = 0; i < shapeCount; i++) {
+                final byte type = buffer.get();
+                final byte flags = buffer.get();
+                final int surface = buffer.getInt();
+                if (surface < 0 || surface >= surfaces.length) throw new IOException(path + ": invalid surface " + surface);
+                final Shape3D shape;
+                if (type == SPHERE) {
+                    shape = new Sphere3D(new Point3D(buffer.getDouble(), buffer.getDouble(), buffer.getDouble()),
+                            buffer.getDouble(), surfaces[surface]);
+                } else if (type == PLANE) {
+                    shape = plane(new Point3D(buffer.getDouble(), buffer.getDouble(), buffer.getDouble()),
+                            new Point3D(buffer.getDouble(), buffer.getDouble(), buffer.getDouble()), surfaces[surface]);
+                } else {
+                    throw new IOException(path + ": invalid shape type " + type);
+                }
+                shapes.add((flags & LIGHT) != 0 ? new Light3D(shape) : shape);
+            }
+            return new Scene(camera, shapes);
+        } catch (BufferUnderflowException e) {
+            throw new IOException(path + ": truncated", e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(path + ": invalid scene", e);
+        }
+    }
+
+    /**
+     * Reads a record count, checking that the file can hold that many records of at least the
+     * given size.
+     */
+    private static int count(final ByteBuffer buffer, final int recordSize, final Path path) throws IOException {
+        final int count = buffer.getInt();
+        if (count < 0 || (long) count * recordSize > buffer.remaining()) throw new IOException(path + ": truncated");
+        return count;
+    }
+
+    private static void writeBinary(final Camera camera, final List<Shape3D> shapes, final Path path) throws IOException {
+        final Map<Surface, Integer> indices = new HashMap<>();
+        final List<Surface> surfaces = new ArrayList<>();
+        for (Shape3D shape : shapes) {
+            if (indices.putIfAbsent(shape.getSurface(), surfaces.size()) == null) surfaces.add(shape.getSurface());
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            write(out, camera.getObserver());
+            write(out, camera.getOrigin());
+            out.writeDouble(camera.getScreenSize().getX());
+            out.writeDouble(camera.getScreenSize().getY());
+            out.writeInt(camera.getPixelCountX());
+            out.writeInt(camera.getPixelCountY());
+            out.writeInt(surfaces.size());
+            for (Surface surface : surfaces) {
+                out.writeInt(surface.getColor());
+                out.writeDouble(surface.getAmbientReflectionCoefficient());
+                out.writeDouble(surface.getDiffuseReflectionCoefficient());
+                out.writeDouble(surface.getSpecularReflectionCoefficient());
+                out.writeDouble(surface.getSpecularReflectionExponent());
+            }
+            out.writeInt(shapes.size());
+            for (Shape3D shape : shapes) {
+                final boolean light = shape instanceof Light3D;
+                final Shape3D s = light ? ((Light3D) shape).getShape() : shape;
+                out.writeByte(s instanceof Sphere3D ? SPHERE : PLANE);
+                out.writeByte(light ? LIGHT : 0);
+                out.writeInt(indices.get(shape.getSurface()));
+                if (s instanceof Sphere3D) {
+                    write(out, s.getCenter());
+                    out.writeDouble(((Sphere3D) s).getRadius());
+                } else {
+                    final Plane plane = (Plane) s;
+                    write(out, plane.getVector().getOrigin());
+                    write(out, plane.getNormal().getDirection());
+                }
+            }
+        }
+    }
+
+    private static void write(final DataOutputStream out, final Point3D p) throws IOException {
+        out.writeDouble(p.getX());
+        out.writeDouble(p.getY());
+        out.writeDouble(p.getZ());
+    }
+
+    /**
+     * Tokens of a line of the text form.
+     */
+    private static final class Tokens {
+
+        private final String[] tokens;
+        private int position;
+
+        private Tokens(final String[] tokens) {
+            this.tokens = tokens;
+        }
+
+        private String next() {
+            if (position == tokens.length) throw new IllegalArgumentException("missing value after " + tokens[position - 1]);
+            return tokens[position++];
+        }
+
+        private double number() {
+            final String token = next();
+            try {
+                final double value = Double.parseDouble(token);
+                if (Double.isNaN(value) || Double.isInfinite(value)) throw new NumberFormatException();
+                return value;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid number " + token);
+            }
+        }
+
+        private int integer() {
+            final String token = next();
+            try {
+                return Integer.parseInt(token);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid integer " + token);
+            }
+        }
+
+        private Point3D point() {
+            return new Point3D(number(), number(), number());
+        }
+
+        private int color() {
+            final String token = next();
+            if (!token.startsWith("#") || (token.length() != 7 && token.length() != 9)) {
+                throw new IllegalArgumentException("invalid colour " + token);
+            }
+            try {
+                final long value = Long.parseLong(token.substring(1), 16);
+                return token.length() == 7 ? 0xFF000000 | (int) value : (int) value;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid colour " + token);
+            }
+        }
+
+        private void end() {
+            if (position != tokens.length) throw new IllegalArgumentException("unexpected " + tokens[position]);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.surenot.raytracer.primitives;
+
+import java.io.Serializable;
+
+/**
+ * Axis aligned bounding box used by the acceleration structures.
+ */
+public final class BoundingBox implements Serializable {
+
+    private final static long serialVersionUID = 1L;
+
+    public final static BoundingBox EMPTY = new BoundingBox(
+            Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+            Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY);
+    public final static BoundingBox INFINITE = new BoundingBox(
+            Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY,
+            Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+
+    private final double minX, minY, minZ;
+    private final double maxX, maxY, maxZ;
+
+    public BoundingBox(final double minX, final double minY, final double minZ,
+                       final double maxX, final double maxY, final double maxZ) {
+        if (Double.isNaN(minX) || Double.isNaN(minY) || Double.isNaN(minZ) ||
+                Double.isNaN(maxX) || Double.isNaN(maxY) || Double.isNaN(maxZ)) {
+            throw new NumberFormatException();
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+    }
+
+    public static BoundingBox around(final Point3D center, final double radius) {
+        if (center == null) throw new IllegalArgumentException();
+        final double r = Math.abs(radius);
+        return new BoundingBox(
+                center.getX() - r, center.getY() - r, center.getZ() - r,
+                center.getX() + r, center.getY() + r, center.getZ() + r);
+    }
+
+    public double getMinX() {
+        return minX;
+    }
+
+    public double getMinY() {
+        return minY;
+    }
+
+    public double getMinZ() {
+        return minZ;
+    }
+
+    public double getMaxX() {
+        return maxX;
+    }
+
+    public double getMaxY() {
+        return maxY;
+    }
+
+    public double getMaxZ() {
+        return maxZ;
+    }
+
+    public double getMin(final int axis) {
+        return axis == 0 ? minX : axis == 1 ? minY : minZ;
+    }
+
+    public double getMax(final int axis) {
+        return axis == 0 ? maxX : axis == 1 ? maxY : maxZ;
+    }
+
+    public double getCentroid(final int axis) {
+        return (getMin(axis) + getMax(axis)) / 2;
+    }
+
+    public boolean isBounded() {
+        return !Double.isInfinite(minX) && !Double.isInfinite(minY) && !Double.isInfinite(minZ) &&
+                !Double.isInfinite(maxX) && !Double.isInfinite(maxY) && !Double.isInfinite(maxZ);
+    }
+
+    public BoundingBox union(final BoundingBox b) {
+        if (b == null) throw new IllegalArgumentException();
+        return new BoundingBox(
+                Math.min(minX, b.minX), Math.min(minY, b.minY), Math.min(minZ, b.minZ),
+                Math.max(maxX, b.maxX), Math.max(maxY, b.maxY), Math.max(maxZ, b.maxZ));
+    }
+
+    public double surfaceArea() {
+        if (maxX < minX || maxY < minY || maxZ < minZ) return 0;
+        final double dx = maxX - minX;
+        final double dy = maxY - minY;
+        final double dz = maxZ - minZ;
+        return 2 * (dx * dy + dy * dz + dz * dx);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        BoundingBox box = (BoundingBox) o;
+
+        if (Double.compare(box.minX, minX) != 0) return false;
+        if (Double.compare(box.minY, minY) != 0) return false;
+        if (Double.compare(box.minZ, minZ) != 0) return false;
+        if (Double.compare(box.maxX, maxX) != 0) return false;
+        if (Double.compare(box.maxY, maxY) != 0) return false;
+        return Double.compare(box.maxZ, maxZ) == 0;
+
+    }
+
+    @Override
+    public int hashCode() {
+        int result;
+        long temp;
+        temp = Double.doubleToLongBits(minX);
+        result = (int) (temp ^ (temp >>> 32));
+        temp = Double.doubleToLongBits(minY);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        temp = Double.doubleToLongBits(minZ);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        temp = Double.doubleToLongBits(maxX);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        temp = Double.doubleToLongBits(maxY);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        temp = Double.doubleToLongBits(maxZ);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "BoundingBox{" +
+                "min=(" + minX + ", " + minY + ", " + minZ + ")" +
+                ", max=(" + maxX + ", " + maxY + ", " + maxZ + ")" +
+                '}';
+    }
+}
@@ -1,9 +1,13 @@
 package com.surenot.raytracer.primitives;
 
+import java.io.Serializable;
+
 /**
  * Created by m.clauss on 1/12/2016.
  */
-public final class Dimension2D {
+public final class Dimension2D implements Serializable {
+
+    private final static long serialVersionUID = 1L;
 
     private final double x, y;
 
@@ -0,0 +1,146 @@
+package com.surenot.raytracer.primitives;
+
+import com.surenot.raytracer.shapes.Shape3D;
+
+/**
+ * Mutable counterpart of Impact3D used by the allocation free render path.
+ * One instance is owned by a single thread and reused for every ray it traces, shapes only
+ * overwrite it when they are hit closer than the current distance.
+ */
+public final class MutableImpact3D {
+
+    private Shape3D object;
+    private int primitive;
+    // Material id given by the owner of the shape, -1 when it has none
+    private int material;
+    private double distance;
+    private double x, y, z;
+    private double normalX, normalY, normalZ;
+
+    public MutableImpact3D() {
+        reset(Double.POSITIVE_INFINITY);
+    }
+
+    public void reset(final double maxDistance) {
+        this.object = null;
+        this.primitive = -1;
+        this.material = -1;
+        this.distance = maxDistance;
+    }
+
+    /**
+     * Records an impact if it is closer than the current one.
+     *
+     * @return true if the impact was recorded
+     */
+    public boolean offer(final Shape3D object, final int primitive, final double distance) {
+        if (!(distance < this.distance)) return false;
+        this.object = object;
+        this.primitive = primitive;
+        this.material = -1;
+        this.distance = distance;
+        return true;
+    }
+
+    /**
+     * Replaces the impacted object, used by shapes wrapping another one.
+     */
+    public void setImpactedObject(final Shape3D object) {
+        this.object = object;
+    }
+
+    /**
+     * Overwrites the distance, used by shapes wrapping another one in a scaled space.
+     */
+    public void setDistance(final double distance) {
+        this.distance = distance;
+    }
+
+    /**
+     * Sets the material id of the impacted object, after offer which clears it.
+     */
+    public void setMaterial(final int material) {
+        this.material = material;
+    }
+
+    public void setPoint(final double x, final double y, final double z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    /**
+     * Sets an already normalized normal.
+     */
+    public void setUnitNormal(final double x, final double y, final double z) {
+        this.normalX = x;
+        this.normalY = y;
+        this.normalZ = z;
+    }
+
+    public void setNormal(final double x, final double y, final double z) {
+        final double length = Math.sqrt(x * x + y * y + z * z);
+        this.normalX = x / length;
+        this.normalY = y / length;
+        this.normalZ = z / length;
+    }
+
+    public boolean isHit() {
+        return object != null;
+    }
+
+    public Shape3D getImpactedObject() {
+        return object;
+    }
+
+    /**
+     * Index of the hit primitive inside the impacted object, for shapes made of several primitives.
+     */
+    public int getPrimitive() {
+        return primitive;
+    }
+
+    public int getMaterial() {
+        return material;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getZ() {
+        return z;
+    }
+
+    public double getNormalX() {
+        return normalX;
+    }
+
+    public double getNormalY() {
+        return normalY;
+    }
+
+    public double getNormalZ() {
+        return normalZ;
+    }
+
+    @Override
+    public String toString() {
+        return "MutableImpact3D{" +
+                "object=" + object +
+                ", primitive=" + primitive +
+                ", material=" + material +
+                ", distance=" + distance +
+                ", point=(" + x + ", " + y + ", " + z + ")" +
+                ", normal=(" + normalX + ", " + normalY + ", " + normalZ + ")" +
+                '}';
+    }
+}
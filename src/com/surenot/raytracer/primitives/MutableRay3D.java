@@ -0,0 +1,60 @@
+package com.surenot.raytracer.primitives;
+
+/**
+ * Mutable ray with a normalized direction, filled by the camera and reused by a single thread
+ * for every primary ray it traces.
+ */
+public final class MutableRay3D {
+
+    private double originX, originY, originZ;
+    private double directionX, directionY, directionZ;
+
+    public void set(final double originX, final double originY, final double originZ,
+                    final double directionX, final double directionY, final double directionZ) {
+        this.originX = originX;
+        this.originY = originY;
+        this.originZ = originZ;
+        this.directionX = directionX;
+        this.directionY = directionY;
+        this.directionZ = directionZ;
+    }
+
+    public double getOriginX() {
+        return originX;
+    }
+
+    public double getOriginY() {
+        return originY;
+    }
+
+    public double getOriginZ() {
+        return originZ;
+    }
+
+    public double getDirectionX() {
+        return directionX;
+    }
+
+    public double getDirectionY() {
+        return directionY;
+    }
+
+    public double getDirectionZ() {
+        return directionZ;
+    }
+
+    public Vector3D toVector3D() {
+        return new Vector3D(
+                new Point3D(originX, originY, originZ),
+                new Point3D(directionX, directionY, directionZ),
+                false);
+    }
+
+    @Override
+    public String toString() {
+        return "MutableRay3D{" +
+                "origin=(" + originX + ", " + originY + ", " + originZ + ")" +
+                ", direction=(" + directionX + ", " + directionY + ", " + directionZ + ")" +
+                '}';
+    }
+}
@@ -1,6 +1,10 @@
 package com.surenot.raytracer.primitives;
 
-public final class Point3D {
+import java.io.Serializable;
+
+public final class Point3D implements Serializable {
+
+    private final static long serialVersionUID = 1L;
 
     public final static Point3D NONE = new Point3D(Double.NaN, Double.NaN, Double.NaN);
     public final static Point3D ORIGIN = new Point3D(0, 0, 0);
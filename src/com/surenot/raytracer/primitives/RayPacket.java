@@ -0,0 +1,106 @@
+package com.surenot.raytracer.primitives;
+
+import com.surenot.raytracer.shapes.Shape3D;
+
+/**
+ * Up to SIZE rays traced together, each with its own closest impact. The rays are stored
+ * lane by lane in arrays, one per coordinate, so that a kernel can load consecutive lanes in
+ * vector registers. The arrays are public for the kernels, only the first getCount lanes are
+ * meaningful. One instance is owned by a single thread, as MutableImpact3D.
+ */
+public final class RayPacket {
+
+    public final static int SIZE = 8;
+
+    public final double[] originX = new double[SIZE];
+    public final double[] originY = new double[SIZE];
+    public final double[] originZ = new double[SIZE];
+    // Normalized directions and their inverse, for the bounding box tests
+    public final double[] directionX = new double[SIZE];
+    public final double[] directionY = new double[SIZE];
+    public final double[] directionZ = new double[SIZE];
+    public final double[] inverseX = new double[SIZE];
+    public final double[] inverseY = new double[SIZE];
+    public final double[] inverseZ = new double[SIZE];
+    // Closest impact of every ray, infinite and null when nothing is hit yet
+    public final double[] distance = new double[SIZE];
+    public final Shape3D[] object = new Shape3D[SIZE];
+    public final int[] primitive = new int[SIZE];
+    public final int[] material = new int[SIZE];
+
+    private int count;
+    // Impact of a single lane with a shape that has no packet kernel
+    private final MutableImpact3D scratch = new MutableImpact3D();
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(final int count) {
+        if (count < 0 || count > SIZE) throw new IllegalArgumentException();
+        this.count = count;
+    }
+
+    /**
+     * Sets the ray of a lane, without any impact.
+     */
+    public void set(final int lane, final MutableRay3D ray) {
+        originX[lane] = ray.getOriginX();
+        originY[lane] = ray.getOriginY();
+        originZ[lane] = ray.getOriginZ();
+        directionX[lane] = ray.getDirectionX();
+        directionY[lane] = ray.getDirectionY();
+        directionZ[lane] = ray.getDirectionZ();
+        inverseX[lane] = 1 / ray.getDirectionX();
+        inverseY[lane] = 1 / ray.getDirectionY();
+        inverseZ[lane] = 1 / ray.getDirectionZ();
+        distance[lane] = Double.POSITIVE_INFINITY;
+        object[lane] = null;
+        primitive[lane] = -1;
+        material[lane] = -1;
+    }
+
+    /**
+     * Records an impact of the ray of a lane if it is closer than its current one, as
+     * MutableImpact3D.offer, with the material id of the object.
+     */
+    public boolean offer(final int lane, final Shape3D object, final int primitive, final int material,
+                         final double distance) {
+        if (!(distance < this.distance[lane])) return false;
+        this.object[lane] = object;
+        this.primitive[lane] = primitive;
+        this.material[lane] = material;
+        this.distance[lane] = distance;
+        return true;
+    }
+
+    /**
+     * Intersects the ray of a lane with the shape through its scalar intersect.
+     */
+    public void intersect(final int lane, final Shape3D shape, final int material) {
+        scratch.reset(distance[lane]);
+        shape.intersect(originX[lane], originY[lane], originZ[lane],
+                directionX[lane], directionY[lane], directionZ[lane], scratch);
+        if (scratch.isHit()) {
+            offer(lane, scratch.getImpactedObject(), scratch.getPrimitive(), material, scratch.getDistance());
+        }
+    }
+
+    /**
+     * Copies the closest impact of a lane, only its object, primitive, material and distance
+     * are set.
+     */
+    public void load(final int lane, final MutableImpact3D impact) {
+        impact.reset(Double.POSITIVE_INFINITY);
+        if (object[lane] == null) return;
+        impact.offer(object[lane], primitive[lane], distance[lane]);
+        impact.setMaterial(material[lane]);
+    }
+
+    @Override
+    public String toString() {
+        return "RayPacket{" +
+                "count=" + count +
+                '}';
+    }
+}
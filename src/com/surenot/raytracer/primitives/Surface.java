@@ -1,9 +1,13 @@
 package com.surenot.raytracer.primitives;
 
+import java.io.Serializable;
+
 /**
  * Created by surenot on 1/16/16.
  */
-public class Surface {
+public class Surface implements Serializable {
+
+    private final static long serialVersionUID = 1L;
 
     private final int color;
     private final double ambientReflectionCoefficient;
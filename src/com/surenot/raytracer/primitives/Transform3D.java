@@ -0,0 +1,183 @@
+package com.surenot.raytracer.primitives;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Affine transform of the space: a 3x3 linear part followed by a translation, stored as the
+ * 3 rows of a 3x4 matrix. Transforms are combined with then, the first one applied first.
+ */
+public final class Transform3D implements Serializable {
+
+    private final static long serialVersionUID = 1L;
+
+    public final static Transform3D IDENTITY = new Transform3D(new double[]{
+            1, 0, 0, 0,
+            0, 1, 0, 0,
+            0, 0, 1, 0});
+
+    // Row major, the translation is the last column
+    private final double[] m;
+
+    private Transform3D(final double[] m) {
+        for (double value : m) {
+            if (Double.isNaN(value) || Double.isInfinite(value)) throw new IllegalArgumentException();
+        }
+        this.m = m;
+    }
+
+    public static Transform3D translation(final double x, final double y, final double z) {
+        return new Transform3D(new double[]{
+                1, 0, 0, x,
+                0, 1, 0, y,
+                0, 0, 1, z});
+    }
+
+    public static Transform3D translation(final Point3D p) {
+        if (p == null) throw new IllegalArgumentException();
+        return translation(p.getX(), p.getY(), p.getZ());
+    }
+
+    public static Transform3D scaling(final double x, final double y, final double z) {
+        return new Transform3D(new double[]{
+                x, 0, 0, 0,
+                0, y, 0, 0,
+                0, 0, z, 0});
+    }
+
+    public static Transform3D scaling(final double factor) {
+        return scaling(factor, factor, factor);
+    }
+
+    /**
+     * Rotation around the axis of the given index, 0 for x, 1 for y and 2 for z, counter
+     * clockwise when the axis points towards the viewer.
+     */
+    public static Transform3D rotation(final int axis, final double angle) {
+        if (axis < 0 || axis > 2) throw new IllegalArgumentException();
+        final double cos = Math.cos(angle), sin = Math.sin(angle);
+        final double[] m = IDENTITY.m.clone();
+        final int a = (axis + 1) % 3, b = (axis + 2) % 3;
+        m[4 * a + a] = cos;
+        m[4 * a + b] = -sin;
+        m[4 * b + a] = sin;
+        m[4 * b + b] = cos;
+        return new Transform3D(m);
+    }
+
+    /**
+     * Transform applying this one then the given one.
+     */
+    public Transform3D then(final Transform3D next) {
+        if (next == null) throw new IllegalArgumentException();
+        final double[] n = next.m;
+        final double[] r = new double[12];
+        for (int row = 0; row < 3; row++) {
+            for (int column = 0; column < 4; column++) {
+                r[4 * row + column] = n[4 * row] * m[column] +
+                        n[4 * row + 1] * m[4 + column] +
+                        n[4 * row + 2] * m[8 + column];
+            }
+            r[4 * row + 3] += n[4 * row + 3];
+        }
+        return new Transform3D(r);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the transform is not invertible
+     */
+    public Transform3D inverse() {
+        final double c00 = m[5] * m[10] - m[6] * m[9];
+        final double c01 = m[6] * m[8] - m[4] * m[10];
+        final double c02 = m[4] * m[9] - m[5] * m[8];
+        final double determinant = m[0] * c00 + m[1] * c01 + m[2] * c02;
+        if (determinant == 0 || Double.isNaN(determinant)) throw new IllegalArgumentException();
+        final double[] r = new double[12];
+        r[0] = c00 / determinant;
+        r[1] = (m[2] * m[9] - m[1] * m[10]) / determinant;
+        r[2] = (m[1] * m[6] - m[2] * m[5]) / determinant;
+        r[4] = c01 / determinant;
+        r[5] = (m[0] * m[10] - m[2] * m[8]) / determinant;
+        r[6] = (m[2] * m[4] - m[0] * m[6]) / determinant;
+        r[8] = c02 / determinant;
+        r[9] = (m[1] * m[8] - m[0] * m[9]) / determinant;
+        r[10] = (m[0] * m[5] - m[1] * m[4]) / determinant;
+        for (int row = 0; row < 3; row++) {
+            r[4 * row + 3] = -(r[4 * row] * m[3] + r[4 * row + 1] * m[7] + r[4 * row + 2] * m[11]);
+        }
+        return new Transform3D(r);
+    }
+
+    /**
+     * Coefficient of the matrix, column 3 is the translation.
+     */
+    public double get(final int row, final int column) {
+        if (row < 0 || row > 2 || column < 0 || column > 3) throw new IllegalArgumentException();
+        return m[4 * row + column];
+    }
+
+    public Point3D transformPoint(final Point3D p) {
+        if (p == null) throw new IllegalArgumentException();
+        final double x = p.getX(), y = p.getY(), z = p.getZ();
+        return new Point3D(
+                m[0] * x + m[1] * y + m[2] * z + m[3],
+                m[4] * x + m[5] * y + m[6] * z + m[7],
+                m[8] * x + m[9] * y + m[10] * z + m[11]);
+    }
+
+    /**
+     * Transforms a direction, the translation is ignored.
+     */
+    public Point3D transformDirection(final Point3D d) {
+        if (d == null) throw new IllegalArgumentException();
+        final double x = d.getX(), y = d.getY(), z = d.getZ();
+        return new Point3D(
+                m[0] * x + m[1] * y + m[2] * z,
+                m[4] * x + m[5] * y + m[6] * z,
+                m[8] * x + m[9] * y + m[10] * z);
+    }
+
+    /**
+     * Smallest box containing the transformed box, an unbounded box stays unbounded.
+     */
+    public BoundingBox transformBounds(final BoundingBox box) {
+        if (box == null) throw new IllegalArgumentException();
+        if (!box.isBounded()) return box.equals(BoundingBox.EMPTY) ? box : BoundingBox.INFINITE;
+        // Every coordinate is the sum of the smallest, or largest, products of each axis
+        final double[] min = {m[3], m[7], m[11]};
+        final double[] max = {m[3], m[7], m[11]};
+        for (int row = 0; row < 3; row++) {
+            for (int axis = 0; axis < 3; axis++) {
+                final double a = m[4 * row + axis] * box.getMin(axis);
+                final double b = m[4 * row + axis] * box.getMax(axis);
+                min[row] += Math.min(a, b);
+                max[row] += Math.max(a, b);
+            }
+        }
+        return new BoundingBox(min[0], min[1], min[2], max[0], max[1], max[2]);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Transform3D that = (Transform3D) o;
+
+        return Arrays.equals(m, that.m);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(m);
+    }
+
+    @Override
+    public String toString() {
+        return "Transform3D{" +
+                "rows=[(" + m[0] + ", " + m[1] + ", " + m[2] + ", " + m[3] + ")" +
+                ", (" + m[4] + ", " + m[5] + ", " + m[6] + ", " + m[7] + ")" +
+                ", (" + m[8] + ", " + m[9] + ", " + m[10] + ", " + m[11] + ")]" +
+                '}';
+    }
+}
@@ -1,9 +1,13 @@
 package com.surenot.raytracer.primitives;
 
+import java.io.Serializable;
+
 /**
  * Created by m.clauss on 1/13/2016.
  */
-public class Vector3D {
+public class Vector3D implements Serializable {
+
+    private final static long serialVersionUID = 1L;
 
     private final Point3D origin;
     private final Point3D direction;
@@ -0,0 +1,110 @@
+package com.surenot.raytracer.render;
+
+import java.io.Serializable;
+
+/**
+ * Anti aliasing settings of a render.
+ * FIXED traces a gridSize x gridSize grid of samples in every pixel. ADAPTIVE traces one sample
+ * per pixel, then the full grid only in pixels whose colour differs from a neighbour by more
+ * than the contrast threshold on any channel, or which do not see the same shape.
+ */
+public final class AntiAliasing implements Serializable {
+
+    private final static long serialVersionUID = 1L;
+
+    public enum Mode {
+        FIXED,
+        ADAPTIVE
+    }
+
+    public final static int DEFAULT_CONTRAST_THRESHOLD = 16;
+    public final static AntiAliasing NONE = new AntiAliasing(Mode.FIXED, 1, DEFAULT_CONTRAST_THRESHOLD);
+
+    private final Mode mode;
+    private final int gridSize;
+    private final int contrastThreshold;
+
+    public AntiAliasing(final Mode mode, final int gridSize) {
+        this(mode, gridSize, DEFAULT_CONTRAST_THRESHOLD);
+    }
+
+    /**
+     * @param gridSize          samples per pixel side, gridSize x gridSize samples at most per pixel
+     * @param contrastThreshold difference on a 0-255 channel above which an adaptive pixel is refined
+     */
+    public AntiAliasing(final Mode mode, final int gridSize, final int contrastThreshold) {
+        if (mode == null) throw new IllegalArgumentException();
+        if (gridSize <= 0) throw new IllegalArgumentException();
+        if (contrastThreshold < 0) throw new IllegalArgumentException();
+        this.mode = mode;
+        this.gridSize = gridSize;
+        this.contrastThreshold = contrastThreshold;
+    }
+
+    /**
+     * Parses NONE, FIXED_n or ADAPTIVE_n with n the sample grid size, as printed by toName.
+     */
+    public static AntiAliasing valueOf(final String name) {
+        if (name == null) throw new IllegalArgumentException();
+        if (name.equals("NONE")) return NONE;
+        final int separator = name.lastIndexOf('_');
+        if (separator < 0) throw new IllegalArgumentException("Invalid anti aliasing " + name);
+        return new AntiAliasing(
+                Mode.valueOf(name.substring(0, separator)),
+                Integer.parseInt(name.substring(separator + 1)));
+    }
+
+    public String toName() {
+        return gridSize == 1 ? "NONE" : mode + "_" + gridSize;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    public int getMaxSamples() {
+        return gridSize * gridSize;
+    }
+
+    public int getContrastThreshold() {
+        return contrastThreshold;
+    }
+
+    public boolean isAdaptive() {
+        return mode == Mode.ADAPTIVE && gridSize > 1;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        AntiAliasing that = (AntiAliasing) o;
+
+        if (gridSize != that.gridSize) return false;
+        if (contrastThreshold != that.contrastThreshold) return false;
+        return mode == that.mode;
+
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mode.hashCode();
+        result = 31 * result + gridSize;
+        result = 31 * result + contrastThreshold;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "AntiAliasing{" +
+                "mode=" + mode +
+                ", gridSize=" + gridSize +
+                ", contrastThreshold=" + contrastThreshold +
+                '}';
+    }
+}
@@ -0,0 +1,76 @@
+package com.surenot.raytracer.render;
+
+import java.io.Serializable;
+
+/**
+ * Soft shadow settings of a render. Spherical lights are sampled on a gridSize x gridSize
+ * stratified grid over their disc seen from the shaded point, other lights stay points.
+ * The PROBE_COUNT corner samples of the grid are traced first, the others only when the probes
+ * do not agree, in the penumbra: fully lit and fully shadowed points cost PROBE_COUNT shadow
+ * rays per light.
+ */
+public final class SoftShadows implements Serializable {
+
+    private final static long serialVersionUID = 1L;
+
+    public final static int PROBE_COUNT = 4;
+    public final static SoftShadows NONE = new SoftShadows(1);
+
+    private final int gridSize;
+
+    /**
+     * @param gridSize samples per side of the grid, 1 for hard shadows
+     */
+    public SoftShadows(final int gridSize) {
+        if (gridSize <= 0) throw new IllegalArgumentException();
+        this.gridSize = gridSize;
+    }
+
+    /**
+     * Parses NONE or SOFT_n with n the sample grid size, as printed by toName.
+     */
+    public static SoftShadows valueOf(final String name) {
+        if (name == null) throw new IllegalArgumentException();
+        if (name.equals("NONE")) return NONE;
+        if (!name.startsWith("SOFT_")) throw new IllegalArgumentException("Invalid soft shadows " + name);
+        return new SoftShadows(Integer.parseInt(name.substring("SOFT_".length())));
+    }
+
+    public String toName() {
+        return gridSize == 1 ? "NONE" : "SOFT_" + gridSize;
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    public int getMaxSamples() {
+        return gridSize * gridSize;
+    }
+
+    public boolean isEnabled() {
+        return gridSize > 1;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        SoftShadows that = (SoftShadows) o;
+
+        return gridSize == that.gridSize;
+    }
+
+    @Override
+    public int hashCode() {
+        return gridSize;
+    }
+
+    @Override
+    public String toString() {
+        return "SoftShadows{" +
+                "gridSize=" + gridSize +
+                '}';
+    }
+}
@@ -0,0 +1,79 @@
+package com.surenot.raytracer.render;
+
+/**
+ * Rectangular region of the image, in pixels. End coordinates are exclusive.
+ */
+public final class Tile {
+
+    private final int x, y;
+    private final int width, height;
+
+    public Tile(final int x, final int y, final int width, final int height) {
+        if (x < 0 || y < 0 || width <= 0 || height <= 0) throw new IllegalArgumentException();
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getEndX() {
+        return x + width;
+    }
+
+    public int getEndY() {
+        return y + height;
+    }
+
+    public int getPixelCount() {
+        return width * height;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Tile tile = (Tile) o;
+
+        if (x != tile.x) return false;
+        if (y != tile.y) return false;
+        if (width != tile.width) return false;
+        return height == tile.height;
+
+    }
+
+    @Override
+    public int hashCode() {
+        int result = x;
+        result = 31 * result + y;
+        result = 31 * result + width;
+        result = 31 * result + height;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Tile{" +
+                "x=" + x +
+                ", y=" + y +
+                ", width=" + width +
+                ", height=" + height +
+                '}';
+    }
+}
@@ -0,0 +1,100 @@
+package com.surenot.raytracer.render;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Order in which the tiles of an image are handed to the workers. Neighbouring tiles share
+ * most of their shapes and lights, keeping them close in the schedule keeps them in cache.
+ */
+public enum TileOrder {
+
+    /**
+     * Row by row, from the top left corner.
+     */
+    SCANLINE {
+        @Override
+        List<Tile> order(final Tile[][] grid) {
+            final List<Tile> tiles = new ArrayList<>();
+            for (int ty = 0; ty < grid[0].length; ty++) {
+                for (int tx = 0; tx < grid.length; tx++) {
+                    tiles.add(grid[tx][ty]);
+                }
+            }
+            return tiles;
+        }
+    },
+
+    /**
+     * Z-order curve, any contiguous range of tiles covers a compact region of the image.
+     */
+    MORTON {
+        @Override
+        List<Tile> order(final Tile[][] grid) {
+            final List<Tile> tiles = SCANLINE.order(grid);
+            final int tileWidth = grid[0][0].getWidth();
+            final int tileHeight = grid[0][0].getHeight();
+            tiles.sort(Comparator.comparingLong(tile ->
+                    interleave(tile.getX() / tileWidth, tile.getY() / tileHeight)));
+            return tiles;
+        }
+    },
+
+    /**
+     * From the center of the image outwards, the part usually looked at first is ready first.
+     */
+    SPIRAL {
+        @Override
+        List<Tile> order(final Tile[][] grid) {
+            final int columns = grid.length, rows = grid[0].length;
+            final List<Tile> tiles = new ArrayList<>(columns * rows);
+            int tx = (columns - 1) / 2, ty = (rows - 1) / 2;
+            int dx = 1, dy = 0;
+            int step = 1;
+            while (tiles.size() < columns * rows) {
+                // Each step length is walked twice: right then down, left then up, ...
+                for (int turn = 0; turn < 2; turn++) {
+                    for (int i = 0; i < step; i++) {
+                        if (tx >= 0 && tx < columns && ty >= 0 && ty < rows) tiles.add(grid[tx][ty]);
+                        tx += dx;
+                        ty += dy;
+                    }
+                    final int tmp = dx;
+                    dx = -dy;
+                    dy = tmp;
+                }
+                step++;
+            }
+            return tiles;
+        }
+    };
+
+    abstract List<Tile> order(Tile[][] grid);
+
+    /**
+     * Cuts an image in tiles of at most tileSize pixels wide and high, in this order.
+     */
+    public List<Tile> tiles(final int width, final int height, final int tileSize) {
+        if (width <= 0 || height <= 0 || tileSize <= 0) throw new IllegalArgumentException();
+        final int columns = (width + tileSize - 1) / tileSize;
+        final int rows = (height + tileSize - 1) / tileSize;
+        final Tile[][] grid = new Tile[columns][rows];
+        for (int tx = 0; tx < columns; tx++) {
+            for (int ty = 0; ty < rows; ty++) {
+                final int x = tx * tileSize, y = ty * tileSize;
+                grid[tx][ty] = new Tile(x, y, Math.min(tileSize, width - x), Math.min(tileSize, height - y));
+            }
+        }
+        return order(grid);
+    }
+
+    private static long interleave(final int x, final int y) {
+        long result = 0;
+        for (int bit = 0; bit < 31; bit++) {
+            result |= ((long) (x >> bit) & 1) << (2 * bit);
+            result |= ((long) (y >> bit) & 1) << (2 * bit + 1);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,121 @@
+package com.surenot.raytracer.render;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Schedules the tiles of an image on a fork/join pool. The ordered tile list is split in
+ * halves recursively, idle workers steal the biggest remaining halves, so each worker renders
+ * compact regions of the image. Tiles never overlap and can be written without locking.
+ */
+public final class TileRenderer {
+
+    public final static int DEFAULT_TILE_SIZE = 32;
+    public final static TileRenderer DEFAULT = new TileRenderer();
+
+    private final ForkJoinPool pool;
+    private final boolean ownsPool;
+    private final int tileSize;
+    private final TileOrder order;
+
+    /**
+     * Renders on the common pool with the default tile size, in Morton order.
+     */
+    public TileRenderer() {
+        this(ForkJoinPool.commonPool(), false, DEFAULT_TILE_SIZE, TileOrder.MORTON);
+    }
+
+    /**
+     * Renders on a dedicated pool of the given number of threads, release it with shutdown.
+     */
+    public TileRenderer(final int threads, final int tileSize, final TileOrder order) {
+        this(new ForkJoinPool(checkPositive(threads)), true, tileSize, order);
+    }
+
+    private TileRenderer(final ForkJoinPool pool, final boolean ownsPool, final int tileSize, final TileOrder order) {
+        if (tileSize <= 0 || order == null) throw new IllegalArgumentException();
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+        this.tileSize = tileSize;
+        this.order = order;
+    }
+
+    private static int checkPositive(final int threads) {
+        if (threads <= 0) throw new IllegalArgumentException();
+        return threads;
+    }
+
+    /**
+     * Runs the task once for every tile of the image and waits for all of them.
+     */
+    public void render(final int width, final int height, final Consumer<Tile> task) {
+        if (task == null) throw new IllegalArgumentException();
+        final List<Tile> tiles = order.tiles(width, height, tileSize);
+        pool.invoke(new TileRange(tiles, 0, tiles.size(), task));
+    }
+
+    /**
+     * Runs the task on the pool of the renderer without waiting for it, the task may render
+     * images itself.
+     */
+    public void execute(final Runnable task) {
+        if (task == null) throw new IllegalArgumentException();
+        pool.execute(task);
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public TileOrder getOrder() {
+        return order;
+    }
+
+    /**
+     * Releases the threads of a dedicated pool, does nothing when rendering on the common pool.
+     */
+    public void shutdown() {
+        if (ownsPool) pool.shutdown();
+    }
+
+    private static final class TileRange extends RecursiveAction {
+
+        private final static long serialVersionUID = 1L;
+
+        private final List<Tile> tiles;
+        private final int from, to;
+        private final Consumer<Tile> task;
+
+        private TileRange(final List<Tile> tiles, final int from, final int to, final Consumer<Tile> task) {
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                task.accept(tiles.get(from));
+                return;
+            }
+            final int mid = (from + to) >>> 1;
+            invokeAll(new TileRange(tiles, from, mid, task), new TileRange(tiles, mid, to, task));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TileRenderer{" +
+                "parallelism=" + pool.getParallelism() +
+                ", tileSize=" + tileSize +
+                ", order=" + order +
+                '}';
+    }
+}
@@ -0,0 +1,252 @@
+package com.surenot.raytracer.shapes;
+
+import com.surenot.raytracer.primitives.BoundingBox;
+import com.surenot.raytracer.primitives.Impact3D;
+import com.surenot.raytracer.primitives.MutableImpact3D;
+import com.surenot.raytracer.primitives.Point3D;
+import com.surenot.raytracer.primitives.Surface;
+import com.surenot.raytracer.primitives.Transform3D;
+import com.surenot.raytracer.primitives.Vector3D;
+
+/**
+ * A shape placed in the scene by an affine transform, with an optional surface replacing its
+ * own. The shape is shared by every instance of it: a mesh repeated many times is stored once,
+ * each copy only costs its transform. Rays are transformed into the space of the shape, a hit
+ * records the primitive of the shape and this instance as the impacted object.
+ */
+public final class Instance implements Shape3D {
+
+    private final static long serialVersionUID = 1L;
+
+    private final Shape3D shape;
+    private final Transform3D transform;
+    // Replaces the surfaces of the shape when not null
+    private final Surface surface;
+    // Inverse of the transform, from the scene to the space of the shape
+    private final double i00, i01, i02, i03;
+    private final double i10, i11, i12, i13;
+    private final double i20, i21, i22, i23;
+    // Whether the transform keeps distances, rays then need no scaling
+    private final boolean rigid;
+    private final BoundingBox bounds;
+
+    public Instance(final Shape3D shape, final Transform3D transform) {
+        this(shape, transform, null);
+    }
+
+    /**
+     * @param surface surface of every primitive of the shape, null to keep theirs
+     * @throws IllegalArgumentException if the transform is not invertible
+     */
+    public Instance(final Shape3D shape, final Transform3D transform, final Surface surface) {
+        if (shape == null || transform == null || shape instanceof Light3D) throw new IllegalArgumentException();
+        this.shape = shape;
+        this.transform = transform;
+        this.surface = surface;
+        final Transform3D inverse = transform.inverse();
+        i00 = inverse.get(0, 0);
+        i01 = inverse.get(0, 1);
+        i02 = inverse.get(0, 2);
+        i03 = inverse.get(0, 3);
+        i10 = inverse.get(1, 0);
+        i11 = inverse.get(1, 1);
+        i12 = inverse.get(1, 2);
+        i13 = inverse.get(1, 3);
+        i20 = inverse.get(2, 0);
+        i21 = inverse.get(2, 1);
+        i22 = inverse.get(2, 2);
+        i23 = inverse.get(2, 3);
+        this.rigid = isOrthonormal(i00, i01, i02, i10, i11, i12, i20, i21, i22);
+        this.bounds = transform.transformBounds(shape.getBounds());
+    }
+
+    public Shape3D getShape() {
+        return shape;
+    }
+
+    public Transform3D getTransform() {
+        return transform;
+    }
+
+    @Override
+    public Impact3D isHit(final Vector3D v) {
+        final Vector3D direction = v.normalize();
+        final double ox = v.getOrigin().getX(), oy = v.getOrigin().getY(), oz = v.getOrigin().getZ();
+        final double dx = direction.getDirection().getX();
+        final double dy = direction.getDirection().getY();
+        final double dz = direction.getDirection().getZ();
+        final MutableImpact3D impact = new MutableImpact3D();
+        if (!intersect(ox, oy, oz, dx, dy, dz, impact)) return Impact3D.NONE;
+        final double distance = impact.getDistance();
+        return new Impact3D(v, new Point3D(ox + dx * distance, oy + dy * distance, oz + dz * distance), this, distance);
+    }
+
+    @Override
+    public boolean intersect(final double ox, final double oy, final double oz,
+                             final double dx, final double dy, final double dz,
+                             final MutableImpact3D impact) {
+        final double tx = i00 * dx + i01 * dy + i02 * dz;
+        final double ty = i10 * dx + i11 * dy + i12 * dz;
+        final double tz = i20 * dx + i21 * dy + i22 * dz;
+        // Distances along the ray are scaled by the length of its transformed direction
+        final double length = rigid ? 1 : Math.sqrt(tx * tx + ty * ty + tz * tz);
+        if (length == 1) {
+            if (!shape.intersect(
+                    i00 * ox + i01 * oy + i02 * oz + i03,
+                    i10 * ox + i11 * oy + i12 * oz + i13,
+                    i20 * ox + i21 * oy + i22 * oz + i23,
+                    tx, ty, tz, impact)) return false;
+            impact.setImpactedObject(this);
+            return true;
+        }
+        final double maxDistance = impact.getDistance();
+        impact.setDistance(maxDistance * length);
+        if (!shape.intersect(
+                i00 * ox + i01 * oy + i02 * oz + i03,
+                i10 * ox + i11 * oy + i12 * oz + i13,
+                i20 * ox + i21 * oy + i22 * oz + i23,
+                tx / length, ty / length, tz / length, impact)) {
+            impact.setDistance(maxDistance);
+            return false;
+        }
+        impact.setDistance(impact.getDistance() / length);
+        impact.setImpactedObject(this);
+        return true;
+    }
+
+    @Override
+    public boolean occludes(final double ox, final double oy, final double oz,
+                            final double dx, final double dy, final double dz,
+                            final double maxDistance) {
+        return occludes(ox, oy, oz, dx, dy, dz, maxDistance, false, -1);
+    }
+
+    @Override
+    public boolean occludesOthers(final double ox, final double oy, final double oz,
+                                  final double dx, final double dy, final double dz,
+                                  final double maxDistance, final int primitive) {
+        return occludes(ox, oy, oz, dx, dy, dz, maxDistance, true, primitive);
+    }
+
+    private boolean occludes(final double ox, final double oy, final double oz,
+                             final double dx, final double dy, final double dz,
+                             final double maxDistance, final boolean receiver, final int primitive) {
+        final double tx = i00 * dx + i01 * dy + i02 * dz;
+        final double ty = i10 * dx + i11 * dy + i12 * dz;
+        final double tz = i20 * dx + i21 * dy + i22 * dz;
+        final double length = rigid ? 1 : Math.sqrt(tx * tx + ty * ty + tz * tz);
+        final double sx = i00 * ox + i01 * oy + i02 * oz + i03;
+        final double sy = i10 * ox + i11 * oy + i12 * oz + i13;
+        final double sz = i20 * ox + i21 * oy + i22 * oz + i23;
+        return !receiver ?
+                shape.occludes(sx, sy, sz, tx / length, ty / length, tz / length, maxDistance * length) :
+                shape.occludesOthers(sx, sy, sz, tx / length, ty / length, tz / length, maxDistance * length, primitive);
+    }
+
+    private static boolean isOrthonormal(final double a00, final double a01, final double a02,
+                                         final double a10, final double a11, final double a12,
+                                         final double a20, final double a21, final double a22) {
+        final double epsilon = 1e-12;
+        return Math.abs(a00 * a00 + a10 * a10 + a20 * a20 - 1) < epsilon &&
+                Math.abs(a01 * a01 + a11 * a11 + a21 * a21 - 1) < epsilon &&
+                Math.abs(a02 * a02 + a12 * a12 + a22 * a22 - 1) < epsilon &&
+                Math.abs(a00 * a01 + a10 * a11 + a20 * a21) < epsilon &&
+                Math.abs(a00 * a02 + a10 * a12 + a20 * a22) < epsilon &&
+                Math.abs(a01 * a02 + a11 * a12 + a21 * a22) < epsilon;
+    }
+
+    @Override
+    public void computeNormal(final MutableImpact3D impact) {
+        final double x = impact.getX(), y = impact.getY(), z = impact.getZ();
+        impact.setPoint(
+                i00 * x + i01 * y + i02 * z + i03,
+                i10 * x + i11 * y + i12 * z + i13,
+                i20 * x + i21 * y + i22 * z + i23);
+        shape.computeNormal(impact);
+        // Normals are transformed by the transpose of the inverse
+        final double nx = impact.getNormalX(), ny = impact.getNormalY(), nz = impact.getNormalZ();
+        impact.setNormal(
+                i00 * nx + i10 * ny + i20 * nz,
+                i01 * nx + i11 * ny + i21 * nz,
+                i02 * nx + i12 * ny + i22 * nz);
+        impact.setPoint(x, y, z);
+    }
+
+    @Override
+    public Vector3D getNormal(final Point3D p) {
+        final Vector3D normal = shape.getNormal(new Point3D(
+                i00 * p.getX() + i01 * p.getY() + i02 * p.getZ() + i03,
+                i10 * p.getX() + i11 * p.getY() + i12 * p.getZ() + i13,
+                i20 * p.getX() + i21 * p.getY() + i22 * p.getZ() + i23));
+        final Point3D n = normal.getDirection();
+        return new Vector3D(p, new Point3D(
+                i00 * n.getX() + i10 * n.getY() + i20 * n.getZ(),
+                i01 * n.getX() + i11 * n.getY() + i21 * n.getZ(),
+                i02 * n.getX() + i12 * n.getY() + i22 * n.getZ()), true);
+    }
+
+    /**
+     * Computed on every call, instances do not store it.
+     */
+    @Override
+    public Point3D getCenter() {
+        final Point3D center = shape.getCenter();
+        return Double.isNaN(center.getX()) ? Point3D.NONE : transform.transformPoint(center);
+    }
+
+    @Override
+    public Surface getSurface() {
+        return surface != null ? surface : shape.getSurface();
+    }
+
+    @Override
+    public int getSurfaceCount() {
+        return surface != null ? 1 : shape.getSurfaceCount();
+    }
+
+    @Override
+    public Surface getSurface(final int index) {
+        if (surface == null) return shape.getSurface(index);
+        if (index != 0) throw new IllegalArgumentException();
+        return surface;
+    }
+
+    @Override
+    public int getSurfaceIndex(final int primitive) {
+        return surface != null ? 0 : shape.getSurfaceIndex(primitive);
+    }
+
+    @Override
+    public BoundingBox getBounds() {
+        return bounds;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Instance instance = (Instance) o;
+
+        if (!shape.equals(instance.shape)) return false;
+        if (!transform.equals(instance.transform)) return false;
+        return surface != null ? surface.equals(instance.surface) : instance.surface == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = shape.hashCode();
+        result = 31 * result + transform.hashCode();
+        result = 31 * result + (surface != null ? surface.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Instance{" +
+                "shape=" + shape +
+                ", transform=" + transform +
+                ", surface=" + surface +
+                '}';
+    }
+}
@@ -1,19 +1,57 @@
 package com.surenot.raytracer.shapes;
 
+import com.surenot.raytracer.primitives.BoundingBox;
 import com.surenot.raytracer.primitives.Impact3D;
+import com.surenot.raytracer.primitives.MutableImpact3D;
 import com.surenot.raytracer.primitives.Point3D;
 import com.surenot.raytracer.primitives.Surface;
 import com.surenot.raytracer.primitives.Vector3D;
 
 public final class Light3D implements Shape3D {
 
+    private final static long serialVersionUID = 1L;
+
+    public final static double DEFAULT_CONSTANT_ATTENUATION = 0;
+    public final static double DEFAULT_LINEAR_ATTENUATION = 0.1;
+    public final static double DEFAULT_QUADRATIC_ATTENUATION = 0.00005;
+
     private final Shape3D shape;
+    private final double constantAttenuation;
+    private final double linearAttenuation;
+    private final double quadraticAttenuation;
 
     public Light3D(Shape3D shape) {
+        this(shape, DEFAULT_CONSTANT_ATTENUATION, DEFAULT_LINEAR_ATTENUATION, DEFAULT_QUADRATIC_ATTENUATION);
+    }
+
+    /**
+     * The light reaching a point at distance d is divided by constant + linear * d + quadratic * d * d,
+     * when that is more than 1.
+     */
+    public Light3D(final Shape3D shape, final double constantAttenuation, final double linearAttenuation,
+                   final double quadraticAttenuation) {
         if (shape == null) {
             throw new IllegalArgumentException();
         }
+        if (!(constantAttenuation >= 0) || !(linearAttenuation >= 0) || !(quadraticAttenuation >= 0)) {
+            throw new IllegalArgumentException();
+        }
         this.shape = shape;
+        this.constantAttenuation = constantAttenuation;
+        this.linearAttenuation = linearAttenuation;
+        this.quadraticAttenuation = quadraticAttenuation;
+    }
+
+    public Shape3D getShape() {
+        return shape;
+    }
+
+    /**
+     * Radius of the sphere soft shadows sample, 0 when the light is not a sphere: it is then a
+     * point at its center.
+     */
+    public double getRadius() {
+        return shape instanceof Sphere3D ? ((Sphere3D) shape).getRadius() : 0;
     }
 
     @Override
@@ -24,6 +62,27 @@ public final class Light3D implements Shape3D {
                 new Impact3D(v, impact.getPoint(), this, impact.getDistance());
     }
 
+    @Override
+    public boolean intersect(final double ox, final double oy, final double oz,
+                             final double dx, final double dy, final double dz,
+                             final MutableImpact3D impact) {
+        if (!shape.intersect(ox, oy, oz, dx, dy, dz, impact)) return false;
+        impact.setImpactedObject(this);
+        return true;
+    }
+
+    @Override
+    public boolean occludes(final double ox, final double oy, final double oz,
+                            final double dx, final double dy, final double dz,
+                            final double maxDistance) {
+        return shape.occludes(ox, oy, oz, dx, dy, dz, maxDistance);
+    }
+
+    @Override
+    public void computeNormal(final MutableImpact3D impact) {
+        shape.computeNormal(impact);
+    }
+
     @Override
     public Vector3D getNormal(final Point3D p) {
         return shape.getNormal(p);
@@ -39,16 +98,37 @@ public final class Light3D implements Shape3D {
         return shape.getSurface();
     }
 
+    @Override
+    public BoundingBox getBounds() {
+        return shape.getBounds();
+    }
+
     public double getConstantAttenuationCoefficient(){
-        return 0;
+        return constantAttenuation;
     }
 
     public double getLinearAttenuationCoefficient(){
-        return 0.1;
+        return linearAttenuation;
     }
 
     public double getQuadraticAttenuationCoefficient(){
-        return 0.00005;
+        return quadraticAttenuation;
+    }
+
+    /**
+     * Distance from the center beyond which the attenuation factor of the light is below the
+     * threshold, infinite when it never is.
+     */
+    public double getInfluenceRadius(final double threshold) {
+        if (!(threshold >= 0)) throw new IllegalArgumentException();
+        if (threshold == 0) return Double.POSITIVE_INFINITY;
+        final double k = 1 / threshold - constantAttenuation;
+        if (k <= 0) return 0;
+        if (quadraticAttenuation > 0) {
+            return (-linearAttenuation + Math.sqrt(linearAttenuation * linearAttenuation + 4 * quadraticAttenuation * k)) /
+                    (2 * quadraticAttenuation);
+        }
+        return linearAttenuation > 0 ? k / linearAttenuation : Double.POSITIVE_INFINITY;
     }
 
     @Override
@@ -58,19 +138,34 @@ public final class Light3D implements Shape3D {
 
         Light3D light3D = (Light3D) o;
 
+        if (Double.compare(light3D.constantAttenuation, constantAttenuation) != 0) return false;
+        if (Double.compare(light3D.linearAttenuation, linearAttenuation) != 0) return false;
+        if (Double.compare(light3D.quadraticAttenuation, quadraticAttenuation) != 0) return false;
         return shape != null ? shape.equals(light3D.shape) : light3D.shape == null;
 
     }
 
     @Override
     public int hashCode() {
-        return shape != null ? shape.hashCode() : 0;
+        int result;
+        long temp;
+        result = shape != null ? shape.hashCode() : 0;
+        temp = Double.doubleToLongBits(constantAttenuation);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        temp = Double.doubleToLongBits(linearAttenuation);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        temp = Double.doubleToLongBits(quadraticAttenuation);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        return result;
     }
 
     @Override
     public String toString() {
         return "Light3D{" +
                 "shape=" + shape +
+                ", constantAttenuation=" + constantAttenuation +
+                ", linearAttenuation=" + linearAttenuation +
+                ", quadraticAttenuation=" + quadraticAttenuation +
                 '}';
     }
 }
@@ -1,6 +1,8 @@
 package com.surenot.raytracer.shapes;
 
+import com.surenot.raytracer.primitives.BoundingBox;
 import com.surenot.raytracer.primitives.Impact3D;
+import com.surenot.raytracer.primitives.MutableImpact3D;
 import com.surenot.raytracer.primitives.Point3D;
 import com.surenot.raytracer.primitives.Surface;
 import com.surenot.raytracer.primitives.Vector3D;
@@ -12,6 +14,8 @@ import java.awt.*;
  */
 public class Plane implements Shape3D {
 
+    private final static long serialVersionUID = 1L;
+
     private final Vector3D vector;
     private final Vector3D normal;
     private final Surface surface;
@@ -42,7 +46,39 @@ public class Plane implements Shape3D {
             return pvn == 0 ? Impact3D.NONE : Impact3D.NONE;
         }
         final double d = pvn / vn;
-        return d < 0 ? Impact3D.NONE : new Impact3D(v, v.normalize().getDirection().multiply(d), this, d);
+        return d < 0 ? Impact3D.NONE : new Impact3D(v, v.getOrigin().add(v.normalize().getDirection().multiply(d)), this, d);
+    }
+
+    @Override
+    public boolean intersect(final double ox, final double oy, final double oz,
+                             final double dx, final double dy, final double dz,
+                             final MutableImpact3D impact) {
+        final Point3D n = normal.getDirection();
+        final Point3D p = vector.getOrigin();
+        final double vn = dx * n.getX() + dy * n.getY() + dz * n.getZ();
+        if (vn == 0) return false;
+        final double pvn = n.getX() * (p.getX() - ox) + n.getY() * (p.getY() - oy) + n.getZ() * (p.getZ() - oz);
+        final double d = pvn / vn;
+        return d >= 0 && impact.offer(this, 0, d);
+    }
+
+    @Override
+    public boolean occludes(final double ox, final double oy, final double oz,
+                            final double dx, final double dy, final double dz,
+                            final double maxDistance) {
+        final Point3D n = normal.getDirection();
+        final Point3D p = vector.getOrigin();
+        final double vn = dx * n.getX() + dy * n.getY() + dz * n.getZ();
+        if (vn == 0) return false;
+        final double pvn = n.getX() * (p.getX() - ox) + n.getY() * (p.getY() - oy) + n.getZ() * (p.getZ() - oz);
+        final double d = pvn / vn;
+        return d >= 0 && d < maxDistance;
+    }
+
+    @Override
+    public void computeNormal(final MutableImpact3D impact) {
+        final Point3D n = normal.getDirection();
+        impact.setNormal(n.getX(), n.getY(), n.getZ());
     }
 
     @Override
@@ -60,6 +96,11 @@ public class Plane implements Shape3D {
         return surface;
     }
 
+    @Override
+    public BoundingBox getBounds() {
+        return BoundingBox.INFINITE;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -1,18 +1,80 @@
 package com.surenot.raytracer.shapes;
 
+import com.surenot.raytracer.primitives.BoundingBox;
 import com.surenot.raytracer.primitives.Impact3D;
+import com.surenot.raytracer.primitives.MutableImpact3D;
 import com.surenot.raytracer.primitives.Point3D;
 import com.surenot.raytracer.primitives.Surface;
 import com.surenot.raytracer.primitives.Vector3D;
 
+import java.io.Serializable;
+
 /**
  * Created by m.clauss on 1/12/2016.
+ * Shapes are serializable so that a scene can be sent to other processes.
  */
-public interface Shape3D {
+public interface Shape3D extends Serializable {
 
     Impact3D isHit(Vector3D v);
     Vector3D getNormal(Point3D p);
     Point3D getCenter();
     Surface getSurface();
+    BoundingBox getBounds();
+
+    /**
+     * Allocation free counterpart of isHit. The direction must be normalized, the impact is
+     * recorded only if this shape is hit closer than the current distance of the record.
+     *
+     * @return true if the impact was recorded
+     */
+    boolean intersect(double ox, double oy, double oz,
+                      double dx, double dy, double dz,
+                      MutableImpact3D impact);
+
+    /**
+     * Whether this shape is hit by the ray closer than maxDistance, without recording anything.
+     * The direction must be normalized.
+     */
+    boolean occludes(double ox, double oy, double oz,
+                     double dx, double dy, double dz,
+                     double maxDistance);
+
+    /**
+     * Sets the normal of an impact recorded by intersect, its point must already be set.
+     */
+    void computeNormal(MutableImpact3D impact);
+
+    /**
+     * Whether a primitive of this shape other than the given one is hit by the ray closer than
+     * maxDistance, for shadow rays towards a point of this shape. Shapes made of a single
+     * primitive never shadow themselves.
+     */
+    default boolean occludesOthers(final double ox, final double oy, final double oz,
+                                   final double dx, final double dy, final double dz,
+                                   final double maxDistance, final int primitive) {
+        return false;
+    }
+
+    /**
+     * Number of surfaces of the shape, more than one when its primitives have their own.
+     */
+    default int getSurfaceCount() {
+        return 1;
+    }
+
+    /**
+     * Surface of the given index, the first one is getSurface().
+     */
+    default Surface getSurface(final int index) {
+        if (index != 0) throw new IllegalArgumentException();
+        return getSurface();
+    }
+
+    /**
+     * Index of the surface of a primitive recorded by intersect.
+     */
+    default int getSurfaceIndex(final int primitive) {
+        return 0;
+    }
 
 }
@@ -1,6 +1,8 @@
 package com.surenot.raytracer.shapes;
 
+import com.surenot.raytracer.primitives.BoundingBox;
 import com.surenot.raytracer.primitives.Impact3D;
+import com.surenot.raytracer.primitives.MutableImpact3D;
 import com.surenot.raytracer.primitives.Point3D;
 import com.surenot.raytracer.primitives.Surface;
 import com.surenot.raytracer.primitives.Vector3D;
@@ -9,6 +11,8 @@ import java.awt.*;
 
 public final class Sphere3D implements Shape3D {
 
+    private final static long serialVersionUID = 1L;
+
     private final Point3D center;
     private final double radius;
     private final double r2;
@@ -56,6 +60,51 @@ public final class Sphere3D implements Shape3D {
         return new Impact3D(v, impactPoint.getOrigin().add(impactPoint.getDirection()), this, impactDistance);
     }
 
+    @Override
+    public boolean intersect(final double ox, final double oy, final double oz,
+                             final double dx, final double dy, final double dz,
+                             final MutableImpact3D impact) {
+        final double nox = ox - center.getX();
+        final double noy = oy - center.getY();
+        final double noz = oz - center.getZ();
+        final double b = 2 * (dx * nox + dy * noy + dz * noz);
+        final double c = nox * nox + noy * noy + noz * noz - r2;
+        final double d = b * b - 4 * c;
+        if (d < 0) return false;
+        final double sqrtD = Math.sqrt(d);
+        // t1 <= t0, keep the nearest impact in front of the origin
+        final double t0 = (-b + sqrtD) / 2;
+        final double t1 = (-b - sqrtD) / 2;
+        final double t = t1 < 0 ? t0 : t1;
+        return t >= 0 && impact.offer(this, 0, t);
+    }
+
+    @Override
+    public boolean occludes(final double ox, final double oy, final double oz,
+                            final double dx, final double dy, final double dz,
+                            final double maxDistance) {
+        final double nox = ox - center.getX();
+        final double noy = oy - center.getY();
+        final double noz = oz - center.getZ();
+        final double b = 2 * (dx * nox + dy * noy + dz * noz);
+        final double c = nox * nox + noy * noy + noz * noz - r2;
+        final double d = b * b - 4 * c;
+        if (d < 0) return false;
+        final double sqrtD = Math.sqrt(d);
+        final double t0 = (-b + sqrtD) / 2;
+        final double t1 = (-b - sqrtD) / 2;
+        final double t = t1 < 0 ? t0 : t1;
+        return t >= 0 && t < maxDistance;
+    }
+
+    @Override
+    public void computeNormal(final MutableImpact3D impact) {
+        impact.setNormal(
+                impact.getX() - center.getX(),
+                impact.getY() - center.getY(),
+                impact.getZ() - center.getZ());
+    }
+
     @Override
     public Vector3D getNormal(final Point3D p) {
         return new Vector3D(center, p.substract(center), false);
@@ -71,6 +120,19 @@ public final class Sphere3D implements Shape3D {
         return surface;
     }
 
+    @Override
+    public BoundingBox getBounds() {
+        return BoundingBox.around(center, radius);
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    public double getRadiusSquared() {
+        return r2;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,330 @@
+package com.surenot.raytracer.shapes;
+
+import com.surenot.raytracer.acceleration.BoundingVolumeTree;
+import com.surenot.raytracer.primitives.BoundingBox;
+import com.surenot.raytracer.primitives.Impact3D;
+import com.surenot.raytracer.primitives.MutableImpact3D;
+import com.surenot.raytracer.primitives.Point3D;
+import com.surenot.raytracer.primitives.Surface;
+import com.surenot.raytracer.primitives.Vector3D;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Many spheres stored in parallel arrays, one per coordinate of the centers, one for the
+ * squared radii and one for the index of their surface in a small palette: no object per
+ * sphere. The spheres are reordered along the leaves of their own bounding volume tree, so the
+ * spheres of a leaf are contiguous and intersected in a single loop. A sphere is hit exactly
+ * as the Sphere3D of the same center and radius. Shadow rays towards a sphere of the set are
+ * tested against the other spheres, the set shadows itself.
+ */
+public final class SphereSet implements Shape3D {
+
+    private final static long serialVersionUID = 1L;
+
+    private final double[] x, y, z;
+    private final double[] r2;
+    private final int[] surfaceIndices;
+    private final Surface[] surfaces;
+    private final BoundingVolumeTree tree;
+    private final BoundingBox bounds;
+    private final Point3D center;
+
+    public SphereSet(final double[] centers, final double[] radii, final Surface surface) {
+        this(centers, radii, new Surface[]{surface}, new int[radii == null ? 0 : radii.length]);
+    }
+
+    /**
+     * @param centers        3 coordinates per sphere
+     * @param surfaces       palette of the surfaces of the spheres
+     * @param surfaceIndices index in the palette of the surface of every sphere
+     */
+    public SphereSet(final double[] centers, final double[] radii,
+                     final Surface[] surfaces, final int[] surfaceIndices) {
+        if (centers == null || radii == null || surfaces == null || surfaceIndices == null) {
+            throw new IllegalArgumentException();
+        }
+        final int n = radii.length;
+        if (n == 0 || centers.length != 3 * n || surfaceIndices.length != n || surfaces.length == 0) {
+            throw new IllegalArgumentException();
+        }
+        for (Surface surface : surfaces) {
+            if (surface == null) throw new IllegalArgumentException();
+        }
+        for (int index : surfaceIndices) {
+            if (index < 0 || index >= surfaces.length) throw new IllegalArgumentException();
+        }
+        for (double coordinate : centers) {
+            if (Double.isNaN(coordinate) || Double.isInfinite(coordinate)) throw new IllegalArgumentException();
+        }
+        for (double radius : radii) {
+            if (Double.isNaN(radius) || Double.isInfinite(radius)) throw new IllegalArgumentException();
+        }
+
+        final float[] sphereBounds = new float[6 * n];
+        for (int i = 0; i < n; i++) {
+            final double r = Math.abs(radii[i]);
+            for (int axis = 0; axis < 3; axis++) {
+                sphereBounds[6 * i + axis] = BoundingVolumeTree.floor(centers[3 * i + axis] - r);
+                sphereBounds[6 * i + 3 + axis] = BoundingVolumeTree.ceil(centers[3 * i + axis] + r);
+            }
+        }
+        final int[] order = new int[n];
+        this.tree = new BoundingVolumeTree(sphereBounds, order);
+
+        this.x = new double[n];
+        this.y = new double[n];
+        this.z = new double[n];
+        this.r2 = new double[n];
+        this.surfaceIndices = new int[n];
+        for (int i = 0; i < n; i++) {
+            final int sphere = order[i];
+            x[i] = centers[3 * sphere];
+            y[i] = centers[3 * sphere + 1];
+            z[i] = centers[3 * sphere + 2];
+            r2[i] = Math.pow(radii[sphere], 2);
+            this.surfaceIndices[i] = surfaceIndices[sphere];
+        }
+        this.surfaces = surfaces.clone();
+        this.bounds = new BoundingBox(
+                tree.getRootBound(0), tree.getRootBound(1), tree.getRootBound(2),
+                tree.getRootBound(3), tree.getRootBound(4), tree.getRootBound(5));
+        this.center = new Point3D(bounds.getCentroid(0), bounds.getCentroid(1), bounds.getCentroid(2));
+    }
+
+    /**
+     * Set of the given spheres, equal surfaces share an entry of the palette.
+     */
+    public static SphereSet of(final Collection<Sphere3D> spheres) {
+        if (spheres == null) throw new IllegalArgumentException();
+        final double[] centers = new double[3 * spheres.size()];
+        final double[] radii = new double[spheres.size()];
+        final int[] surfaceIndices = new int[spheres.size()];
+        final List<Surface> surfaces = new ArrayList<>();
+        final Map<Surface, Integer> palette = new HashMap<>();
+        int i = 0;
+        for (Sphere3D sphere : spheres) {
+            if (sphere == null || sphere.getSurface() == null) throw new IllegalArgumentException();
+            final Point3D c = sphere.getCenter();
+            centers[3 * i] = c.getX();
+            centers[3 * i + 1] = c.getY();
+            centers[3 * i + 2] = c.getZ();
+            radii[i] = sphere.getRadius();
+            Integer index = palette.get(sphere.getSurface());
+            if (index == null) {
+                index = surfaces.size();
+                palette.put(sphere.getSurface(), index);
+                surfaces.add(sphere.getSurface());
+            }
+            surfaceIndices[i++] = index;
+        }
+        return new SphereSet(centers, radii, surfaces.toArray(new Surface[surfaces.size()]), surfaceIndices);
+    }
+
+    @Override
+    public Impact3D isHit(final Vector3D v) {
+        final Vector3D direction = v.normalize();
+        final double ox = v.getOrigin().getX(), oy = v.getOrigin().getY(), oz = v.getOrigin().getZ();
+        final double dx = direction.getDirection().getX();
+        final double dy = direction.getDirection().getY();
+        final double dz = direction.getDirection().getZ();
+        final MutableImpact3D impact = new MutableImpact3D();
+        if (!intersect(ox, oy, oz, dx, dy, dz, impact)) return Impact3D.NONE;
+        final double distance = impact.getDistance();
+        return new Impact3D(v, new Point3D(ox + dx * distance, oy + dy * distance, oz + dz * distance), this, distance);
+    }
+
+    @Override
+    public boolean intersect(final double ox, final double oy, final double oz,
+                             final double dx, final double dy, final double dz,
+                             final MutableImpact3D impact) {
+        return intersect(0, ox, oy, oz, dx, dy, dz, 1 / dx, 1 / dy, 1 / dz, impact);
+    }
+
+    private boolean intersect(final int node,
+                              final double ox, final double oy, final double oz,
+                              final double dx, final double dy, final double dz,
+                              final double ix, final double iy, final double iz,
+                              final MutableImpact3D impact) {
+        if (!tree.intersects(node, ox, oy, oz, ix, iy, iz, impact.getDistance())) return false;
+        if (tree.isLeaf(node)) {
+            boolean hit = false;
+            final int first = tree.getFirst(node);
+            final int last = first + tree.getPrimitiveCount(node);
+            for (int i = first; i < last; i++) {
+                final double distance = distance(i, ox, oy, oz, dx, dy, dz);
+                if (distance >= 0 && impact.offer(this, i, distance)) hit = true;
+            }
+            return hit;
+        }
+        final int near, far;
+        if (tree.isRightNearer(node, ix, iy, iz)) {
+            near = tree.getRightChild(node);
+            far = tree.getLeftChild(node);
+        } else {
+            near = tree.getLeftChild(node);
+            far = tree.getRightChild(node);
+        }
+        final boolean hit = intersect(near, ox, oy, oz, dx, dy, dz, ix, iy, iz, impact);
+        return intersect(far, ox, oy, oz, dx, dy, dz, ix, iy, iz, impact) || hit;
+    }
+
+    @Override
+    public boolean occludes(final double ox, final double oy, final double oz,
+                            final double dx, final double dy, final double dz,
+                            final double maxDistance) {
+        return occludes(0, ox, oy, oz, dx, dy, dz, 1 / dx, 1 / dy, 1 / dz, maxDistance, -1);
+    }
+
+    @Override
+    public boolean occludesOthers(final double ox, final double oy, final double oz,
+                                  final double dx, final double dy, final double dz,
+                                  final double maxDistance, final int primitive) {
+        return occludes(0, ox, oy, oz, dx, dy, dz, 1 / dx, 1 / dy, 1 / dz, maxDistance, primitive);
+    }
+
+    private boolean occludes(final int node,
+                             final double ox, final double oy, final double oz,
+                             final double dx, final double dy, final double dz,
+                             final double ix, final double iy, final double iz,
+                             final double maxDistance, final int ignored) {
+        if (!tree.intersects(node, ox, oy, oz, ix, iy, iz, maxDistance)) return false;
+        if (tree.isLeaf(node)) {
+            final int first = tree.getFirst(node);
+            final int last = first + tree.getPrimitiveCount(node);
+            for (int i = first; i < last; i++) {
+                if (i == ignored) continue;
+                final double distance = distance(i, ox, oy, oz, dx, dy, dz);
+                if (distance >= 0 && distance < maxDistance) return true;
+            }
+            return false;
+        }
+        return occludes(tree.getLeftChild(node), ox, oy, oz, dx, dy, dz, ix, iy, iz, maxDistance, ignored) ||
+                occludes(tree.getRightChild(node), ox, oy, oz, dx, dy, dz, ix, iy, iz, maxDistance, ignored);
+    }
+
+    /**
+     * Distance along the ray to the sphere, negative when it is missed. Same operations as
+     * Sphere3D.intersect.
+     */
+    private double distance(final int sphere,
+                            final double ox, final double oy, final double oz,
+                            final double dx, final double dy, final double dz) {
+        final double nox = ox - x[sphere];
+        final double noy = oy - y[sphere];
+        final double noz = oz - z[sphere];
+        final double b = 2 * (dx * nox + dy * noy + dz * noz);
+        final double c = nox * nox + noy * noy + noz * noz - r2[sphere];
+        final double d = b * b - 4 * c;
+        if (d < 0) return -1;
+        final double sqrtD = Math.sqrt(d);
+        final double t0 = (-b + sqrtD) / 2;
+        final double t1 = (-b - sqrtD) / 2;
+        return t1 < 0 ? t0 : t1;
+    }
+
+    @Override
+    public void computeNormal(final MutableImpact3D impact) {
+        final int sphere = impact.getPrimitive();
+        impact.setNormal(
+                impact.getX() - x[sphere],
+                impact.getY() - y[sphere],
+                impact.getZ() - z[sphere]);
+    }
+
+    /**
+     * Normal of the sphere whose surface is nearest to the point, the one it lies on for a point
+     * of the set, as Sphere3D gives it. Slower than computeNormal, which knows the sphere: the
+     * tree is searched for it.
+     */
+    @Override
+    public Vector3D getNormal(final Point3D p) {
+        if (p == null) throw new IllegalArgumentException();
+        final double[] distance = {Double.POSITIVE_INFINITY};
+        final int sphere = nearest(0, p.getX(), p.getY(), p.getZ(), distance, 0);
+        final Point3D center = new Point3D(x[sphere], y[sphere], z[sphere]);
+        return new Vector3D(center, p.substract(center), false);
+    }
+
+    /**
+     * Sphere of the node whose surface is nearer to the point than distance[0], which it then
+     * holds; the given one when there is none. A sphere is inside the box of its node, the box
+     * is never farther than its surface.
+     */
+    private int nearest(final int node, final double px, final double py, final double pz,
+                        final double[] distance, int nearest) {
+        final double box = tree.distanceSquared(node, px, py, pz);
+        if (box >= distance[0] * distance[0]) return nearest;
+        if (tree.isLeaf(node)) {
+            final int first = tree.getFirst(node);
+            final int count = tree.getPrimitiveCount(node);
+            for (int s = first; s < first + count; s++) {
+                final double dx = px - x[s], dy = py - y[s], dz = pz - z[s];
+                final double d = Math.abs(Math.sqrt(dx * dx + dy * dy + dz * dz) - Math.sqrt(r2[s]));
+                if (d < distance[0]) {
+                    distance[0] = d;
+                    nearest = s;
+                }
+            }
+            return nearest;
+        }
+        int near = tree.getLeftChild(node), far = tree.getRightChild(node);
+        if (tree.distanceSquared(far, px, py, pz) < tree.distanceSquared(near, px, py, pz)) {
+            near = far;
+            far = tree.getLeftChild(node);
+        }
+        nearest = nearest(near, px, py, pz, distance, nearest);
+        return nearest(far, px, py, pz, distance, nearest);
+    }
+
+    @Override
+    public Point3D getCenter() {
+        return center;
+    }
+
+    /**
+     * First surface of the palette.
+     */
+    @Override
+    public Surface getSurface() {
+        return surfaces[0];
+    }
+
+    @Override
+    public int getSurfaceCount() {
+        return surfaces.length;
+    }
+
+    @Override
+    public Surface getSurface(final int index) {
+        if (index < 0 || index >= surfaces.length) throw new IllegalArgumentException();
+        return surfaces[index];
+    }
+
+    @Override
+    public int getSurfaceIndex(final int primitive) {
+        return surfaceIndices[primitive];
+    }
+
+    @Override
+    public BoundingBox getBounds() {
+        return bounds;
+    }
+
+    public int getSphereCount() {
+        return r2.length;
+    }
+
+    @Override
+    public String toString() {
+        return "SphereSet{" +
+                "sphereCount=" + getSphereCount() +
+                ", surfaceCount=" + surfaces.length +
+                ", bounds=" + bounds +
+                '}';
+    }
+}
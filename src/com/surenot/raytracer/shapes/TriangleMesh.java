@@ -0,0 +1,312 @@
+package com.surenot.raytracer.shapes;
+
+import com.surenot.raytracer.acceleration.BoundingVolumeTree;
+import com.surenot.raytracer.primitives.BoundingBox;
+import com.surenot.raytracer.primitives.Impact3D;
+import com.surenot.raytracer.primitives.MutableImpact3D;
+import com.surenot.raytracer.primitives.Point3D;
+import com.surenot.raytracer.primitives.Surface;
+import com.surenot.raytracer.primitives.Vector3D;
+
+/**
+ * Triangle mesh stored in packed arrays: 3 floats per vertex and 3 vertex indices per
+ * triangle, no object per vertex or per triangle. The triangles are reordered along the leaves
+ * of their own bounding volume tree, the scene hierarchy only sees the box of the whole mesh.
+ * Front faces are counter clockwise, as in Wavefront OBJ files.
+ */
+public final class TriangleMesh implements Shape3D {
+
+    private final static long serialVersionUID = 1L;
+
+    // Below this determinant the ray is considered parallel to the triangle
+    private final static double EPSILON = 1e-12;
+
+    private final float[] vertices;
+    private final int[] indices;
+    private final Surface surface;
+    private final BoundingVolumeTree tree;
+    private final BoundingBox bounds;
+    private final Point3D center;
+
+    /**
+     * @param vertices 3 floats per vertex, kept by the mesh and not copied
+     * @param indices  3 vertex indices per triangle
+     */
+    public TriangleMesh(final float[] vertices, final int[] indices, final Surface surface) {
+        if (vertices == null || indices == null || surface == null) throw new IllegalArgumentException();
+        if (vertices.length % 3 != 0 || indices.length % 3 != 0) throw new IllegalArgumentException();
+        if (indices.length == 0) throw new IllegalArgumentException();
+        final int vertexCount = vertices.length / 3;
+        for (int index : indices) {
+            if (index < 0 || index >= vertexCount) throw new IllegalArgumentException();
+        }
+        for (float coordinate : vertices) {
+            if (Float.isNaN(coordinate) || Float.isInfinite(coordinate)) throw new IllegalArgumentException();
+        }
+
+        final int triangleCount = indices.length / 3;
+        final float[] triangleBounds = new float[6 * triangleCount];
+        for (int t = 0; t < triangleCount; t++) {
+            final int a = 3 * indices[3 * t], b = 3 * indices[3 * t + 1], c = 3 * indices[3 * t + 2];
+            for (int axis = 0; axis < 3; axis++) {
+                triangleBounds[6 * t + axis] = Math.min(vertices[a + axis], Math.min(vertices[b + axis], vertices[c + axis]));
+                triangleBounds[6 * t + 3 + axis] = Math.max(vertices[a + axis], Math.max(vertices[b + axis], vertices[c + axis]));
+            }
+        }
+        final int[] order = new int[triangleCount];
+        this.tree = new BoundingVolumeTree(triangleBounds, order);
+
+        this.indices = new int[indices.length];
+        for (int t = 0; t < triangleCount; t++) {
+            System.arraycopy(indices, 3 * order[t], this.indices, 3 * t, 3);
+        }
+        this.vertices = vertices;
+        this.surface = surface;
+        this.bounds = new BoundingBox(
+                tree.getRootBound(0), tree.getRootBound(1), tree.getRootBound(2),
+                tree.getRootBound(3), tree.getRootBound(4), tree.getRootBound(5));
+        this.center = new Point3D(bounds.getCentroid(0), bounds.getCentroid(1), bounds.getCentroid(2));
+    }
+
+    @Override
+    public Impact3D isHit(final Vector3D v) {
+        final Vector3D direction = v.normalize();
+        final double ox = v.getOrigin().getX(), oy = v.getOrigin().getY(), oz = v.getOrigin().getZ();
+        final double dx = direction.getDirection().getX();
+        final double dy = direction.getDirection().getY();
+        final double dz = direction.getDirection().getZ();
+        final MutableImpact3D impact = new MutableImpact3D();
+        if (!intersect(ox, oy, oz, dx, dy, dz, impact)) return Impact3D.NONE;
+        final double distance = impact.getDistance();
+        return new Impact3D(v, new Point3D(ox + dx * distance, oy + dy * distance, oz + dz * distance), this, distance);
+    }
+
+    @Override
+    public boolean intersect(final double ox, final double oy, final double oz,
+                             final double dx, final double dy, final double dz,
+                             final MutableImpact3D impact) {
+        return intersect(0, ox, oy, oz, dx, dy, dz, 1 / dx, 1 / dy, 1 / dz, impact);
+    }
+
+    private boolean intersect(final int node,
+                              final double ox, final double oy, final double oz,
+                              final double dx, final double dy, final double dz,
+                              final double ix, final double iy, final double iz,
+                              final MutableImpact3D impact) {
+        if (!tree.intersects(node, ox, oy, oz, ix, iy, iz, impact.getDistance())) return false;
+        if (tree.isLeaf(node)) {
+            boolean hit = false;
+            final int first = tree.getFirst(node);
+            final int count = tree.getPrimitiveCount(node);
+            for (int t = first; t < first + count; t++) {
+                final double distance = distance(t, ox, oy, oz, dx, dy, dz);
+                if (distance >= 0 && impact.offer(this, t, distance)) hit = true;
+            }
+            return hit;
+        }
+        final int near, far;
+        if (tree.isRightNearer(node, ix, iy, iz)) {
+            near = tree.getRightChild(node);
+            far = tree.getLeftChild(node);
+        } else {
+            near = tree.getLeftChild(node);
+            far = tree.getRightChild(node);
+        }
+        final boolean hit = intersect(near, ox, oy, oz, dx, dy, dz, ix, iy, iz, impact);
+        return intersect(far, ox, oy, oz, dx, dy, dz, ix, iy, iz, impact) || hit;
+    }
+
+    @Override
+    public boolean occludes(final double ox, final double oy, final double oz,
+                            final double dx, final double dy, final double dz,
+                            final double maxDistance) {
+        return occludes(0, ox, oy, oz, dx, dy, dz, 1 / dx, 1 / dy, 1 / dz, maxDistance, -1);
+    }
+
+    @Override
+    public boolean occludesOthers(final double ox, final double oy, final double oz,
+                                  final double dx, final double dy, final double dz,
+                                  final double maxDistance, final int primitive) {
+        return occludes(0, ox, oy, oz, dx, dy, dz, 1 / dx, 1 / dy, 1 / dz, maxDistance, primitive);
+    }
+
+    private boolean occludes(final int node,
+                             final double ox, final double oy, final double oz,
+                             final double dx, final double dy, final double dz,
+                             final double ix, final double iy, final double iz,
+                             final double maxDistance, final int ignored) {
+        if (!tree.intersects(node, ox, oy, oz, ix, iy, iz, maxDistance)) return false;
+        if (tree.isLeaf(node)) {
+            final int first = tree.getFirst(node);
+            final int count = tree.getPrimitiveCount(node);
+            for (int t = first; t < first + count; t++) {
+                if (t == ignored) continue;
+                final double distance = distance(t, ox, oy, oz, dx, dy, dz);
+                if (distance >= 0 && distance < maxDistance) return true;
+            }
+            return false;
+        }
+        return occludes(tree.getLeftChild(node), ox, oy, oz, dx, dy, dz, ix, iy, iz, maxDistance, ignored) ||
+                occludes(tree.getRightChild(node), ox, oy, oz, dx, dy, dz, ix, iy, iz, maxDistance, ignored);
+    }
+
+    /**
+     * Distance along the ray to the triangle (Moller-Trumbore), negative when it is missed.
+     */
+    private double distance(final int triangle,
+                            final double ox, final double oy, final double oz,
+                            final double dx, final double dy, final double dz) {
+        final int a = 3 * indices[3 * triangle], b = 3 * indices[3 * triangle + 1], c = 3 * indices[3 * triangle + 2];
+        final double ax = vertices[a], ay = vertices[a + 1], az = vertices[a + 2];
+        final double e1x = vertices[b] - ax, e1y = vertices[b + 1] - ay, e1z = vertices[b + 2] - az;
+        final double e2x = vertices[c] - ax, e2y = vertices[c + 1] - ay, e2z = vertices[c + 2] - az;
+        // p = d x e2
+        final double px = dy * e2z - dz * e2y, py = dz * e2x - dx * e2z, pz = dx * e2y - dy * e2x;
+        final double det = e1x * px + e1y * py + e1z * pz;
+        if (det > -EPSILON && det < EPSILON) return -1;
+        final double inverse = 1 / det;
+        final double tx = ox - ax, ty = oy - ay, tz = oz - az;
+        final double u = (tx * px + ty * py + tz * pz) * inverse;
+        if (u < 0 || u > 1) return -1;
+        // q = t x e1
+        final double qx = ty * e1z - tz * e1y, qy = tz * e1x - tx * e1z, qz = tx * e1y - ty * e1x;
+        final double v = (dx * qx + dy * qy + dz * qz) * inverse;
+        if (v < 0 || u + v > 1) return -1;
+        return (e2x * qx + e2y * qy + e2z * qz) * inverse;
+    }
+
+    @Override
+    public void computeNormal(final MutableImpact3D impact) {
+        final int triangle = impact.getPrimitive();
+        final int a = 3 * indices[3 * triangle], b = 3 * indices[3 * triangle + 1], c = 3 * indices[3 * triangle + 2];
+        final double e1x = vertices[b] - vertices[a], e1y = vertices[b + 1] - vertices[a + 1], e1z = vertices[b + 2] - vertices[a + 2];
+        final double e2x = vertices[c] - vertices[a], e2y = vertices[c + 1] - vertices[a + 1], e2z = vertices[c + 2] - vertices[a + 2];
+        impact.setNormal(e1y * e2z - e1z * e2y, e1z * e2x - e1x * e2z, e1x * e2y - e1y * e2x);
+    }
+
+    /**
+     * Normal of the triangle nearest to the point, the one it lies on for a point of the mesh.
+     * Slower than computeNormal, which knows the triangle: the tree is searched for it.
+     */
+    @Override
+    public Vector3D getNormal(final Point3D p) {
+        if (p == null) throw new IllegalArgumentException();
+        final double[] distance = {Double.POSITIVE_INFINITY};
+        final int triangle = nearest(0, p.getX(), p.getY(), p.getZ(), distance, 0);
+        final int a = 3 * indices[3 * triangle], b = 3 * indices[3 * triangle + 1], c = 3 * indices[3 * triangle + 2];
+        final double e1x = vertices[b] - vertices[a], e1y = vertices[b + 1] - vertices[a + 1], e1z = vertices[b + 2] - vertices[a + 2];
+        final double e2x = vertices[c] - vertices[a], e2y = vertices[c + 1] - vertices[a + 1], e2z = vertices[c + 2] - vertices[a + 2];
+        return new Vector3D(p, new Point3D(e1y * e2z - e1z * e2y, e1z * e2x - e1x * e2z, e1x * e2y - e1y * e2x), true);
+    }
+
+    /**
+     * Triangle of the node nearer to the point than distance[0], squared, which it then holds;
+     * the given one when there is none. The nearest child is searched first.
+     */
+    private int nearest(final int node, final double x, final double y, final double z,
+                        final double[] distance, int nearest) {
+        if (tree.distanceSquared(node, x, y, z) >= distance[0]) return nearest;
+        if (tree.isLeaf(node)) {
+            final int first = tree.getFirst(node);
+            final int count = tree.getPrimitiveCount(node);
+            for (int t = first; t < first + count; t++) {
+                final double d = distanceSquared(t, x, y, z);
+                if (d < distance[0]) {
+                    distance[0] = d;
+                    nearest = t;
+                }
+            }
+            return nearest;
+        }
+        int near = tree.getLeftChild(node), far = tree.getRightChild(node);
+        if (tree.distanceSquared(far, x, y, z) < tree.distanceSquared(near, x, y, z)) {
+            near = far;
+            far = tree.getLeftChild(node);
+        }
+        nearest = nearest(near, x, y, z, distance, nearest);
+        return nearest(far, x, y, z, distance, nearest);
+    }
+
+    /**
+     * Squared distance from the point to the closest point of the triangle, found by the
+     * region of the triangle the point projects in (Ericson, Real-Time Collision Detection).
+     */
+    private double distanceSquared(final int triangle, final double x, final double y, final double z) {
+        final int a = 3 * indices[3 * triangle], b = 3 * indices[3 * triangle + 1], c = 3 * indices[3 * triangle + 2];
+        final double ax = vertices[a], ay = vertices[a + 1], az = vertices[a + 2];
+        final double abx = vertices[b] - ax, aby = vertices[b + 1] - ay, abz = vertices[b + 2] - az;
+        final double acx = vertices[c] - ax, acy = vertices[c + 1] - ay, acz = vertices[c + 2] - az;
+        final double apx = x - ax, apy = y - ay, apz = z - az;
+        final double d1 = abx * apx + aby * apy + abz * apz;
+        final double d2 = acx * apx + acy * apy + acz * apz;
+        // Closest point a + v * ab + w * ac
+        final double v, w;
+        final double bpx = apx - abx, bpy = apy - aby, bpz = apz - abz;
+        final double d3 = abx * bpx + aby * bpy + abz * bpz;
+        final double d4 = acx * bpx + acy * bpy + acz * bpz;
+        final double cpx = apx - acx, cpy = apy - acy, cpz = apz - acz;
+        final double d5 = abx * cpx + aby * cpy + abz * cpz;
+        final double d6 = acx * cpx + acy * cpy + acz * cpz;
+        final double vc = d1 * d4 - d3 * d2;
+        final double vb = d5 * d2 - d1 * d6;
+        final double va = d3 * d6 - d5 * d4;
+        if (d1 <= 0 && d2 <= 0) {
+            v = 0;
+            w = 0;
+        } else if (d3 >= 0 && d4 <= d3) {
+            v = 1;
+            w = 0;
+        } else if (vc <= 0 && d1 >= 0 && d3 <= 0) {
+            v = d1 / (d1 - d3);
+            w = 0;
+        } else if (d6 >= 0 && d5 <= d6) {
+            v = 0;
+            w = 1;
+        } else if (vb <= 0 && d2 >= 0 && d6 <= 0) {
+            v = 0;
+            w = d2 / (d2 - d6);
+        } else if (va <= 0 && d4 - d3 >= 0 && d5 - d6 >= 0) {
+            w = (d4 - d3) / ((d4 - d3) + (d5 - d6));
+            v = 1 - w;
+        } else {
+            final double sum = va + vb + vc;
+            v = vb / sum;
+            w = vc / sum;
+        }
+        final double dx = apx - v * abx - w * acx, dy = apy - v * aby - w * acy, dz = apz - v * abz - w * acz;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    @Override
+    public Point3D getCenter() {
+        return center;
+    }
+
+    @Override
+    public Surface getSurface() {
+        return surface;
+    }
+
+    @Override
+    public BoundingBox getBounds() {
+        return bounds;
+    }
+
+    public int getVertexCount() {
+        return vertices.length / 3;
+    }
+
+    public int getTriangleCount() {
+        return indices.length / 3;
+    }
+
+    @Override
+    public String toString() {
+        return "TriangleMesh{" +
+                "vertexCount=" + getVertexCount() +
+                ", triangleCount=" + getTriangleCount() +
+                ", bounds=" + bounds +
+                ", surface=" + surface +
+                '}';
+    }
+}
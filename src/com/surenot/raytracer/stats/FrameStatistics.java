@@ -0,0 +1,59 @@
+package com.surenot.raytracer.stats;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts of a frame being rendered. Every render thread adds its TraceCounters once per tile,
+ * the adders are striped so that threads finishing tiles together do not contend.
+ */
+public final class FrameStatistics {
+
+    private final long start = System.nanoTime();
+    private final LongAdder primaryRayCount = new LongAdder();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder shadowRayCount = new LongAdder();
+    private final Map<Integer, LongAdder> testCounts = new ConcurrentHashMap<>();
+    private final LongAdder tileCount = new LongAdder();
+    private final LongAdder tileNanos = new LongAdder();
+    private final LongAccumulator minTileNanos = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator maxTileNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Adds the counts of a tile and resets them.
+     *
+     * @param nanos wall time spent on the tile
+     */
+    public void add(final TraceCounters counters, final long nanos) {
+        primaryRayCount.add(counters.getPrimaryRayCount());
+        hitCount.add(counters.getHitCount());
+        shadowRayCount.add(counters.getShadowRayCount());
+        for (int type = 0; type < counters.getTypeCount(); type++) {
+            final long count = counters.getTestCount(type);
+            if (count != 0) testCounts.computeIfAbsent(type, t -> new LongAdder()).add(count);
+        }
+        counters.reset();
+        tileCount.increment();
+        tileNanos.add(nanos);
+        minTileNanos.accumulate(nanos);
+        maxTileNanos.accumulate(nanos);
+    }
+
+    /**
+     * Summary of the frame once every tile is added, its wall time runs from the creation of
+     * these statistics.
+     */
+    public FrameSummary summarize(final int pixelCount) {
+        final Map<String, Long> tests = new TreeMap<>();
+        for (Map.Entry<Integer, LongAdder> entry : testCounts.entrySet()) {
+            tests.put(TraceCounters.getTypeName(entry.getKey()), entry.getValue().sum());
+        }
+        final long tiles = tileCount.sum();
+        return new FrameSummary(System.nanoTime() - start, pixelCount,
+                primaryRayCount.sum(), hitCount.sum(), shadowRayCount.sum(), tests,
+                tiles, tileNanos.sum(), tiles == 0 ? 0 : minTileNanos.get(), maxTileNanos.get());
+    }
+}
@@ -0,0 +1,189 @@
+package com.surenot.raytracer.stats;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * What a rendered frame cost: rays cast, intersection tests per shape type and time spent on
+ * its tiles. Primary rays read back from a G-buffer are not cast and not counted.
+ */
+public final class FrameSummary {
+
+    public final static FrameSummary NONE = new FrameSummary(0, 0, 0, 0, 0, Collections.emptyMap(), 0, 0, 0, 0);
+
+    private final long nanos;
+    private final int pixelCount;
+    private final long primaryRayCount;
+    private final long hitCount;
+    private final long shadowRayCount;
+    private final Map<String, Long> testCounts;
+    private final long tileCount;
+    private final long tileNanos;
+    private final long minTileNanos;
+    private final long maxTileNanos;
+
+    public FrameSummary(final long nanos, final int pixelCount,
+                        final long primaryRayCount, final long hitCount, final long shadowRayCount,
+                        final Map<String, Long> testCounts,
+                        final long tileCount, final long tileNanos, final long minTileNanos, final long maxTileNanos) {
+        if (testCounts == null) throw new IllegalArgumentException();
+        if (nanos < 0 || pixelCount < 0 || primaryRayCount < 0 || hitCount < 0 || hitCount > primaryRayCount ||
+                shadowRayCount < 0 || tileCount < 0 || tileNanos < 0 || minTileNanos < 0 || maxTileNanos < minTileNanos) {
+            throw new IllegalArgumentException();
+        }
+        this.nanos = nanos;
+        this.pixelCount = pixelCount;
+        this.primaryRayCount = primaryRayCount;
+        this.hitCount = hitCount;
+        this.shadowRayCount = shadowRayCount;
+        this.testCounts = Collections.unmodifiableMap(new LinkedHashMap<>(testCounts));
+        this.tileCount = tileCount;
+        this.tileNanos = tileNanos;
+        this.minTileNanos = minTileNanos;
+        this.maxTileNanos = maxTileNanos;
+    }
+
+    /**
+     * Wall time of the whole frame.
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    public int getPixelCount() {
+        return pixelCount;
+    }
+
+    public long getPrimaryRayCount() {
+        return primaryRayCount;
+    }
+
+    /**
+     * Primary rays that hit the geometry or a light.
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return primaryRayCount - hitCount;
+    }
+
+    /**
+     * Hits over primary rays, 0 without any ray.
+     */
+    public double getHitRatio() {
+        return primaryRayCount == 0 ? 0 : hitCount / (double) primaryRayCount;
+    }
+
+    /**
+     * One ray per light and shaded point, including those answered by the last occluder cache.
+     */
+    public long getShadowRayCount() {
+        return shadowRayCount;
+    }
+
+    public long getRayCount() {
+        return primaryRayCount + shadowRayCount;
+    }
+
+    /**
+     * Rays cast per second of wall time, 0 for an instant frame.
+     */
+    public double getRaysPerSecond() {
+        return nanos == 0 ? 0 : getRayCount() * 1e9 / nanos;
+    }
+
+    /**
+     * Intersection tests by the simple name of the tested shape class. A test against a mesh
+     * counts once, whatever the number of triangles tested inside of it.
+     */
+    public Map<String, Long> getTestCounts() {
+        return testCounts;
+    }
+
+    public long getTestCount() {
+        long count = 0;
+        for (long tests : testCounts.values()) count += tests;
+        return count;
+    }
+
+    /**
+     * Tiles rendered, twice the tiles of the image with adaptive anti aliasing which renders
+     * them in two passes.
+     */
+    public long getTileCount() {
+        return tileCount;
+    }
+
+    /**
+     * Sum of the wall time of every tile, up to the number of render threads times the frame
+     * time.
+     */
+    public long getTileNanos() {
+        return tileNanos;
+    }
+
+    public long getAverageTileNanos() {
+        return tileCount == 0 ? 0 : tileNanos / tileCount;
+    }
+
+    public long getMinTileNanos() {
+        return minTileNanos;
+    }
+
+    public long getMaxTileNanos() {
+        return maxTileNanos;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        final FrameSummary that = (FrameSummary) o;
+
+        if (nanos != that.nanos) return false;
+        if (pixelCount != that.pixelCount) return false;
+        if (primaryRayCount != that.primaryRayCount) return false;
+        if (hitCount != that.hitCount) return false;
+        if (shadowRayCount != that.shadowRayCount) return false;
+        if (tileCount != that.tileCount) return false;
+        if (tileNanos != that.tileNanos) return false;
+        if (minTileNanos != that.minTileNanos) return false;
+        if (maxTileNanos != that.maxTileNanos) return false;
+        return testCounts.equals(that.testCounts);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Long.hashCode(nanos);
+        result = 31 * result + pixelCount;
+        result = 31 * result + Long.hashCode(primaryRayCount);
+        result = 31 * result + Long.hashCode(hitCount);
+        result = 31 * result + Long.hashCode(shadowRayCount);
+        result = 31 * result + testCounts.hashCode();
+        result = 31 * result + Long.hashCode(tileCount);
+        result = 31 * result + Long.hashCode(tileNanos);
+        result = 31 * result + Long.hashCode(minTileNanos);
+        result = 31 * result + Long.hashCode(maxTileNanos);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "FrameSummary{" +
+                "nanos=" + nanos +
+                ", pixelCount=" + pixelCount +
+                ", primaryRayCount=" + primaryRayCount +
+                ", hitCount=" + hitCount +
+                ", shadowRayCount=" + shadowRayCount +
+                ", testCounts=" + testCounts +
+                ", tileCount=" + tileCount +
+                ", tileNanos=" + tileNanos +
+                ", minTileNanos=" + minTileNanos +
+                ", maxTileNanos=" + maxTileNanos +
+                '}';
+    }
+}
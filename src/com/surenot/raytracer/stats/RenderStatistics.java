@@ -0,0 +1,162 @@
+package com.surenot.raytracer.stats;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Totals of every frame reported by the scenes using these statistics, see
+ * Scene.setStatistics. A batch creates a Scene per frame, the statistics outlive them and can
+ * be registered as an MBean for monitoring tools.
+ */
+public final class RenderStatistics implements RenderStatisticsMXBean {
+
+    public final static String DOMAIN = "com.surenot.raytracer";
+
+    private final LongAdder frameCount = new LongAdder();
+    private final LongAdder pixelCount = new LongAdder();
+    private final LongAdder primaryRayCount = new LongAdder();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder shadowRayCount = new LongAdder();
+    private final Map<String, LongAdder> testCounts = new ConcurrentHashMap<>();
+    private final LongAdder tileCount = new LongAdder();
+    private final LongAdder tileNanos = new LongAdder();
+    private volatile FrameSummary lastFrame = FrameSummary.NONE;
+
+    public void add(final FrameSummary frame) {
+        if (frame == null) throw new IllegalArgumentException();
+        frameCount.increment();
+        pixelCount.add(frame.getPixelCount());
+        primaryRayCount.add(frame.getPrimaryRayCount());
+        hitCount.add(frame.getHitCount());
+        shadowRayCount.add(frame.getShadowRayCount());
+        for (Map.Entry<String, Long> entry : frame.getTestCounts().entrySet()) {
+            testCounts.computeIfAbsent(entry.getKey(), type -> new LongAdder()).add(entry.getValue());
+        }
+        tileCount.add(frame.getTileCount());
+        tileNanos.add(frame.getTileNanos());
+        lastFrame = frame;
+    }
+
+    /**
+     * Registers these statistics in the platform MBean server under
+     * com.surenot.raytracer:type=RenderStatistics,name=&lt;name&gt;, the name as it is.
+     *
+     * @throws IllegalArgumentException if the name is empty or holds a character not allowed
+     *                                  in an unquoted value: , = : " * ? or a line break
+     */
+    public ObjectName register(final String name) throws JMException {
+        if (name == null || name.isEmpty()) throw new IllegalArgumentException();
+        for (int i = 0; i < name.length(); i++) {
+            if (",=:\"*?\n\r".indexOf(name.charAt(i)) >= 0) throw new IllegalArgumentException();
+        }
+        final ObjectName objectName = new ObjectName(DOMAIN + ":type=RenderStatistics,name=" + name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    public FrameSummary getLastFrame() {
+        return lastFrame;
+    }
+
+    @Override
+    public long getFrameCount() {
+        return frameCount.sum();
+    }
+
+    @Override
+    public long getPixelCount() {
+        return pixelCount.sum();
+    }
+
+    @Override
+    public long getPrimaryRayCount() {
+        return primaryRayCount.sum();
+    }
+
+    @Override
+    public long getShadowRayCount() {
+        return shadowRayCount.sum();
+    }
+
+    @Override
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return getPrimaryRayCount() - getHitCount();
+    }
+
+    @Override
+    public double getHitRatio() {
+        final long rays = getPrimaryRayCount();
+        return rays == 0 ? 0 : getHitCount() / (double) rays;
+    }
+
+    @Override
+    public Map<String, Long> getTestCounts() {
+        final Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : testCounts.entrySet()) counts.put(entry.getKey(), entry.getValue().sum());
+        return counts;
+    }
+
+    @Override
+    public long getTileCount() {
+        return tileCount.sum();
+    }
+
+    @Override
+    public double getAverageTileMillis() {
+        final long tiles = getTileCount();
+        return tiles == 0 ? 0 : tileNanos.sum() / 1e6 / tiles;
+    }
+
+    @Override
+    public double getLastFrameMillis() {
+        return lastFrame.getNanos() / 1e6;
+    }
+
+    @Override
+    public double getLastFrameRaysPerSecond() {
+        return lastFrame.getRaysPerSecond();
+    }
+
+    @Override
+    public double getLastFrameMaxTileMillis() {
+        return lastFrame.getMaxTileNanos() / 1e6;
+    }
+
+    /**
+     * Clears the totals, the last frame is kept. Frames reported meanwhile may be partly
+     * cleared.
+     */
+    @Override
+    public void reset() {
+        frameCount.reset();
+        pixelCount.reset();
+        primaryRayCount.reset();
+        hitCount.reset();
+        shadowRayCount.reset();
+        testCounts.clear();
+        tileCount.reset();
+        tileNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "RenderStatistics{" +
+                "frameCount=" + getFrameCount() +
+                ", primaryRayCount=" + getPrimaryRayCount() +
+                ", hitCount=" + getHitCount() +
+                ", shadowRayCount=" + getShadowRayCount() +
+                ", testCounts=" + getTestCounts() +
+                ", tileCount=" + getTileCount() +
+                '}';
+    }
+}
@@ -0,0 +1,38 @@
+package com.surenot.raytracer.stats;
+
+import java.util.Map;
+
+/**
+ * Render counters exposed over JMX, totals since the statistics were created or reset, and
+ * the last frame.
+ */
+public interface RenderStatisticsMXBean {
+
+    long getFrameCount();
+
+    long getPixelCount();
+
+    long getPrimaryRayCount();
+
+    long getShadowRayCount();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRatio();
+
+    Map<String, Long> getTestCounts();
+
+    long getTileCount();
+
+    double getAverageTileMillis();
+
+    double getLastFrameMillis();
+
+    double getLastFrameRaysPerSecond();
+
+    double getLastFrameMaxTileMillis();
+
+    void reset();
+}
@@ -0,0 +1,111 @@
+package com.surenot.raytracer.stats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts of a single render thread: plain fields, incremented without any synchronization on
+ * every ray, and added to a FrameStatistics at the end of every tile.
+ * Intersection tests are counted per shape type, the index of a type is given by typeOf and
+ * is the same for the whole process.
+ */
+public final class TraceCounters {
+
+    // Index of every shape class seen so far, and its name
+    private final static Map<Class<?>, Integer> TYPE_INDICES = new HashMap<>();
+    private final static List<String> TYPE_NAMES = new ArrayList<>();
+    private final static ClassValue<Integer> TYPES = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(final Class<?> type) {
+            synchronized (TYPE_INDICES) {
+                return TYPE_INDICES.computeIfAbsent(type, t -> {
+                    TYPE_NAMES.add(t.getSimpleName());
+                    return TYPE_NAMES.size() - 1;
+                });
+            }
+        }
+    };
+
+    private long primaryRayCount;
+    private long hitCount;
+    private long shadowRayCount;
+    private long[] testCounts = new long[8];
+
+    public static int typeOf(final Object shape) {
+        return TYPES.get(shape.getClass());
+    }
+
+    public static int typeOf(final Class<?> type) {
+        return TYPES.get(type);
+    }
+
+    public static String getTypeName(final int type) {
+        synchronized (TYPE_INDICES) {
+            return TYPE_NAMES.get(type);
+        }
+    }
+
+    public void countPrimaryRay(final boolean hit) {
+        primaryRayCount++;
+        if (hit) hitCount++;
+    }
+
+    public void countShadowRay() {
+        shadowRayCount++;
+    }
+
+    /**
+     * Counts an intersection test of a shape of the given type, see typeOf.
+     */
+    public void countTest(final int type) {
+        countTests(type, 1);
+    }
+
+    public void countTests(final int type, final int count) {
+        if (type >= testCounts.length) testCounts = Arrays.copyOf(testCounts, Math.max(type + 1, 2 * testCounts.length));
+        testCounts[type] += count;
+    }
+
+    public long getPrimaryRayCount() {
+        return primaryRayCount;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getShadowRayCount() {
+        return shadowRayCount;
+    }
+
+    /**
+     * Number of types getTestCount may be non zero for.
+     */
+    public int getTypeCount() {
+        return testCounts.length;
+    }
+
+    public long getTestCount(final int type) {
+        return type < testCounts.length ? testCounts[type] : 0;
+    }
+
+    public void reset() {
+        primaryRayCount = 0;
+        hitCount = 0;
+        shadowRayCount = 0;
+        Arrays.fill(testCounts, 0);
+    }
+
+    @Override
+    public String toString() {
+        return "TraceCounters{" +
+                "primaryRayCount=" + primaryRayCount +
+                ", hitCount=" + hitCount +
+                ", shadowRayCount=" + shadowRayCount +
+                ", testCounts=" + Arrays.toString(testCounts) +
+                '}';
+    }
+}
@@ -0,0 +1,87 @@
+package com.surenot.raytracer;
+
+import com.surenot.raytracer.primitives.Dimension2D;
+import com.surenot.raytracer.primitives.Point3D;
+import com.surenot.raytracer.primitives.Surface;
+import com.surenot.raytracer.primitives.Vector3D;
+import com.surenot.raytracer.render.TileOrder;
+import com.surenot.raytracer.render.TileRenderer;
+import com.surenot.raytracer.shapes.Light3D;
+import com.surenot.raytracer.shapes.Plane;
+import com.surenot.raytracer.shapes.Shape3D;
+import com.surenot.raytracer.shapes.Sphere3D;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class DynamicSceneTest {
+
+    private final Sphere3D occluder = new Sphere3D(new Point3D(20, -1, 1.5), 2, new Surface(Color.RED.getRGB(), 1, 1, 0.8, 5));
+    private TileRenderer renderer;
+
+    @Before
+    public void setUp() {
+        // A single thread renders every frame, it keeps its trace context between them
+        renderer = new TileRenderer(1, TileRenderer.DEFAULT_TILE_SIZE, TileOrder.MORTON);
+    }
+
+    @After
+    public void tearDown() {
+        renderer.shutdown();
+    }
+
+    @Test
+    public void removedShapeCastsNoShadow() {
+        final Scene scene = scene(true);
+        scene.render(renderer);
+        scene.remove(occluder);
+        final BufferedImage image = scene.render(renderer);
+
+        assertArrayEquals(pixels(scene(false).render(TileRenderer.DEFAULT)), pixels(image));
+    }
+
+    @Test
+    public void movedShapeCastsItsShadowFromItsNewPlace() {
+        final Sphere3D moved = new Sphere3D(new Point3D(20, 2, 1.5), 2, occluder.getSurface());
+        final Scene scene = scene(true);
+        scene.render(renderer);
+        scene.replace(occluder, moved);
+        final BufferedImage image = scene.render(renderer);
+
+        final List<Shape3D> shapes = shapes(false);
+        shapes.add(moved);
+        assertArrayEquals(pixels(scene(shapes).render(TileRenderer.DEFAULT)), pixels(image));
+    }
+
+    private Scene scene(final boolean withOccluder) {
+        return scene(shapes(withOccluder));
+    }
+
+    private static Scene scene(final List<Shape3D> shapes) {
+        return new Scene(new Point3D(-13, 0, 0), new Point3D(-10, -2, 1.5), new Dimension2D(3, 4), 120, 160, shapes);
+    }
+
+    private List<Shape3D> shapes(final boolean withOccluder) {
+        final List<Shape3D> shapes = new ArrayList<>();
+        shapes.add(new Plane(
+                new Vector3D(new Point3D(0, 0, -4), new Point3D(1, 0, 0), true),
+                new Vector3D(new Point3D(0, 0, -4), new Point3D(0, 0, 1), true),
+                new Surface(Color.LIGHT_GRAY.getRGB(), 0.2, 1, 0.2, 50)));
+        shapes.add(new Sphere3D(new Point3D(22, 2.5, 2.5), 2, new Surface(Color.BLUE.getRGB(), 1, 0.5, 1, 50)));
+        shapes.add(new Light3D(new Sphere3D(new Point3D(15, -3, 0), 0.5, new Surface(Color.WHITE.getRGB(), 1, 1, 1, 50))));
+        shapes.add(new Light3D(new Sphere3D(new Point3D(15, 3, 4), 0.5, new Surface(Color.RED.getRGB(), 1, 1, 1, 50))));
+        if (withOccluder) shapes.add(occluder);
+        return shapes;
+    }
+
+    static int[] pixels(final BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+}
@@ -0,0 +1,128 @@
+package com.surenot.raytracer;
+
+import com.surenot.raytracer.primitives.Dimension2D;
+import com.surenot.raytracer.primitives.Point3D;
+import com.surenot.raytracer.primitives.Surface;
+import com.surenot.raytracer.primitives.Vector3D;
+import com.surenot.raytracer.render.AntiAliasing;
+import com.surenot.raytracer.render.SoftShadows;
+import com.surenot.raytracer.render.TileOrder;
+import com.surenot.raytracer.render.TileRenderer;
+import com.surenot.raytracer.shapes.Light3D;
+import com.surenot.raytracer.shapes.Plane;
+import com.surenot.raytracer.shapes.Shape3D;
+import com.surenot.raytracer.shapes.Sphere3D;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RenderHandleTest {
+
+    private final static int WIDTH = 240, HEIGHT = 320;
+    private final static AntiAliasing ANTI_ALIASING = new AntiAliasing(AntiAliasing.Mode.ADAPTIVE, 4);
+    private final static Sphere3D BALL = new Sphere3D(new Point3D(20, -1, 1.5), 2, new Surface(Color.RED.getRGB(), 1, 1, 0.8, 5));
+    private final static Sphere3D MOVED = new Sphere3D(new Point3D(20, 1, 1.5), 2, BALL.getSurface());
+
+    private TileRenderer renderer;
+    // Renders at the same time as the other one
+    private TileRenderer other;
+
+    @Before
+    public void setUp() {
+        renderer = new TileRenderer(2, 16, TileOrder.MORTON);
+        other = new TileRenderer(2, 16, TileOrder.MORTON);
+    }
+
+    @After
+    public void tearDown() {
+        renderer.shutdown();
+        other.shutdown();
+    }
+
+    @Test
+    public void resubmittedRenderIsNotTornByTheCancelledOne() throws InterruptedException {
+        final Scene reference = scene(MOVED);
+        final int[] expected = DynamicSceneTest.pixels(reference.render(renderer));
+        final int refined = reference.getRefinedPixelCount();
+
+        for (int i = 0; i < 10; i++) {
+            final Scene scene = scene(BALL);
+            final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+            final RenderHandle cancelled = scene.submit(renderer, image);
+            Thread.sleep(5 + i);
+            cancelled.cancel();
+            scene.replace(BALL, MOVED);
+            final RenderHandle handle = scene.submit(other, image);
+
+            assertArrayEquals(expected, DynamicSceneTest.pixels(handle.await()));
+            assertTrue(cancelled.isDone());
+            assertTrue(handle.isComplete());
+            assertEquals(refined, scene.getRefinedPixelCount());
+        }
+    }
+
+    @Test
+    public void concurrentRendersOfAScene() throws InterruptedException {
+        final int[] before = DynamicSceneTest.pixels(scene(BALL).render(renderer));
+        final int[] after = DynamicSceneTest.pixels(scene(MOVED).render(renderer));
+
+        final Scene scene = scene(BALL);
+        final RenderHandle first = scene.submit(renderer, new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB));
+        // The first render starts before the ball moves
+        Thread.sleep(10);
+        scene.replace(BALL, MOVED);
+        final BufferedImage second = scene.render(other);
+
+        assertArrayEquals(before, DynamicSceneTest.pixels(first.await()));
+        assertArrayEquals(after, DynamicSceneTest.pixels(second));
+    }
+
+    @Test
+    public void timeoutOfAQueuedRenderStartsWithIt() throws InterruptedException {
+        final Scene scene = scene(BALL);
+        // Timed once warm
+        scene.render(renderer);
+        final long start = System.nanoTime();
+        scene.render(renderer);
+        final long renderNanos = System.nanoTime() - start;
+
+        final List<RenderHandle> queued = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            queued.add(scene.submit(renderer, new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB)));
+        }
+        final RenderHandle last = scene.submit(renderer, new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB),
+                renderNanos * 5 / 2);
+        assertFalse(last.isDone());
+
+        last.await();
+        for (RenderHandle handle : queued) assertTrue(handle.isComplete());
+        assertTrue(last.isComplete());
+    }
+
+    private static Scene scene(final Sphere3D ball) {
+        final List<Shape3D> shapes = new ArrayList<>();
+        shapes.add(new Plane(
+                new Vector3D(new Point3D(0, 0, -4), new Point3D(1, 0, 0), true),
+                new Vector3D(new Point3D(0, 0, -4), new Point3D(0, 0, 1), true),
+                new Surface(Color.LIGHT_GRAY.getRGB(), 0.2, 1, 0.2, 50)));
+        shapes.add(ball);
+        shapes.add(new Sphere3D(new Point3D(22, 2.5, 2.5), 2, new Surface(Color.BLUE.getRGB(), 1, 0.5, 1, 50)));
+        shapes.add(new Light3D(new Sphere3D(new Point3D(15, -3, 0), 0.5, new Surface(Color.WHITE.getRGB(), 1, 1, 1, 50))));
+        final Scene scene = new Scene(new Point3D(-13, 0, 0), new Point3D(-10, -2, 1.5), new Dimension2D(3, 4),
+                HEIGHT, WIDTH, shapes);
+        scene.setAntiAliasing(ANTI_ALIASING);
+        scene.setSoftShadows(new SoftShadows(4));
+        scene.setGBufferEnabled(true);
+        return scene;
+    }
+}